@@ -0,0 +1,85 @@
+package benchmark;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.openjdk.jmh.annotations.*;
+import util.AsyncRenderer;
+import util.CompiledTemplate;
+import util.DataHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a burst of requests from the XML bytes to the DOCX bytes: handled one after another on the calling
+ * thread, or submitted to an {@link AsyncRenderer} at once, whose load, render and save stages interleave on a
+ * fork-join pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncRenderBenchmark {
+
+    @Param({"16"})
+    public int requests;
+
+    private Path directory;
+
+    private CompiledTemplate template;
+
+    private byte[] xml;
+
+    private ForkJoinPool executor;
+
+    private AsyncRenderer renderer;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkInputs.createDirectory();
+        var docx = directory.resolve("template.docx");
+        var xmlPath = directory.resolve("input.xml");
+        BenchmarkInputs.writeTemplate(docx, 100);
+        BenchmarkInputs.writeXml(xmlPath, 100);
+        template = CompiledTemplate.compile(docx.toString());
+        xml = Files.readAllBytes(xmlPath);
+        executor = new ForkJoinPool();
+        renderer = new AsyncRenderer(template, executor);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        executor.close();
+        BenchmarkInputs.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public int blocking() throws IOException {
+        var size = 0;
+        for (var i = 0; i < requests; i++) {
+            var out = new ByteArrayOutputStream();
+            try (XWPFDocument docxData = template.render(DataHandler.loadXml(xml))) {
+                DataHandler.writeDocx(docxData, out, template.getSaveOptions());
+            }
+            size += out.size();
+        }
+        return size;
+    }
+
+    @Benchmark
+    public int async() {
+        var futures = new CompletableFuture<?>[requests];
+        for (var i = 0; i < requests; i++) {
+            futures[i] = renderer.render(xml);
+        }
+        CompletableFuture.allOf(futures).join();
+        return futures.length;
+    }
+
+}
@@ -0,0 +1,153 @@
+package benchmark;
+
+import org.apache.poi.openxml4j.util.ZipSecureFile;
+import org.apache.poi.wp.usermodel.HeaderFooterType;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import util.DataHandler;
+import util.PlaceholderMatcher;
+import util.PlaceholderRegistry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.regex.Pattern;
+
+/**
+ * Generates the templates and XML files the benchmarks run on, so the input size can be varied independently of the
+ * sample files.
+ * <p>
+ * A generated template has a header holding the logo placeholder, the requested number of paragraphs and one table
+ * with a header row, a {@code <value1>}/{@code <value2>} template row and a total row. Every other paragraph splits
+ * its first placeholder over three runs, the way Word stores placeholders that were edited after typing. A generated
+ * XML file has the requested number of table rows.
+ */
+public class BenchmarkInputs {
+
+    /**
+     * The placeholder pattern formerly used by {@code Main}, kept to compare against {@link #MATCHER}.
+     */
+    public static final Pattern PATTERN = Pattern.compile("<(.*?)>");
+
+    /**
+     * The placeholder matcher used by {@code Main}.
+     */
+    public static final PlaceholderMatcher MATCHER = PlaceholderMatcher.forRegistry(PlaceholderRegistry.defaults());
+
+    public static final String LOGO_PLACEHOLDER = "[logo]";
+
+    static {
+        // Generated documents repeat the same XML many times, which POI's zip bomb check takes for an attack
+        ZipSecureFile.setMinInflateRatio(0.0001);
+    }
+
+    /**
+     * Returns the path of the sample logo.
+     *
+     * @return the path of the logo
+     */
+    public static String logoPath() {
+        return DataHandler.getFilePath("/logo.png");
+    }
+
+    /**
+     * Writes a DOCX template with the specified number of paragraphs.
+     *
+     * @param path the path of the template to write
+     * @param paragraphs the number of body paragraphs
+     */
+    public static void writeTemplate(Path path, int paragraphs) throws IOException {
+        try (var docxData = new XWPFDocument(); OutputStream out = Files.newOutputStream(path)) {
+            docxData.createHeader(HeaderFooterType.DEFAULT).createParagraph().createRun().setText(LOGO_PLACEHOLDER);
+
+            for (var i = 0; i < paragraphs; i++) {
+                var paragraph = docxData.createParagraph();
+                if (i % 2 == 0) {
+                    paragraph.createRun().setText("Dear <");
+                    paragraph.createRun().setText("name");
+                    paragraph.createRun().setText(">! ");
+                } else {
+                    paragraph.createRun().setText("Dear <name>! ");
+                }
+                paragraph.createRun().setText("Order status: <order_status>. Delivery to <postal_code> <city>, "
+                        + "<street> on <date>. Items: <data1>, <data2>, <data3> and <data4>.");
+            }
+
+            var table = docxData.createTable(3, 2);
+            table.getRow(0).getCell(0).setText("Product");
+            table.getRow(0).getCell(1).setText("Description");
+            table.getRow(1).getCell(0).setText("<value1>");
+            table.getRow(1).getCell(1).setText("<value2>");
+            table.getRow(2).getCell(0).setText("Ordered by <name>");
+
+            docxData.write(out);
+        }
+    }
+
+    /**
+     * Writes an XML file with the specified number of table rows.
+     *
+     * @param path the path of the XML file to write
+     * @param rows the number of {@code <row-data>} elements
+     */
+    public static void writeXml(Path path, int rows) throws IOException {
+        var xml = new StringBuilder(256 + rows * 112);
+        xml.append("""
+                <root>
+                    <customer_details>
+                        <name>Sandor Szekelyhidi</name>
+                        <birthday>1941-02-15T13:09:12.561Z</birthday>
+                        <birthplace>Budapest</birthplace>
+                        <customer_type>2</customer_type>
+                        <address_data>
+                            <postal_code>1767</postal_code>
+                            <city>Debrecen</city>
+                            <street_address>Apple street 31.</street_address>
+                        </address_data>
+                    </customer_details>
+                    <document_data>
+                        <data_section1>
+                            <data>XY Tech</data>
+                            <data>Iphone X</data>
+                            <data>Huawei P30</data>
+                            <data>Samsung Galaxy A60</data>
+                        </data_section1>
+                        <table>
+                """);
+        for (var i = 0; i < rows; i++) {
+            xml.append("            <row-data><value1>Product ").append(i)
+                    .append("</value1><value2>Description of product ").append(i).append("</value2></row-data>\n");
+        }
+        xml.append("""
+                        </table>
+                    </document_data>
+                </root>
+                """);
+        Files.writeString(path, xml, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a temporary directory for the inputs and outputs of a benchmark.
+     *
+     * @return the directory
+     */
+    public static Path createDirectory() throws IOException {
+        return Files.createTempDirectory("xml-to-docx-benchmark");
+    }
+
+    /**
+     * Deletes a directory created by {@link #createDirectory()} with its content.
+     *
+     * @param directory the directory to delete
+     */
+    public static void deleteDirectory(Path directory) throws IOException {
+        try (var files = Files.walk(directory)) {
+            for (var file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+}
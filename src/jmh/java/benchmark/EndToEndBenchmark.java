@@ -0,0 +1,66 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import util.DataHandler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the whole conversion as {@code Main} runs it: loading the XML and the template, replacing the paragraph,
+ * table and logo placeholders and saving the document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int rows;
+
+    @Param({"1", "100", "1000"})
+    public int paragraphs;
+
+    private Path directory;
+
+    private String xmlPath;
+
+    private String docxPath;
+
+    private String outputPath;
+
+    private String logoPath;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkInputs.createDirectory();
+        var template = directory.resolve("template.docx");
+        var xml = directory.resolve("input.xml");
+        BenchmarkInputs.writeTemplate(template, paragraphs);
+        BenchmarkInputs.writeXml(xml, rows);
+        xmlPath = xml.toString();
+        docxPath = template.toString();
+        outputPath = directory.resolve("output.docx").toString();
+        logoPath = BenchmarkInputs.logoPath();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkInputs.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public void convert() throws IOException {
+        var xmlData = DataHandler.loadXml(xmlPath);
+        try (var docxData = DataHandler.loadDocx(docxPath)) {
+            DataHandler.replacePlaceholders(docxData, xmlData, BenchmarkInputs.MATCHER, logoPath,
+                    BenchmarkInputs.LOGO_PLACEHOLDER);
+            DataHandler.saveDocx(docxData, outputPath);
+        }
+    }
+
+}
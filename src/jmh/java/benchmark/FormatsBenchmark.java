@@ -0,0 +1,40 @@
+package benchmark;
+
+import data.Formats;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reformatting a birthday with {@link Formats#reformatIsoDateTime(String)} with the {@code java.time} parse
+ * and format it replaced, for a valid date and for an invalid date like the one of the sample XML.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormatsBenchmark {
+
+    @Param({"1941-02-15T13:09:12.561Z", "1941-02-45T13:09:12.561Z"})
+    public String birthday;
+
+    @Benchmark
+    public String javaTime() {
+        try {
+            var dateTime = LocalDateTime.parse(birthday, DateTimeFormatter.ISO_DATE_TIME);
+            return dateTime.format(DateTimeFormatter.ofPattern("yyyy.MM.dd."));
+        } catch (Exception e) {
+            return birthday;
+        }
+    }
+
+    @Benchmark
+    public String formats() {
+        return Formats.reformatIsoDateTime(birthday);
+    }
+
+}
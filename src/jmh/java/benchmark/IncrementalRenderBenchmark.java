@@ -0,0 +1,76 @@
+package benchmark;
+
+import data.Root;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.openjdk.jmh.annotations.*;
+import util.CompiledTemplate;
+import util.DataHandler;
+import util.IncrementalRenderer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares rendering a document again from the template with updating a rendered document with
+ * {@link IncrementalRenderer}, for a re-request whose data differs in the customer type and a single table row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IncrementalRenderBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int rows;
+
+    private Path directory;
+
+    private CompiledTemplate template;
+
+    private Root[] xmlData;
+
+    private IncrementalRenderer renderer;
+
+    private int invocation;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkInputs.createDirectory();
+        var docx = directory.resolve("template.docx");
+        var xml = directory.resolve("input.xml");
+        BenchmarkInputs.writeTemplate(docx, 100);
+        BenchmarkInputs.writeXml(xml, rows);
+        template = CompiledTemplate.compile(docx.toString());
+
+        // Alternate between two versions of the data, so every update has changes to write
+        xmlData = new Root[]{DataHandler.loadXml(xml.toString()), DataHandler.loadXml(xml.toString())};
+        var changed = xmlData[1];
+        changed.getCustomerDetails().setCustomerType(changed.getCustomerDetails().getCustomerType() + 1);
+        var rowData = changed.getDocumentData().getTable().getRowData();
+        rowData[rows / 2].getValues().set(0, "Changed product");
+        changed.getDocumentData().getTable().setRowData(rowData);
+        renderer = IncrementalRenderer.render(template, xmlData[0]);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkInputs.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public XWPFDocument render() throws IOException {
+        try (var docxData = template.render(xmlData[invocation++ & 1])) {
+            return docxData;
+        }
+    }
+
+    @Benchmark
+    public XWPFDocument update() {
+        renderer.update(xmlData[invocation++ & 1]);
+        return renderer.getDocument();
+    }
+
+}
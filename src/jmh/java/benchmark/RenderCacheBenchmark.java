@@ -0,0 +1,81 @@
+package benchmark;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.openjdk.jmh.annotations.*;
+import util.CompiledTemplate;
+import util.DataHandler;
+import util.RenderCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a repeated request as the render server handles it, from the XML bytes to the DOCX bytes: rendering and
+ * saving the document every time, or answering it from the memory and the disk tier of a {@link RenderCache}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderCacheBenchmark {
+
+    @Param({"10", "1000"})
+    public int rows;
+
+    private Path directory;
+
+    private CompiledTemplate template;
+
+    private byte[] xml;
+
+    private RenderCache memoryCache;
+
+    private RenderCache diskCache;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkInputs.createDirectory();
+        var docx = directory.resolve("template.docx");
+        var xmlPath = directory.resolve("input.xml");
+        BenchmarkInputs.writeTemplate(docx, 100);
+        BenchmarkInputs.writeXml(xmlPath, rows);
+        template = CompiledTemplate.compile(docx.toString());
+        xml = Files.readAllBytes(xmlPath);
+
+        memoryCache = new RenderCache(64L << 20);
+        memoryCache.render(template, DataHandler.loadXml(xml));
+        // No memory tier, so every hit reads the file
+        diskCache = new RenderCache(0, directory.resolve("cache"), 64L << 20);
+        diskCache.render(template, DataHandler.loadXml(xml));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkInputs.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public byte[] render() throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (XWPFDocument docxData = template.render(DataHandler.loadXml(xml))) {
+            DataHandler.writeDocx(docxData, out, template.getSaveOptions());
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] memoryHit() {
+        return memoryCache.render(template, DataHandler.loadXml(xml));
+    }
+
+    @Benchmark
+    public byte[] diskHit() {
+        return diskCache.render(template, DataHandler.loadXml(xml));
+    }
+
+}
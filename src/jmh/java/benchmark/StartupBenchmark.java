@@ -0,0 +1,90 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a command line render of a single small document from process start to exit, the way a script calls
+ * {@code Main}: on a plain JVM, on a JVM with the AppCDS archive of the {@code appcds} profile, or as the native image
+ * of the {@code native} profile.
+ * <p>
+ * The artifacts are not built by this benchmark. Build the JAR and the archive with {@code mvn -Pappcds package}, and
+ * the native image with {@code mvn -Pnative package} on GraalVM before selecting it with {@code -p mode=native}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+
+    private static final Path JAR = Path.of("target/xml-to-docx-1.0.0.jar");
+
+    private static final Path ARCHIVE = Path.of("target/xml-to-docx.jsa");
+
+    private static final Path NATIVE_IMAGE = Path.of("target/xml-to-docx");
+
+    @Param({"jvm", "appcds"})
+    public String mode;
+
+    private Path directory;
+
+    private List<String> command;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkInputs.createDirectory();
+        var docx = directory.resolve("template.docx");
+        var xml = directory.resolve("input.xml");
+        BenchmarkInputs.writeTemplate(docx, 10);
+        BenchmarkInputs.writeXml(xml, 10);
+
+        command = new ArrayList<>();
+        switch (mode) {
+            case "jvm" -> command.addAll(List.of(java(), "-jar", require(JAR).toString()));
+            case "appcds" -> command.addAll(List.of(java(), "-XX:SharedArchiveFile=" + require(ARCHIVE),
+                    "-XX:TieredStopAtLevel=1", "-jar", require(JAR).toString()));
+            case "native" -> command.add(require(NATIVE_IMAGE).toString());
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        command.addAll(List.of("--render", directory.resolve("output.docx").toString(), xml.toString(),
+                docx.toString(), BenchmarkInputs.logoPath()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkInputs.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public int render() throws IOException, InterruptedException {
+        var process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        var exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IllegalStateException("Render failed with exit code " + exitCode + ": " + command);
+        }
+        return exitCode;
+    }
+
+    private static String java() {
+        return Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    }
+
+    private static Path require(Path artifact) {
+        if (!Files.exists(artifact)) {
+            throw new IllegalStateException("Missing " + artifact + ", see the documentation of StartupBenchmark");
+        }
+        return artifact.toAbsolutePath();
+    }
+
+}
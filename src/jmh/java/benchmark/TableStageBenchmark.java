@@ -0,0 +1,110 @@
+package benchmark;
+
+import data.Root;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.openjdk.jmh.annotations.*;
+import util.DataHandler;
+import util.SaveOptions;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Measures the stages whose cost grows with the number of table rows: generating the rows and saving the generated
+ * document with the default compression, the fastest compression and no compression (see {@link SaveOptions}).
+ * <p>
+ * Generating the rows modifies the document, so every invocation gets a freshly loaded template; loading it is not
+ * part of the measurement. Saving writes a document rendered once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableStageBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int rows;
+
+    private Path directory;
+
+    private String docxPath;
+
+    private String outputPath;
+
+    private Root xmlData;
+
+    private XWPFDocument rendered;
+
+    /**
+     * A freshly loaded template for a single invocation.
+     */
+    @State(Scope.Thread)
+    public static class Template {
+
+        XWPFDocument docxData;
+
+        @Setup(Level.Invocation)
+        public void setup(TableStageBenchmark benchmark) {
+            docxData = DataHandler.loadDocx(benchmark.docxPath);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            docxData.close();
+        }
+
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkInputs.createDirectory();
+        var template = directory.resolve("template.docx");
+        var xml = directory.resolve("input.xml");
+        BenchmarkInputs.writeTemplate(template, 1);
+        BenchmarkInputs.writeXml(xml, rows);
+        docxPath = template.toString();
+        outputPath = directory.resolve("output.docx").toString();
+        xmlData = DataHandler.loadXml(xml.toString());
+
+        rendered = DataHandler.loadDocx(docxPath);
+        DataHandler.replacePlaceholderInTables(rendered, xmlData, BenchmarkInputs.MATCHER);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        rendered.close();
+        BenchmarkInputs.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public XWPFDocument replacePlaceholderInTables(Template template) {
+        DataHandler.replacePlaceholderInTables(template.docxData, xmlData, BenchmarkInputs.PATTERN);
+        return template.docxData;
+    }
+
+    @Benchmark
+    public XWPFDocument replacePlaceholderInTablesMatcher(Template template) {
+        DataHandler.replacePlaceholderInTables(template.docxData, xmlData, BenchmarkInputs.MATCHER);
+        return template.docxData;
+    }
+
+    @Benchmark
+    public void saveDocx() {
+        DataHandler.saveDocx(rendered, outputPath);
+    }
+
+    @Benchmark
+    public void saveDocxFastest() {
+        DataHandler.saveDocx(rendered, outputPath, SaveOptions.defaults().withLevel(Deflater.BEST_SPEED));
+    }
+
+    @Benchmark
+    public void saveDocxStored() {
+        DataHandler.saveDocx(rendered, outputPath, SaveOptions.defaults().withLevel(Deflater.NO_COMPRESSION));
+    }
+
+}
@@ -0,0 +1,73 @@
+package benchmark;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.openjdk.jmh.annotations.*;
+import util.DataHandler;
+import util.TemplateSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways of getting a fresh template document for every record, for templates with a growing number of
+ * paragraphs: reloading the template file, reloading the template from memory, and opening it from a
+ * {@link TemplateSnapshot}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateSnapshotBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int paragraphs;
+
+    private Path directory;
+
+    private String docxPath;
+
+    private byte[] docxBytes;
+
+    private TemplateSnapshot snapshot;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkInputs.createDirectory();
+        var template = directory.resolve("template.docx");
+        BenchmarkInputs.writeTemplate(template, paragraphs);
+        docxPath = template.toString();
+        docxBytes = Files.readAllBytes(template);
+        snapshot = TemplateSnapshot.of(docxBytes);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkInputs.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public int reloadFile() throws IOException {
+        try (var docxData = DataHandler.loadDocx(docxPath)) {
+            return docxData.getBodyElements().size();
+        }
+    }
+
+    @Benchmark
+    public int reloadBytes() throws IOException {
+        try (var docxData = DataHandler.loadDocx(docxBytes)) {
+            return docxData.getBodyElements().size();
+        }
+    }
+
+    @Benchmark
+    public int snapshot() throws IOException {
+        try (XWPFDocument docxData = snapshot.newDocument()) {
+            return docxData.getBodyElements().size();
+        }
+    }
+
+}
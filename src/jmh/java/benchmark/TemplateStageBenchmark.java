@@ -0,0 +1,105 @@
+package benchmark;
+
+import data.Root;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.openjdk.jmh.annotations.*;
+import util.DataHandler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the stages working on the template itself, for templates with a growing number of paragraphs: loading the
+ * template, replacing the paragraph placeholders and replacing the logo placeholder.
+ * <p>
+ * The replacing stages modify the document, so every invocation gets a freshly loaded template; loading it is not
+ * part of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateStageBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int paragraphs;
+
+    private Path directory;
+
+    private String docxPath;
+
+    private String logoPath;
+
+    private Root xmlData;
+
+    /**
+     * A freshly loaded template for a single invocation.
+     */
+    @State(Scope.Thread)
+    public static class Template {
+
+        XWPFDocument docxData;
+
+        @Setup(Level.Invocation)
+        public void setup(TemplateStageBenchmark benchmark) {
+            docxData = DataHandler.loadDocx(benchmark.docxPath);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            docxData.close();
+        }
+
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkInputs.createDirectory();
+        var template = directory.resolve("template.docx");
+        var xml = directory.resolve("input.xml");
+        BenchmarkInputs.writeTemplate(template, paragraphs);
+        BenchmarkInputs.writeXml(xml, 10);
+        docxPath = template.toString();
+        logoPath = BenchmarkInputs.logoPath();
+        xmlData = DataHandler.loadXml(xml.toString());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkInputs.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public XWPFDocument loadDocx() {
+        return DataHandler.loadDocx(docxPath);
+    }
+
+    @Benchmark
+    public XWPFDocument replacePlaceholderInParagraphs(Template template) {
+        DataHandler.replacePlaceholderInParagraphs(template.docxData, xmlData, BenchmarkInputs.PATTERN);
+        return template.docxData;
+    }
+
+    @Benchmark
+    public XWPFDocument replacePlaceholderInParagraphsMatcher(Template template) {
+        DataHandler.replacePlaceholderInParagraphs(template.docxData, xmlData, BenchmarkInputs.MATCHER);
+        return template.docxData;
+    }
+
+    @Benchmark
+    public XWPFDocument replacePlaceholders(Template template) {
+        DataHandler.replacePlaceholders(template.docxData, xmlData, BenchmarkInputs.MATCHER, logoPath,
+                BenchmarkInputs.LOGO_PLACEHOLDER);
+        return template.docxData;
+    }
+
+    @Benchmark
+    public XWPFDocument replacePlaceholderWithLogo(Template template) {
+        DataHandler.replacePlaceholderWithLogo(template.docxData, logoPath, BenchmarkInputs.LOGO_PLACEHOLDER);
+        return template.docxData;
+    }
+
+}
@@ -0,0 +1,57 @@
+package benchmark;
+
+import data.Root;
+import org.openjdk.jmh.annotations.*;
+import util.DataHandler;
+import util.XmlLoader;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-document cost of loading XML with a freshly built {@link JAXBContext} (cold) against the shared
+ * context and pooled unmarshallers of {@link XmlLoader} (warm), and the cost of validating the document against the
+ * shared schema while it is unmarshalled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlLoaderBenchmark {
+
+    private byte[] xml;
+
+    @Setup
+    public void setup() throws IOException {
+        xml = Files.readAllBytes(Path.of(DataHandler.getFilePath("/raw.xml")));
+    }
+
+    @Benchmark
+    public Root coldContextPerDocument() throws JAXBException {
+        JAXBContext jaxbContext = JAXBContext.newInstance(Root.class);
+        return (Root) jaxbContext.createUnmarshaller().unmarshal(new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public Root warmSharedContext() {
+        return XmlLoader.load(xml);
+    }
+
+    @Benchmark
+    public Root warmSharedContextValidated() {
+        XmlLoader.setValidating(true);
+        try {
+            return XmlLoader.load(xml);
+        } finally {
+            XmlLoader.setValidating(false);
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+package benchmark;
+
+import data.Root;
+import org.openjdk.jmh.annotations.*;
+import util.DataHandler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DataHandler#loadXml(String)} for XML files with a growing number of table rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlStageBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int rows;
+
+    private Path directory;
+
+    private String xmlPath;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = BenchmarkInputs.createDirectory();
+        var path = directory.resolve("input.xml");
+        BenchmarkInputs.writeXml(path, rows);
+        xmlPath = path.toString();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkInputs.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public Root loadXml() {
+        return DataHandler.loadXml(xmlPath);
+    }
+
+}
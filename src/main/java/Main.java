@@ -1,27 +1,276 @@
+import util.BatchRenderer;
+import util.CompiledTemplate;
 import util.DataHandler;
+import util.PlaceholderMatcher;
+import util.PlaceholderRegistry;
+import util.RenderCache;
+import util.RenderMetrics;
+import util.RenderServer;
+import util.StreamingDocxWriter;
+import util.TemplateCache;
+import util.XmlLoader;
+import util.XmlRecordReader;
 
-import java.util.regex.Pattern;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Main {
 
+    private static final String BATCH_USAGE =
+            "Usage: --batch [--threads N] [--max-in-flight N] <output dir> <input>...";
+
+    private static final String SERVE_USAGE = "Usage: --serve [--port N] [--templates DIR] [--max-in-flight N] "
+            + "[--cache-size N] [--render-cache DIR]";
+
     public static void main(String[] args) {
+        // Publishes the metrics over JMX if they are enabled with -Dxmltodocx.metrics=true
+        RenderMetrics.install();
+
+        if (args.length > 0 && args[0].equals("--batch")) {
+            batch(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            serve(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--merge")) {
+            merge(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--render")) {
+            render(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         // Load the XML and DOCX data
         var xmlPath = DataHandler.getFilePath("/raw.xml");
         var docxPath = DataHandler.getFilePath("/raw.docx");
         var xmlData = DataHandler.loadXml(xmlPath);
         var docxData = DataHandler.loadDocx(docxPath);
 
-        // Replace the placeholders in the DOCX data with the corresponding values from the XML data
-        Pattern pattern = Pattern.compile("<(.*?)>");
-        DataHandler.replacePlaceholderInParagraphs(docxData, xmlData, pattern);
-        DataHandler.replacePlaceholderInTables(docxData, xmlData, pattern);
-
-        // Replace the placeholder with the logo image
+        // Replace the placeholders and the logo in every part of the DOCX data in a single pass
         var imageFilePath = DataHandler.getFilePath("/logo.png");
-        DataHandler.replacePlaceholderWithLogo(docxData, imageFilePath, "[logo]");
+        var matcher = PlaceholderMatcher.forRegistry(PlaceholderRegistry.defaults());
+        var unknownTags = DataHandler.replacePlaceholders(docxData, xmlData, matcher, imageFilePath, "[logo]");
+        if (!unknownTags.isEmpty()) {
+            System.err.println("Unknown placeholders: " + unknownTags);
+        }
 
         // Save the modified DOCX data
         DataHandler.saveDocx(docxData, "xml_to_docx_result.docx");
     }
 
+    /**
+     * Renders many records concurrently.
+     * <p>
+     * Usage: {@code --batch [--threads N] [--max-in-flight N] <output dir> <input>...}, where the input is a directory
+     * of XML files, a single XML file holding any number of {@code <root>} records, or a list of XML files. Without
+     * {@code --threads} every record is rendered on its own virtual thread.
+     *
+     * @param args the batch arguments
+     */
+    private static void batch(String[] args) {
+        var threads = 0;
+        var maxInFlight = Runtime.getRuntime().availableProcessors() * 2;
+        var positional = new ArrayList<String>();
+        for (var i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = intOption(args, ++i, BATCH_USAGE);
+                case "--max-in-flight" -> maxInFlight = intOption(args, ++i, BATCH_USAGE);
+                default -> positional.add(args[i]);
+            }
+        }
+        if (positional.size() < 2) {
+            exitWithUsage(BATCH_USAGE);
+        }
+
+        var outputDir = Path.of(positional.get(0));
+        var inputs = positional.subList(1, positional.size()).stream().map(Path::of).toList();
+        Iterator<BatchRenderer.Record> records;
+        if (inputs.size() == 1 && Files.isDirectory(inputs.get(0))) {
+            records = BatchRenderer.fromDirectory(inputs.get(0));
+        } else if (inputs.size() == 1) {
+            records = BatchRenderer.fromMultiRecordFile(inputs.get(0));
+        } else {
+            records = BatchRenderer.fromFiles(List.copyOf(inputs));
+        }
+
+        var template = CompiledTemplate.compile(DataHandler.getFilePath("/raw.docx"), "[logo]",
+                DataHandler.getFilePath("/logo.png"));
+        var done = new AtomicInteger();
+        var listener = new BatchRenderer.BatchListener() {
+
+            @Override
+            public void onSuccess(String id, Path output) {
+                System.out.printf("[%d] %s -> %s%n", done.incrementAndGet(), id, output);
+            }
+
+            @Override
+            public void onFailure(String id, Throwable error) {
+                System.err.printf("[%d] %s failed: %s%n", done.incrementAndGet(), id, error);
+            }
+
+        };
+
+        try (ExecutorService executor = threads > 0
+                ? new ForkJoinPool(threads)
+                : Executors.newVirtualThreadPerTaskExecutor()) {
+            var result = new BatchRenderer(template, executor, maxInFlight, listener).render(records, outputDir);
+            System.out.printf("Rendered %d record(s), %d failed%n", result.succeeded(), result.failed());
+            if (result.failed() > 0) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Merges every record of an XML file into a single document, one section per record, see
+     * {@link StreamingDocxWriter#writeMerged(java.util.Iterator, Path)}.
+     * <p>
+     * Usage: {@code --merge <output file> <input>}, where the input is an XML file holding any number of
+     * {@code <root>} records.
+     *
+     * @param args the merge arguments
+     */
+    private static void merge(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: --merge <output file> <input>");
+            System.exit(2);
+        }
+
+        var writer = StreamingDocxWriter.of(DataHandler.getFilePath("/raw.docx"), "[logo]",
+                DataHandler.getFilePath("/logo.png"));
+        try (var records = XmlRecordReader.open(Path.of(args[1]))) {
+            var count = writer.writeMerged(records, Path.of(args[0]));
+            System.out.printf("Merged %d record(s) into %s%n", count, args[0]);
+        }
+    }
+
+    /**
+     * Renders a single record with {@link StreamingDocxWriter}. The placeholders of the body, the headers, footers,
+     * footnotes, endnotes and text boxes are filled like in the default mode.
+     * <p>
+     * Usage: {@code --render <output file> <input> <template> [<logo>]}, where the input is an XML file holding one
+     * {@code <root>} record and the logo, if any, replaces the {@code [logo]} placeholder. Unlike the other modes, the
+     * files are given as paths instead of being taken from the classpath, so this mode also runs from the packaged JAR.
+     * The streaming writer never builds an {@link org.apache.poi.xwpf.usermodel.XWPFDocument}, so the XMLBeans type
+     * system of POI is not loaded, which is most of the startup time of the other modes. It is also the only mode of
+     * the native image, see {@link Render}.
+     *
+     * @param args the render arguments
+     */
+    private static void render(String[] args) {
+        if (args.length != 3 && args.length != 4) {
+            System.err.println("Usage: --render <output file> <input> <template> [<logo>]");
+            System.exit(2);
+        }
+
+        var writer = args.length == 4
+                ? StreamingDocxWriter.of(args[2], "[logo]", args[3])
+                : StreamingDocxWriter.of(args[2]);
+        writer.write(XmlLoader.load(Path.of(args[1])), Path.of(args[0]));
+    }
+
+    /**
+     * The entry point of the native image built by the {@code native} profile, which only runs the render mode: the
+     * native image metadata in {@code META-INF/native-image} covers the JAXB data classes, not the XMLBeans types the
+     * other modes reach through {@link org.apache.poi.xwpf.usermodel.XWPFDocument}. Starting from here keeps those
+     * modes out of the image.
+     * <p>
+     * Usage: {@code [--render] <output file> <input> <template> [<logo>]}, see {@link #render(String[])}.
+     */
+    public static class Render {
+
+        public static void main(String[] args) {
+            render(args.length > 0 && args[0].equals("--render") ? Arrays.copyOfRange(args, 1, args.length) : args);
+        }
+
+    }
+
+    /**
+     * Serves renders over HTTP until the JVM is stopped, see {@link RenderServer}.
+     * <p>
+     * Usage: {@code --serve [--port N] [--templates DIR] [--max-in-flight N] [--cache-size N] [--render-cache DIR]}.
+     * Requests without a {@code template} parameter are rendered with the bundled template. With
+     * {@code --render-cache}, repeated requests are answered from a {@link RenderCache} holding up to 64 MiB of
+     * documents in memory and 1 GiB in the directory.
+     *
+     * @param args the server arguments
+     */
+    private static void serve(String[] args) {
+        var port = 8080;
+        Path templateDirectory = null;
+        var maxInFlight = Runtime.getRuntime().availableProcessors() * 2;
+        var cacheSize = 16;
+        Path renderCacheDirectory = null;
+        for (var i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> port = intOption(args, ++i, SERVE_USAGE);
+                case "--templates" -> templateDirectory = Path.of(option(args, ++i, SERVE_USAGE));
+                case "--max-in-flight" -> maxInFlight = intOption(args, ++i, SERVE_USAGE);
+                case "--cache-size" -> cacheSize = intOption(args, ++i, SERVE_USAGE);
+                case "--render-cache" -> renderCacheDirectory = Path.of(option(args, ++i, SERVE_USAGE));
+                default -> exitWithUsage(SERVE_USAGE);
+            }
+        }
+
+        var templates = new TemplateCache(cacheSize, "[logo]", DataHandler.getFilePath("/logo.png"));
+        var renders = renderCacheDirectory != null
+                ? new RenderCache(64L << 20, renderCacheDirectory, 1L << 30)
+                : null;
+        var server = new RenderServer(new InetSocketAddress(port), templates,
+                Path.of(DataHandler.getFilePath("/raw.docx")), templateDirectory, maxInFlight, renders);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(5)));
+        System.out.printf("Listening on port %d%n", server.getPort());
+    }
+
+    /**
+     * Returns the value of an option, or exits with the usage if the option is the last argument.
+     *
+     * @param args the arguments
+     * @param index the index of the value
+     * @param usage the usage line of the mode
+     * @return the value
+     */
+    private static String option(String[] args, int index, String usage) {
+        if (index >= args.length) {
+            exitWithUsage(usage);
+        }
+        return args[index];
+    }
+
+    /**
+     * Returns the numeric value of an option, or exits with the usage if it is missing or not a number.
+     *
+     * @param args the arguments
+     * @param index the index of the value
+     * @param usage the usage line of the mode
+     * @return the value
+     */
+    private static int intOption(String[] args, int index, String usage) {
+        var value = option(args, index, usage);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            exitWithUsage(usage);
+            return 0;
+        }
+    }
+
+    private static void exitWithUsage(String usage) {
+        System.err.println(usage);
+        System.exit(2);
+    }
+
 }
@@ -4,8 +4,6 @@ import lombok.Setter;
 
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 /**
  * Represents the customer details section of the XML file.
@@ -25,22 +23,13 @@ public class CustomerDetails {
     private AddressData addressData;
 
     /**
-     * Converts the given date to a custom format.
+     * Sets the birthday, converting an ISO date-time to the document date format of {@link Formats}. Invalid dates
+     * are kept as they are.
      *
-     * @param birthday the date to convert
-     * @return the date in the custom format
+     * @param birthday the birthday
      */
-    private String convertToCustomFormat(String birthday) {
-        try {
-            LocalDateTime dateTime = LocalDateTime.parse(birthday, DateTimeFormatter.ISO_DATE_TIME);
-            return dateTime.format(DateTimeFormatter.ofPattern("yyyy.MM.dd."));
-        } catch (Exception e) {
-            return birthday; // return the original date if the conversion fails
-        }
-    }
-
     public void setBirthday(String birthday) {
-        this.birthday = convertToCustomFormat(birthday);
+        this.birthday = Formats.reformatIsoDateTime(birthday);
     }
 
     @XmlElement(name="name")
@@ -63,7 +52,7 @@ public class CustomerDetails {
         return customerType;
     }
 
-    @XmlElement(name="address_data")
+    @XmlElement(name="address_data", required = true)
     public AddressData getAddressData() {
         return addressData;
     }
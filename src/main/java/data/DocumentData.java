@@ -24,7 +24,7 @@ public class DocumentData {
      */
     private Table table;
 
-    @XmlElement(name = "data_section1")
+    @XmlElement(name = "data_section1", required = true)
     public DataSection getDataSection() {
         return dataSection;
     }
@@ -0,0 +1,293 @@
+package data;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DecimalStyle;
+import java.util.Locale;
+
+/**
+ * The {@code Formats} class parses and formats the dates and numbers written into documents.
+ * <p>
+ * The output formats are configured once per process: the locale from the {@value #LOCALE_PROPERTY} system property
+ * (a language tag such as {@code hu-HU}) and the date pattern from the {@value #DATE_PATTERN_PROPERTY} system property
+ * ({@value #DEFAULT_DATE_PATTERN} if unset), or with {@link #configure(Locale, String)}. Without a configured locale,
+ * the output uses {@link Locale#ROOT} and ASCII digits whatever the default locale of the host. The formatter is
+ * built once per configuration. With the default pattern and a locale using ASCII digits, dates are formatted without
+ * a {@link DateTimeFormatter} at all.
+ * <p>
+ * ISO date-times are parsed by hand and invalid input, like the {@code 1941-02-45} of a mistyped birthday, is reported
+ * with a {@code null} result instead of an exception, so bad data costs no more than good data.
+ */
+public class Formats {
+
+    /**
+     * The system property holding the language tag of the output locale.
+     */
+    public static final String LOCALE_PROPERTY = "xmltodocx.locale";
+
+    /**
+     * The system property holding the {@link DateTimeFormatter} pattern of the output dates.
+     */
+    public static final String DATE_PATTERN_PROPERTY = "xmltodocx.datePattern";
+
+    /**
+     * The default pattern of the output dates.
+     */
+    public static final String DEFAULT_DATE_PATTERN = "yyyy.MM.dd.";
+
+    /**
+     * The output formats of a configuration.
+     *
+     * @param locale the output locale
+     * @param datePattern the pattern of the output dates
+     * @param dateFormat the formatter of the output dates, or {@code null} if the fast path formats them
+     * @param zeroDigit the character of the digit zero in the locale
+     */
+    private record Config(Locale locale, String datePattern, DateTimeFormatter dateFormat, char zeroDigit) {
+    }
+
+    /**
+     * Today's date and its formatted value under a configuration, recomputed when the day or the configuration
+     * changes.
+     */
+    private record Today(LocalDate date, Config config, String value) {
+    }
+
+    private static volatile Config config = createConfig(
+            System.getProperty(LOCALE_PROPERTY) != null
+                    ? Locale.forLanguageTag(System.getProperty(LOCALE_PROPERTY))
+                    : Locale.ROOT,
+            System.getProperty(DATE_PATTERN_PROPERTY, DEFAULT_DATE_PATTERN));
+
+    private static volatile Today today = new Today(LocalDate.MIN, null, null);
+
+    /**
+     * Sets the output formats. Values already formatted, such as the birthdays of loaded XML data, are not changed.
+     *
+     * @param locale the output locale
+     * @param datePattern the {@link DateTimeFormatter} pattern of the output dates
+     * @throws IllegalArgumentException if the pattern is invalid
+     */
+    public static void configure(Locale locale, String datePattern) {
+        config = createConfig(locale, datePattern);
+    }
+
+    /**
+     * Returns the output locale.
+     *
+     * @return the locale
+     */
+    public static Locale getLocale() {
+        return config.locale();
+    }
+
+    /**
+     * Returns the pattern of the output dates.
+     *
+     * @return the date pattern
+     */
+    public static String getDatePattern() {
+        return config.datePattern();
+    }
+
+    /**
+     * Formats a date in the output date format.
+     *
+     * @param date the date
+     * @return the formatted date
+     */
+    public static String formatDate(LocalDate date) {
+        var current = config;
+        if (current.dateFormat() != null || date.getYear() < 1 || date.getYear() > 9999) {
+            return date.format(current.dateFormat() != null ? current.dateFormat() : dateFormat(current));
+        }
+
+        // yyyy.MM.dd.
+        var chars = new char[11];
+        writeDigits(chars, 0, date.getYear(), 4);
+        chars[4] = '.';
+        writeDigits(chars, 5, date.getMonthValue(), 2);
+        chars[7] = '.';
+        writeDigits(chars, 8, date.getDayOfMonth(), 2);
+        chars[10] = '.';
+        return new String(chars);
+    }
+
+    /**
+     * Returns today's date in the output date format. The formatted value is cached for the rest of the day.
+     *
+     * @return today's date
+     */
+    public static String today() {
+        var now = LocalDate.now();
+        var current = config;
+        var cached = today;
+        if (!cached.date().equals(now) || cached.config() != current) {
+            cached = new Today(now, current, formatDate(now));
+            today = cached;
+        }
+        return cached.value();
+    }
+
+    /**
+     * Formats an integer with the digits of the output locale, without grouping, e.g. a postal code.
+     *
+     * @param value the integer
+     * @return the formatted integer
+     */
+    public static String formatInteger(int value) {
+        var text = Integer.toString(value);
+        var zeroDigit = config.zeroDigit();
+        if (zeroDigit == '0') {
+            return text;
+        }
+
+        var chars = text.toCharArray();
+        for (var i = 0; i < chars.length; i++) {
+            if (chars[i] >= '0' && chars[i] <= '9') {
+                chars[i] = (char) (zeroDigit + chars[i] - '0');
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Reformats an ISO date-time, such as {@code 1941-02-15T13:09:12.561Z}, as a date in the output date format.
+     *
+     * @param isoDateTime the ISO date-time, may be {@code null}
+     * @return the formatted date, or the input unchanged if it is not a valid ISO date-time
+     */
+    public static String reformatIsoDateTime(String isoDateTime) {
+        var date = parseIsoDateTime(isoDateTime);
+        return date != null ? formatDate(date) : isoDateTime;
+    }
+
+    /**
+     * Parses the date of an ISO date-time without throwing on invalid input. The accepted input is that of
+     * {@link DateTimeFormatter#ISO_DATE_TIME} with a four-digit year and without a bracketed region ID:
+     * {@code yyyy-MM-ddTHH:mm[:ss[.fraction]]} followed by an optional {@code Z} or {@code +HH:MM[:SS]} offset. Fields
+     * are validated strictly, so {@code 1941-02-30T00:00} is invalid.
+     *
+     * @param text the text to parse, may be {@code null}
+     * @return the date, or {@code null} if the text is not a valid ISO date-time
+     */
+    public static LocalDate parseIsoDateTime(CharSequence text) {
+        if (text == null || text.length() < 16) {
+            return null;
+        }
+
+        var year = digits(text, 0, 4);
+        var month = digits(text, 5, 2);
+        var day = digits(text, 8, 2);
+        var hour = digits(text, 11, 2);
+        var minute = digits(text, 14, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(13) != ':'
+                || (text.charAt(10) != 'T' && text.charAt(10) != 't')) {
+            return null;
+        }
+        if (day > Month.of(month).length(Year.isLeap(year))) {
+            return null;
+        }
+
+        var i = 16;
+        if (i < text.length() && text.charAt(i) == ':') {
+            var second = digits(text, i + 1, 2);
+            if (second < 0 || second > 59) {
+                return null;
+            }
+            i += 3;
+            if (i < text.length() && text.charAt(i) == '.') {
+                var end = i + 1;
+                while (end < text.length() && end - i <= 9 && isDigit(text.charAt(end))) {
+                    end++;
+                }
+                i = end;
+            }
+        }
+
+        return offsetEnd(text, i) == text.length() ? LocalDate.of(year, month, day) : null;
+    }
+
+    /**
+     * Returns the index after the optional offset starting at the specified index, or -1 if the offset is invalid.
+     */
+    private static int offsetEnd(CharSequence text, int i) {
+        if (i == text.length()) {
+            return i;
+        }
+        var c = text.charAt(i);
+        if (c == 'Z' || c == 'z') {
+            return i + 1;
+        }
+        if (c != '+' && c != '-') {
+            return -1;
+        }
+
+        var hours = digits(text, i + 1, 2);
+        var minutes = i + 3 < text.length() && text.charAt(i + 3) == ':' ? digits(text, i + 4, 2) : -1;
+        if (hours < 0 || hours > 18 || minutes < 0 || minutes > 59) {
+            return -1;
+        }
+        i += 6;
+        if (i < text.length() && text.charAt(i) == ':') {
+            var seconds = digits(text, i + 1, 2);
+            if (seconds < 0 || seconds > 59) {
+                return -1;
+            }
+            i += 3;
+        }
+        return i;
+    }
+
+    /**
+     * Parses a fixed number of ASCII digits.
+     *
+     * @return the value, or -1 if the text is too short or holds another character
+     */
+    private static int digits(CharSequence text, int start, int count) {
+        if (start + count > text.length()) {
+            return -1;
+        }
+        var value = 0;
+        for (var i = start; i < start + count; i++) {
+            var c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static void writeDigits(char[] chars, int start, int value, int count) {
+        for (var i = start + count - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static Config createConfig(Locale locale, String datePattern) {
+        var zeroDigit = DecimalStyle.of(locale).getZeroDigit();
+        var formatter = dateFormat(locale, datePattern, zeroDigit);
+        // The default pattern has no localized text, so only the digits depend on the locale
+        var fast = datePattern.equals(DEFAULT_DATE_PATTERN) && zeroDigit == '0';
+        return new Config(locale, datePattern, fast ? null : formatter, zeroDigit);
+    }
+
+    private static DateTimeFormatter dateFormat(Config config) {
+        return dateFormat(config.locale(), config.datePattern(), config.zeroDigit());
+    }
+
+    private static DateTimeFormatter dateFormat(Locale locale, String datePattern, char zeroDigit) {
+        return DateTimeFormatter.ofPattern(datePattern, locale)
+                .withDecimalStyle(DecimalStyle.STANDARD.withZeroDigit(zeroDigit));
+    }
+
+}
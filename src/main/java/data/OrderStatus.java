@@ -21,6 +21,11 @@ public enum OrderStatus {
      */
     public final String name;
 
+    /**
+     * The order statuses indexed by their id, built once.
+     */
+    private static final OrderStatus[] BY_ID = indexById();
+
     /**
      * Get the name of an order status from its id.
      *
@@ -29,17 +34,24 @@ public enum OrderStatus {
      * @throws IllegalArgumentException If no order status with the given id is found.
      */
     public static String getNameFromId(int id) {
-        OrderStatus[] var1 = values();
-        int var2 = var1.length;
-
-        for(int var3 = 0; var3 < var2; ++var3) {
-            OrderStatus orderStatus = var1[var3];
-            if (orderStatus.id == id) {
-                return orderStatus.name;
-            }
+        if (id >= 0 && id < BY_ID.length && BY_ID[id] != null) {
+            return BY_ID[id].name;
         }
 
         throw new IllegalArgumentException("No order status with id %d found.".formatted(id));
     }
 
+    private static OrderStatus[] indexById() {
+        var maxId = 0;
+        for (OrderStatus orderStatus : values()) {
+            maxId = Math.max(maxId, orderStatus.id);
+        }
+
+        var byId = new OrderStatus[maxId + 1];
+        for (OrderStatus orderStatus : values()) {
+            byId[orderStatus.id] = orderStatus;
+        }
+        return byId;
+    }
+
 }
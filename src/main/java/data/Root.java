@@ -24,12 +24,12 @@ public class Root {
      */
     private DocumentData documentData;
 
-    @XmlElement(name="customer_details")
+    @XmlElement(name="customer_details", required = true)
     public CustomerDetails getCustomerDetails() {
         return customerDetails;
     }
 
-    @XmlElement(name="document_data")
+    @XmlElement(name="document_data", required = true)
     public DocumentData getDocumentData() {
         return documentData;
     }
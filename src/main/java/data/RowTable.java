@@ -0,0 +1,272 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the row data of a table in columnar form.
+ * <p>
+ * Every distinct value is stored once in a string pool, and the cells of all rows are indexes into the pool, stored
+ * row after row in a single {@code int} array. A row is a range of that array, so a table of any size is made of
+ * three arrays instead of a {@link RowData} with its own list per row, and values repeated across rows, such as a
+ * common description, are shared. The table is immutable; it is created with a {@link Builder} and read by index or
+ * with a {@link Cursor}.
+ * <p>
+ * As with {@link RowData}, the values of a row are numbered from 0, so column 0 corresponds to {@code value1}.
+ */
+public final class RowTable {
+
+    /**
+     * A table without rows.
+     */
+    public static final RowTable EMPTY = new Builder().build();
+
+    private static final int NULL_VALUE = -1;
+
+    /**
+     * The distinct values of the table.
+     */
+    private final String[] strings;
+
+    /**
+     * The index of the first cell of every row, followed by the number of cells.
+     */
+    private final int[] rowStarts;
+
+    /**
+     * The index into {@link #strings} of every cell, or {@link #NULL_VALUE}.
+     */
+    private final int[] cells;
+
+    private RowTable(String[] strings, int[] rowStarts, int[] cells) {
+        this.strings = strings;
+        this.rowStarts = rowStarts;
+        this.cells = cells;
+    }
+
+    /**
+     * Creates a table from row data objects. A {@code null} entry is a row without values.
+     *
+     * @param rowData the row data, may be {@code null}
+     * @return the table
+     */
+    public static RowTable of(RowData[] rowData) {
+        if (rowData == null) {
+            return EMPTY;
+        }
+        var builder = new Builder();
+        for (var row : rowData) {
+            builder.add(row != null ? row.getValues() : List.of());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return rowStarts.length - 1;
+    }
+
+    /**
+     * Returns the number of values of a row.
+     *
+     * @param row the index of the row
+     * @return the number of values
+     */
+    public int columns(int row) {
+        return rowStarts[row + 1] - rowStarts[row];
+    }
+
+    /**
+     * Returns a value of a row.
+     *
+     * @param row the index of the row
+     * @param column the zero-based index of the value
+     * @return the value, or an empty string if the row has fewer values
+     */
+    public String get(int row, int column) {
+        var start = rowStarts[row];
+        if (column >= rowStarts[row + 1] - start) {
+            return "";
+        }
+        var cell = cells[start + column];
+        return cell != NULL_VALUE ? strings[cell] : null;
+    }
+
+    /**
+     * Returns the number of distinct values in the table.
+     *
+     * @return the number of distinct values
+     */
+    public int distinctValues() {
+        return strings.length;
+    }
+
+    /**
+     * Returns a cursor positioned before the first row.
+     *
+     * @return the cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Creates a row data object per row. The objects are copies, changing them does not change the table.
+     *
+     * @return the row data
+     */
+    public RowData[] toRowData() {
+        var rowData = new RowData[size()];
+        for (var r = 0; r < rowData.length; r++) {
+            var values = new String[columns(r)];
+            for (var c = 0; c < values.length; c++) {
+                values[c] = get(r, c);
+            }
+            rowData[r] = new RowData();
+            rowData[r].getValues().addAll(Arrays.asList(values));
+        }
+        return rowData;
+    }
+
+    /**
+     * Reads the rows of the table in order, without creating an object per row.
+     */
+    public final class Cursor {
+
+        private int row = -1;
+
+        private Cursor() {
+        }
+
+        /**
+         * Moves to the next row.
+         *
+         * @return {@code true} if the cursor is on a row, {@code false} if there are no more rows
+         */
+        public boolean next() {
+            if (row < size()) {
+                row++;
+            }
+            return row < size();
+        }
+
+        /**
+         * Returns the index of the current row.
+         *
+         * @return the index of the row
+         */
+        public int row() {
+            return row;
+        }
+
+        /**
+         * Returns the number of values of the current row.
+         *
+         * @return the number of values
+         */
+        public int columns() {
+            return RowTable.this.columns(row);
+        }
+
+        /**
+         * Returns a value of the current row.
+         *
+         * @param column the zero-based index of the value
+         * @return the value, or an empty string if the row has fewer values
+         */
+        public String get(int column) {
+            return RowTable.this.get(row, column);
+        }
+
+    }
+
+    /**
+     * Builds a table row by row, adding every distinct value to the string pool once.
+     */
+    public static final class Builder {
+
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        private String[] strings = new String[16];
+
+        private int[] rowStarts = new int[17];
+
+        private int[] cells = new int[32];
+
+        private int rowCount;
+
+        private int cellCount;
+
+        /**
+         * Appends a row.
+         *
+         * @param values the values of the row, may contain {@code null}
+         * @return this builder
+         */
+        public Builder add(List<String> values) {
+            if (rowCount + 2 > rowStarts.length) {
+                rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+            }
+            if (cellCount + values.size() > cells.length) {
+                cells = Arrays.copyOf(cells, Math.max(cells.length * 2, cellCount + values.size()));
+            }
+            for (var value : values) {
+                cells[cellCount++] = value != null ? index(value) : NULL_VALUE;
+            }
+            rowStarts[++rowCount] = cellCount;
+            return this;
+        }
+
+        /**
+         * Appends the rows of a table.
+         *
+         * @param table the table
+         * @return this builder
+         */
+        public Builder addAll(RowTable table) {
+            var values = new ArrayList<String>();
+            for (var cursor = table.cursor(); cursor.next(); ) {
+                values.clear();
+                for (var c = 0; c < cursor.columns(); c++) {
+                    values.add(cursor.get(c));
+                }
+                add(values);
+            }
+            return this;
+        }
+
+        /**
+         * Creates the table of the rows added so far. The builder can be used further.
+         *
+         * @return the table
+         */
+        public RowTable build() {
+            return new RowTable(Arrays.copyOf(strings, indexes.size()), Arrays.copyOf(rowStarts, rowCount + 1),
+                    Arrays.copyOf(cells, cellCount));
+        }
+
+        private int index(String value) {
+            var index = indexes.get(value);
+            if (index != null) {
+                return index;
+            }
+
+            var next = indexes.size();
+            if (next == strings.length) {
+                strings = Arrays.copyOf(strings, strings.length * 2);
+            }
+            strings[next] = value;
+            indexes.put(value, next);
+            return next;
+        }
+
+    }
+
+}
@@ -1,26 +1,122 @@
 package data;
 
-import lombok.Setter;
-
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import java.util.AbstractList;
+import java.util.List;
 
 /**
  * Represents the table section of the XML file.
+ * <p>
+ * The rows are kept in columnar form, see {@link RowTable}. While the XML file is unmarshalled, every
+ * {@code row-data} element is added to the table as soon as it is read, so its {@link RowData} object is garbage
+ * right away instead of being kept for the lifetime of the document.
  */
-@Setter
 @XmlRootElement(name = "table")
+@XmlAccessorType(XmlAccessType.NONE)
 public class Table {
 
     /**
-     * The row data section of the document,
-     * represented by an array of {@link RowData}.
+     * The row data section of the document.
      */
-    private RowData[] rowData;
+    private RowTable rows = RowTable.EMPTY;
 
-    @XmlElement(name = "row-data")
+    /**
+     * Receives the rows being unmarshalled, or {@code null} if the table is complete.
+     */
+    private RowTable.Builder builder;
+
+    /**
+     * Returns the rows of the table.
+     *
+     * @return the rows, never {@code null}
+     */
+    public RowTable getRows() {
+        if (builder != null) {
+            rows = builder.build();
+            builder = null;
+        }
+        return rows;
+    }
+
+    /**
+     * Sets the rows of the table.
+     *
+     * @param rows the rows, {@code null} for none
+     */
+    public void setRows(RowTable rows) {
+        this.rows = rows != null ? rows : RowTable.EMPTY;
+        builder = null;
+    }
+
+    /**
+     * Returns the rows of the table as one {@link RowData} per row. The objects are copies, use
+     * {@link #setRowData(RowData[])} to apply changes to them.
+     *
+     * @return the row data
+     */
     public RowData[] getRowData() {
-        return rowData;
+        return getRows().toRowData();
+    }
+
+    /**
+     * Sets the rows of the table.
+     *
+     * @param rowData the row data, {@code null} for none
+     */
+    public void setRowData(RowData[] rowData) {
+        setRows(RowTable.of(rowData));
+    }
+
+    /**
+     * Returns the rows as JAXB binds them, one {@code row-data} element per row.
+     */
+    @XmlElement(name = "row-data")
+    private List<RowData> getRowDataList() {
+        return new RowDataList();
+    }
+
+    private void afterUnmarshal(Unmarshaller unmarshaller, Object parent) {
+        getRows();
+    }
+
+    /**
+     * A view of the rows that adds the rows JAXB unmarshals to the table.
+     */
+    private class RowDataList extends AbstractList<RowData> {
+
+        @Override
+        public RowData get(int index) {
+            var rowTable = getRows();
+            var rowData = new RowData();
+            for (var c = 0; c < rowTable.columns(index); c++) {
+                rowData.getValues().add(rowTable.get(index, c));
+            }
+            return rowData;
+        }
+
+        @Override
+        public int size() {
+            return getRows().size();
+        }
+
+        @Override
+        public boolean add(RowData rowData) {
+            if (builder == null) {
+                builder = new RowTable.Builder().addAll(rows);
+            }
+            builder.add(rowData.getValues());
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            setRows(RowTable.EMPTY);
+        }
+
     }
 
 }
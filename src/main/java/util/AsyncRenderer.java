@@ -0,0 +1,286 @@
+package util;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * The {@code AsyncRenderer} class renders documents against one {@link CompiledTemplate} without blocking the caller.
+ * <p>
+ * A request runs as a chain of {@link CompletableFuture} stages: unmarshalling the XML data, rendering the template
+ * and saving and compressing the DOCX file are separate tasks on the executor, so the stages of concurrent requests
+ * interleave instead of every request holding a thread from start to end. Files are read and written with an
+ * {@link AsynchronousFileChannel}, so no executor thread waits for the disk while other requests have CPU work left.
+ * <p>
+ * The returned future can be cancelled, and a request fails with a {@link java.util.concurrent.TimeoutException} once
+ * its timeout has expired. Either way the stages of the request that have not started yet are skipped; a stage that is
+ * already running is not interrupted, its result is discarded. The output file is written to a temporary file in the
+ * same directory and moved into place only if the request is still active, so a cancelled, timed out or failed
+ * request leaves the output file as it was.
+ */
+public class AsyncRenderer {
+
+    private final CompiledTemplate template;
+
+    private final PlaceholderRegistry registry;
+
+    private final Executor executor;
+
+    private final Duration timeout;
+
+    /**
+     * Creates an asynchronous renderer with the default placeholders and without a timeout.
+     *
+     * @param template the template to render every request against
+     * @param executor the executor running the stages, e.g. a fork-join pool
+     */
+    public AsyncRenderer(CompiledTemplate template, Executor executor) {
+        this(template, PlaceholderRegistry.defaults(), executor, null);
+    }
+
+    /**
+     * Creates an asynchronous renderer. The executor is owned by the caller and is not shut down by the renderer.
+     *
+     * @param template the template to render every request against
+     * @param registry the resolvers of the placeholder values
+     * @param executor the executor running the stages, e.g. a fork-join pool
+     * @param timeout the default timeout of a request, or {@code null} for none
+     */
+    public AsyncRenderer(CompiledTemplate template, PlaceholderRegistry registry, Executor executor,
+                         Duration timeout) {
+        this.template = template;
+        this.registry = registry;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Renders XML data with the default timeout.
+     *
+     * @param xml the XML data
+     * @return the DOCX file
+     */
+    public CompletableFuture<byte[]> render(byte[] xml) {
+        return render(xml, timeout);
+    }
+
+    /**
+     * Renders XML data.
+     *
+     * @param xml the XML data
+     * @param timeout the timeout of the request, or {@code null} for none
+     * @return the DOCX file
+     */
+    public CompletableFuture<byte[]> render(byte[] xml, Duration timeout) {
+        var result = AsyncRenderer.<byte[]>newResult(timeout);
+        CompletableFuture.completedFuture(xml)
+                .thenApplyAsync(stage(result, XmlLoader::load), executor)
+                .thenApplyAsync(stage(result, xmlData -> template.render(xmlData, registry)), executor)
+                .thenApplyAsync(docxData -> save(docxData, result), executor)
+                .whenComplete(completeWith(result));
+        return result;
+    }
+
+    /**
+     * Renders an XML file into a DOCX file with the default timeout.
+     *
+     * @param xmlFile the XML file
+     * @param docxFile the DOCX file to write, replaced if it exists
+     * @return the DOCX file
+     */
+    public CompletableFuture<Path> render(Path xmlFile, Path docxFile) {
+        return render(xmlFile, docxFile, timeout);
+    }
+
+    /**
+     * Renders an XML file into a DOCX file.
+     *
+     * @param xmlFile the XML file
+     * @param docxFile the DOCX file to write, replaced if it exists
+     * @param timeout the timeout of the request, or {@code null} for none
+     * @return the DOCX file
+     */
+    public CompletableFuture<Path> render(Path xmlFile, Path docxFile, Duration timeout) {
+        var result = AsyncRenderer.<Path>newResult(timeout);
+        read(xmlFile)
+                .thenApplyAsync(stage(result, XmlLoader::load), executor)
+                .thenApplyAsync(stage(result, xmlData -> template.render(xmlData, registry)), executor)
+                .thenApplyAsync(docxData -> save(docxData, result), executor)
+                .thenCompose(stage(result, docx -> write(docxFile, docx, result)))
+                .thenApply(written -> docxFile)
+                .whenComplete(completeWith(result));
+        return result;
+    }
+
+    private static <T> CompletableFuture<T> newResult(Duration timeout) {
+        var result = new CompletableFuture<T>();
+        if (timeout != null) {
+            result.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        return result;
+    }
+
+    /**
+     * Wraps a stage of a request, so it is skipped once the request is cancelled or timed out.
+     */
+    private static <T, R> Function<T, R> stage(CompletableFuture<?> result, Function<T, R> function) {
+        return input -> {
+            checkActive(result);
+            return function.apply(input);
+        };
+    }
+
+    private static void checkActive(CompletableFuture<?> result) {
+        if (result.isDone()) {
+            throw new CancellationException("Request cancelled or timed out");
+        }
+    }
+
+    private static <T> BiConsumer<T, Throwable> completeWith(CompletableFuture<T> result) {
+        return (value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause()
+                        : error);
+            }
+        };
+    }
+
+    /**
+     * Saves and closes a rendered document. The document is closed even if the request is no longer active.
+     */
+    private byte[] save(XWPFDocument docxData, CompletableFuture<?> result) {
+        try (docxData) {
+            checkActive(result);
+            var out = new ByteArrayOutputStream();
+            DataHandler.writeDocx(docxData, out, template.getSaveOptions());
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving DOCX data", e);
+        }
+    }
+
+    private static CompletableFuture<byte[]> read(Path path) {
+        var future = new CompletableFuture<byte[]>();
+        try {
+            var channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+            var size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                channel.close();
+                throw new IOException("File too large: " + path);
+            }
+            var buffer = ByteBuffer.allocate((int) size);
+            channel.read(buffer, 0, null, new CompletionHandler<Integer, Void>() {
+
+                @Override
+                public void completed(Integer count, Void attachment) {
+                    if (count >= 0 && buffer.hasRemaining()) {
+                        channel.read(buffer, buffer.position(), null, this);
+                        return;
+                    }
+                    close(channel);
+                    var bytes = buffer.array();
+                    future.complete(buffer.hasRemaining() ? Arrays.copyOf(bytes, buffer.position()) : bytes);
+                }
+
+                @Override
+                public void failed(Throwable error, Void attachment) {
+                    close(channel);
+                    future.completeExceptionally(new RuntimeException("Error loading XML data", error));
+                }
+
+            });
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(new RuntimeException("Error loading XML data", e));
+        }
+        return future;
+    }
+
+    /**
+     * Writes a DOCX file. The bytes go to a temporary file in the same directory, which replaces the DOCX file only if
+     * the request is still active once it is written, so a cancelled, timed out or failed request never leaves a
+     * partial file behind.
+     */
+    private static CompletableFuture<Void> write(Path path, byte[] bytes, CompletableFuture<?> result) {
+        var future = new CompletableFuture<Void>();
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(path.toAbsolutePath().getParent(), "render", ".tmp");
+            var written = temporary;
+            var channel = AsynchronousFileChannel.open(written, StandardOpenOption.WRITE);
+            var buffer = ByteBuffer.wrap(bytes);
+            channel.write(buffer, 0, null, new CompletionHandler<Integer, Void>() {
+
+                @Override
+                public void completed(Integer count, Void attachment) {
+                    if (buffer.hasRemaining()) {
+                        channel.write(buffer, buffer.position(), null, this);
+                        return;
+                    }
+                    try {
+                        channel.close();
+                        checkActive(result);
+                        Files.move(written, path, StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.ATOMIC_MOVE);
+                        future.complete(null);
+                    } catch (CancellationException e) {
+                        delete(written);
+                        future.completeExceptionally(e);
+                    } catch (IOException e) {
+                        failed(e, attachment);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable error, Void attachment) {
+                    close(channel);
+                    delete(written);
+                    future.completeExceptionally(new RuntimeException("Error saving DOCX data", error));
+                }
+
+            });
+        } catch (IOException | RuntimeException e) {
+            if (temporary != null) {
+                delete(temporary);
+            }
+            future.completeExceptionally(new RuntimeException("Error saving DOCX data", e));
+        }
+        return future;
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Only a leftover temporary file, the request has failed already
+        }
+    }
+
+    private static void close(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // The data has been transferred already
+        }
+    }
+
+}
@@ -0,0 +1,266 @@
+package util;
+
+import data.Root;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * The {@code BatchRenderer} class renders many XML records against one {@link CompiledTemplate} concurrently.
+ * <p>
+ * Every record is rendered into its own copy of the template, so workers never share a mutable
+ * {@link org.apache.poi.xwpf.usermodel.XWPFDocument}. At most {@code maxInFlight} records are loaded, rendered or
+ * written at the same time; reading further records blocks until a worker has finished, which bounds the memory held
+ * by documents that are waiting to be written.
+ */
+public class BatchRenderer {
+
+    /**
+     * A record to render.
+     *
+     * @param id the identifier of the record, also used as the name of the output file
+     * @param source loads the XML data of the record; called on the worker thread
+     */
+    public record Record(String id, Supplier<Root> source) {
+    }
+
+    /**
+     * Receives the outcome of every record. Callbacks are invoked on the worker threads.
+     */
+    public interface BatchListener {
+
+        /**
+         * Called after a record has been rendered and written.
+         *
+         * @param id the identifier of the record
+         * @param output the path of the written DOCX file
+         */
+        default void onSuccess(String id, Path output) {
+        }
+
+        /**
+         * Called when loading, rendering or writing a record failed.
+         *
+         * @param id the identifier of the record
+         * @param error the cause of the failure
+         */
+        default void onFailure(String id, Throwable error) {
+        }
+
+    }
+
+    /**
+     * The outcome of a batch.
+     *
+     * @param succeeded the number of records rendered successfully
+     * @param failures the failed records, by identifier
+     */
+    public record BatchResult(int succeeded, Map<String, Throwable> failures) {
+
+        public int failed() {
+            return failures.size();
+        }
+
+    }
+
+    private final CompiledTemplate template;
+
+    private final ExecutorService executor;
+
+    private final int maxInFlight;
+
+    private final BatchListener listener;
+
+    /**
+     * Creates a batch renderer. The executor is owned by the caller and is not shut down by the renderer.
+     *
+     * @param template the template to render every record against
+     * @param executor the executor running the workers, e.g. a virtual thread or fork-join executor
+     * @param maxInFlight the maximum number of records processed at the same time
+     * @param listener the listener receiving the outcome of every record
+     */
+    public BatchRenderer(CompiledTemplate template, ExecutorService executor, int maxInFlight,
+                         BatchListener listener) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.template = template;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.listener = listener != null ? listener : new BatchListener() {
+        };
+    }
+
+    /**
+     * Renders every record and writes it to {@code <outputDir>/<id>.docx}. Returns when all records are finished.
+     *
+     * @param records the records to render
+     * @param outputDir the directory to write the DOCX files to
+     * @return the outcome of the batch
+     */
+    public BatchResult render(Iterator<Record> records, Path outputDir) {
+        try {
+            Files.createDirectories(outputDir);
+        } catch (IOException e) {
+            throw new RuntimeException("Error creating output directory: " + outputDir, e);
+        }
+
+        var inFlight = new Semaphore(maxInFlight);
+        var succeeded = new AtomicInteger();
+        var failures = new ConcurrentHashMap<String, Throwable>();
+
+        try {
+            while (records.hasNext()) {
+                var record = records.next();
+                inFlight.acquire();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            var output = renderRecord(record, outputDir);
+                            succeeded.incrementAndGet();
+                            listener.onSuccess(record.id(), output);
+                        } catch (Exception e) {
+                            failures.put(record.id(), e);
+                            listener.onFailure(record.id(), e);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    failures.put(record.id(), e);
+                    listener.onFailure(record.id(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Batch rendering interrupted", e);
+        } finally {
+            // Wait for the remaining workers, also when reading the records failed, so no worker writes output or
+            // calls the listener after render has returned
+            inFlight.acquireUninterruptibly(maxInFlight);
+            inFlight.release(maxInFlight);
+        }
+
+        return new BatchResult(succeeded.get(), Map.copyOf(failures));
+    }
+
+    private Path renderRecord(Record record, Path outputDir) throws IOException {
+        var output = outputDir.resolve(record.id() + ".docx");
+        try (var docxData = template.render(record.source().get())) {
+            DataHandler.saveDocx(docxData, output.toString(), template.getSaveOptions());
+        }
+        return output;
+    }
+
+    /**
+     * Returns one record per {@code .xml} file in the specified directory, in file name order.
+     *
+     * @param directory the directory containing the XML files
+     * @return the records of the directory
+     */
+    public static Iterator<Record> fromDirectory(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return fromFiles(files
+                    .filter(path -> path.getFileName().toString().endsWith(".xml"))
+                    .sorted()
+                    .toList());
+        } catch (IOException e) {
+            throw new RuntimeException("Error listing XML files: " + directory, e);
+        }
+    }
+
+    /**
+     * Returns one record per XML file. The files are loaded lazily by the workers.
+     * <p>
+     * A record is identified by the base name of its file. Files with the same name in different directories would
+     * be written to the same output file, so a repeated name gets a {@code -2}, {@code -3}, ... suffix.
+     *
+     * @param files the XML files, each holding a single {@code <root>} record
+     * @return the records of the files
+     */
+    public static Iterator<Record> fromFiles(List<Path> files) {
+        var ids = new HashSet<String>();
+        var records = new ArrayList<Record>(files.size());
+        for (var path : files) {
+            var baseName = baseName(path);
+            var id = baseName;
+            for (var n = 2; !ids.add(id); n++) {
+                id = baseName + "-" + n;
+            }
+            records.add(new Record(id, () -> XmlLoader.load(path)));
+        }
+        return records.iterator();
+    }
+
+    /**
+     * Returns the records of an XML file holding any number of {@code <root>} elements, see {@link XmlRecordReader}.
+     * The file is streamed: every record is unmarshalled when the iterator reaches it, and the file is closed once the
+     * last record has been read. A record the reader rejects is reported as a failure of that record alone.
+     *
+     * @param file the multi-record XML file
+     * @return the records of the file, identified as {@code <file name>-<n>}
+     */
+    public static Iterator<Record> fromMultiRecordFile(Path file) {
+        var reader = XmlRecordReader.open(file);
+        var baseName = baseName(file);
+        return new Iterator<>() {
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    if (reader.hasNext()) {
+                        return true;
+                    }
+                } catch (RuntimeException e) {
+                    reader.close();
+                    throw e;
+                }
+                reader.close();
+                return false;
+            }
+
+            @Override
+            public Record next() {
+                index++;
+                var id = baseName + "-" + index;
+                Root xmlData;
+                try {
+                    xmlData = reader.next();
+                } catch (NoSuchElementException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    // A rejected record fails on its own, before any template work
+                    return new Record(id, () -> {
+                        throw e;
+                    });
+                }
+                return new Record(id, () -> xmlData);
+            }
+
+        };
+    }
+
+    private static String baseName(Path path) {
+        var fileName = path.getFileName().toString();
+        var dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+
+}
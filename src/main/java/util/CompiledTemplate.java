@@ -0,0 +1,463 @@
+package util;
+
+import data.Root;
+import data.RowTable;
+import org.apache.poi.common.usermodel.PictureType;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code CompiledTemplate} class is a DOCX template that has been parsed once and can be rendered for any number
+ * of {@link Root} records.
+ * <p>
+ * Compiling the template records where every {@code <placeholder>} is located (paragraph, run and character offsets),
+ * which table rows are repeated per {@link RowTable} row (see {@link TableRowExpander}) and which paragraphs hold the
+ * logo placeholder, in every part visited by {@link DocumentWalker}: headers, body, footers, footnotes, endnotes,
+ * nested tables and text boxes. The placeholders are located with a {@link PlaceholderMatcher}, so text that is not a
+ * registered placeholder, e.g. a literal {@code a < b}, is left unchanged. Rendering opens a fresh copy of the
+ * template from a {@link TemplateSnapshot} and writes the values straight into those locations in a single walk,
+ * without scanning the text of the document again.
+ * <p>
+ * A compiled template is immutable and every render works on its own copy of the document, so a single instance can
+ * be shared by any number of threads.
+ */
+public class CompiledTemplate {
+
+    /**
+     * A placeholder location in the template.
+     *
+     * @param paragraph the index of the paragraph in the order of {@link DocumentWalker#walk}
+     * @param match the location of the placeholder in the paragraph
+     */
+    private record Site(int paragraph, PlaceholderScanner.Match match) {
+    }
+
+    /**
+     * Writes the values of a record into a fresh copy of the template while {@link DocumentWalker} walks it.
+     * <p>
+     * The template rows are expanded when their table is visited and the generated rows are skipped, like the template
+     * rows were skipped when the template was compiled, so the paragraphs are counted the same way.
+     */
+    private class Renderer implements DocumentWalker.Visitor {
+
+        private final Map<String, String> values;
+
+        private final RowTable rows;
+
+        /**
+         * Receives the locations of the values written, or {@code null} if they are not recorded.
+         */
+        private final List<IncrementalRenderer.Slot> slots;
+
+        private final Set<XWPFTableRow> generatedRows = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private int tableIndex;
+
+        private int paragraphIndex;
+
+        private int siteIndex;
+
+        private int logoIndex;
+
+        Renderer(Map<String, String> values, RowTable rows, List<IncrementalRenderer.Slot> slots) {
+            this.values = values;
+            this.rows = rows;
+            this.slots = slots;
+        }
+
+        @Override
+        public void visitTable(XWPFTable table) {
+            var template = rowTemplates.get(tableIndex++);
+            if (template != null) {
+                TableRowExpander.expand(table, template, rows, values::get);
+                var generated = rows != null ? rows.size() : 0;
+                generatedRows.addAll(table.getRows().subList(template.row(), template.row() + generated));
+                if (slots != null) {
+                    recordRows(table, template, generated);
+                }
+            }
+        }
+
+        @Override
+        public boolean visitRow(XWPFTableRow row) {
+            return !generatedRows.contains(row);
+        }
+
+        @Override
+        public void visitParagraph(XWPFParagraph paragraph, XWPFTableRow row) {
+            var end = siteIndex;
+            while (end < sites.size() && sites.get(end).paragraph() == paragraphIndex) {
+                end++;
+            }
+
+            // Replace in reverse order, so the offsets of earlier sites in the same paragraph stay valid
+            for (var i = end - 1; i >= siteIndex; i--) {
+                var match = sites.get(i).match();
+                PlaceholderScanner.replace(paragraph, match, values.get(match.name()));
+            }
+            if (slots != null && end > siteIndex) {
+                var matches = sites.subList(siteIndex, end).stream().map(Site::match).toList();
+                var written = matches.stream().map(match -> values.get(match.name())).toList();
+                IncrementalRenderer.record(paragraph, matches, written, -1, null, slots);
+            }
+            siteIndex = end;
+
+            if (logoIndex < logoSlots.length && logoSlots[logoIndex] == paragraphIndex) {
+                insertLogo(paragraph);
+                logoIndex++;
+            }
+            paragraphIndex++;
+        }
+
+        /**
+         * Records the locations of the values written into the generated rows of a table.
+         */
+        private void recordRows(XWPFTable table, TableRowExpander.RowTemplate template, int generated) {
+            var sites = template.sites();
+            for (var g = 0; g < generated; g++) {
+                var cells = table.getRow(template.row() + g).getTableCells();
+
+                // The sites are ordered by cell and paragraph, record the sites of every paragraph together
+                for (var first = 0; first < sites.size(); ) {
+                    var site = sites.get(first);
+                    var last = first + 1;
+                    while (last < sites.size() && sites.get(last).cell() == site.cell()
+                            && sites.get(last).paragraph() == site.paragraph()) {
+                        last++;
+                    }
+
+                    var matches = new ArrayList<PlaceholderScanner.Match>(last - first);
+                    var written = new ArrayList<String>(last - first);
+                    var columns = new int[last - first];
+                    for (var i = first; i < last; i++) {
+                        var rowSite = sites.get(i);
+                        matches.add(rowSite.match());
+                        columns[i - first] = rowSite.column();
+                        written.add(rowSite.column() >= 0
+                                ? rows.get(g, rowSite.column())
+                                : values.get(rowSite.match().name()));
+                    }
+                    var paragraph = cells.get(site.cell()).getParagraphs().get(site.paragraph());
+                    IncrementalRenderer.record(paragraph, matches, written, g, columns, slots);
+                    first = last;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The template with its parts already inflated, see {@link TemplateSnapshot}.
+     */
+    private final TemplateSnapshot snapshot;
+
+    private final List<Site> sites;
+
+    /**
+     * The indexes of the paragraphs holding the logo placeholder, in ascending order.
+     */
+    private final int[] logoSlots;
+
+    /**
+     * The template rows of the tables in the order of {@link DocumentWalker}; {@code null} for tables without
+     * template rows.
+     */
+    private final List<TableRowExpander.RowTemplate> rowTemplates;
+
+    private final Set<String> placeholderNames;
+
+    /**
+     * The names of the placeholders resolved through the {@link PlaceholderRegistry}, i.e. all but the row values.
+     */
+    private final Set<String> valueNames;
+
+    private final ImageAsset logo;
+
+    private final SaveOptions saveOptions;
+
+    /**
+     * The SHA-256 hash of the template bytes and the logo, in hexadecimal.
+     */
+    private final String hash;
+
+    private CompiledTemplate(ByteBuffer docx, String logoPlaceholder, ImageAsset logo, PlaceholderMatcher matcher) {
+        this.hash = hash(docx, logoPlaceholder, logo);
+        this.snapshot = TemplateSnapshot.of(docx);
+        this.saveOptions = SaveOptions.defaults().withTemplate(docx);
+        this.logo = logo;
+        if (logo == null) {
+            logoPlaceholder = null;
+        }
+
+        var docxData = newDocument();
+        var names = new LinkedHashSet<String>();
+        var resolvedNames = new HashSet<String>();
+        var templates = new ArrayList<TableRowExpander.RowTemplate>();
+        var templateRows = Collections.newSetFromMap(new IdentityHashMap<XWPFTableRow, Boolean>());
+        var foundSites = new ArrayList<Site>();
+        var foundSlots = new ArrayList<Integer>();
+        var placeholder = logoPlaceholder;
+
+        DocumentWalker.walk(docxData, new DocumentWalker.Visitor() {
+
+            private int paragraphIndex;
+
+            @Override
+            public void visitTable(XWPFTable table) {
+                var template = TableRowExpander.find(table, matcher, null);
+                templates.add(template);
+                if (template != null) {
+                    templateRows.addAll(table.getRows().subList(template.row(), template.row() + template.count()));
+                    for (var site : template.sites()) {
+                        names.add(site.match().name());
+                        if (site.column() < 0) {
+                            resolvedNames.add(site.match().name());
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public boolean visitRow(XWPFTableRow row) {
+                // Template rows are expanded per record, so their placeholders are not recorded as sites
+                return !templateRows.contains(row);
+            }
+
+            @Override
+            public void visitParagraph(XWPFParagraph paragraph, XWPFTableRow row) {
+                if (placeholder != null && paragraph.getText().contains(placeholder)) {
+                    foundSlots.add(paragraphIndex);
+                } else {
+                    for (var match : matcher.scan(paragraph)) {
+                        foundSites.add(new Site(paragraphIndex, match));
+                        names.add(match.name());
+                        resolvedNames.add(match.name());
+                    }
+                }
+                paragraphIndex++;
+            }
+
+        });
+
+        this.sites = List.copyOf(foundSites);
+        this.logoSlots = foundSlots.stream().mapToInt(Integer::intValue).toArray();
+        // Not List.copyOf, tables without template rows are recorded as null
+        this.rowTemplates = Collections.unmodifiableList(templates);
+        this.placeholderNames = Collections.unmodifiableSet(names);
+        this.valueNames = Set.copyOf(resolvedNames);
+    }
+
+    /**
+     * Compiles the specified DOCX template without logo support.
+     *
+     * @param docxPath the path of the DOCX template
+     * @return the compiled template
+     */
+    public static CompiledTemplate compile(String docxPath) {
+        return compile(docxPath, null, null);
+    }
+
+    /**
+     * Compiles the specified DOCX template. Paragraphs containing the logo placeholder are replaced with the image on
+     * every render.
+     *
+     * @param docxPath the path of the DOCX template
+     * @param logoPlaceholder the placeholder marking the logo, or {@code null} for no logo
+     * @param imageFilePath the path of the PNG logo, or {@code null} for no logo
+     * @return the compiled template
+     */
+    public static CompiledTemplate compile(String docxPath, String logoPlaceholder, String imageFilePath) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(Path.of(docxPath));
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading DOCX data", e);
+        }
+
+        return compile(bytes, logoPlaceholder, imageFilePath != null ? ImageCache.get(imageFilePath) : null);
+    }
+
+    /**
+     * Compiles a DOCX template held in memory, e.g. received from object storage.
+     *
+     * @param docxBytes the DOCX template
+     * @param logoPlaceholder the placeholder marking the logo, or {@code null} for no logo
+     * @param logo the logo, or {@code null} for no logo
+     * @return the compiled template
+     */
+    public static CompiledTemplate compile(byte[] docxBytes, String logoPlaceholder, ImageAsset logo) {
+        return compile(ByteBuffer.wrap(docxBytes), logoPlaceholder, logo);
+    }
+
+    /**
+     * Compiles a DOCX template from the remaining bytes of a buffer. With a memory-mapped template (see
+     * {@link DataHandler#mapFile(String)}), the template is inflated straight from the mapping, without a copy of the
+     * file on the heap.
+     *
+     * @param docxBuffer the DOCX template
+     * @param logoPlaceholder the placeholder marking the logo, or {@code null} for no logo
+     * @param logo the logo, or {@code null} for no logo
+     * @return the compiled template
+     */
+    public static CompiledTemplate compile(ByteBuffer docxBuffer, String logoPlaceholder, ImageAsset logo) {
+        var matcher = PlaceholderMatcher.forRegistry(PlaceholderRegistry.defaults());
+        return compile(docxBuffer, logoPlaceholder, logo, matcher);
+    }
+
+    /**
+     * Compiles a DOCX template whose placeholders are located with the specified matcher, e.g. the matcher of a
+     * registry with placeholders of its own. The other factory methods use the matcher of the
+     * {@link PlaceholderRegistry#defaults()}.
+     *
+     * @param docxBuffer the DOCX template
+     * @param logoPlaceholder the placeholder marking the logo, or {@code null} for no logo
+     * @param logo the logo, or {@code null} for no logo
+     * @param matcher the matcher of the placeholders, see {@link PlaceholderMatcher#forRegistry(PlaceholderRegistry)}
+     * @return the compiled template
+     */
+    public static CompiledTemplate compile(ByteBuffer docxBuffer, String logoPlaceholder, ImageAsset logo,
+                                           PlaceholderMatcher matcher) {
+        return new CompiledTemplate(docxBuffer, logoPlaceholder, logo, matcher);
+    }
+
+    /**
+     * Returns the names of the placeholders found in the template.
+     *
+     * @return the placeholder names, in document order
+     */
+    public Set<String> getPlaceholderNames() {
+        return placeholderNames;
+    }
+
+    /**
+     * Returns the hash identifying the content of this template: the template bytes, the logo placeholder and the
+     * logo. Templates compiled from the same input have the same hash.
+     *
+     * @return the SHA-256 hash, in hexadecimal
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the options for saving the documents rendered from this template: the {@link SaveOptions#defaults()},
+     * with the parts that rendering leaves unchanged copied from the template without compressing them again.
+     *
+     * @return the save options
+     */
+    public SaveOptions getSaveOptions() {
+        return saveOptions;
+    }
+
+    /**
+     * Renders the template for the specified XML data with the default placeholder resolvers. Every call returns a
+     * new, independent document.
+     *
+     * @param xmlData the {@link Root} object representing the XML data
+     * @return the rendered document
+     */
+    public XWPFDocument render(Root xmlData) {
+        return render(xmlData, PlaceholderRegistry.defaults());
+    }
+
+    /**
+     * Renders the template for the specified XML data. Every call returns a new, independent document.
+     *
+     * @param xmlData the {@link Root} object representing the XML data
+     * @param registry the resolvers of the placeholder values
+     * @return the rendered document
+     */
+    public XWPFDocument render(Root xmlData, PlaceholderRegistry registry) {
+        var start = RenderMetrics.start();
+        var docxData = render(values(xmlData, registry), rows(xmlData), null);
+        RenderMetrics.record(RenderMetrics.Stage.RENDER, start);
+        return docxData;
+    }
+
+    /**
+     * Renders the template for the specified values.
+     *
+     * @param values the values of the placeholders, see {@link #values(Root, PlaceholderRegistry)}
+     * @param rows the row data, or {@code null} if the XML data has no table
+     * @param slots receives the locations of the values written, or {@code null} to not record them
+     * @return the rendered document
+     */
+    XWPFDocument render(Map<String, String> values, RowTable rows, List<IncrementalRenderer.Slot> slots) {
+        var docxData = newDocument();
+        DocumentWalker.walk(docxData, new Renderer(values, rows, slots));
+        RenderMetrics.placeholdersFound(sites.size());
+        RenderMetrics.placeholdersReplaced(sites.size());
+        return docxData;
+    }
+
+    /**
+     * Resolves the values of the placeholders of the template that are not row values.
+     *
+     * @param xmlData the {@link Root} object representing the XML data
+     * @param registry the resolvers of the placeholder values
+     * @return the values by placeholder name
+     */
+    Map<String, String> values(Root xmlData, PlaceholderRegistry registry) {
+        return registry.snapshot(xmlData, valueNames);
+    }
+
+    /**
+     * Returns the row data of the XML data.
+     *
+     * @param xmlData the {@link Root} object representing the XML data
+     * @return the row data, or {@code null} if the XML data has no table
+     */
+    static RowTable rows(Root xmlData) {
+        var documentData = xmlData.getDocumentData();
+        return documentData != null && documentData.getTable() != null
+                ? documentData.getTable().getRows()
+                : null;
+    }
+
+    private static String hash(ByteBuffer docx, String logoPlaceholder, ImageAsset logo) {
+        var digest = RenderCache.sha256();
+        digest.update(docx.duplicate());
+        if (logo != null && logoPlaceholder != null) {
+            digest.update(logoPlaceholder.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(logo.hash().getBytes(StandardCharsets.US_ASCII));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private XWPFDocument newDocument() {
+        return snapshot.newDocument();
+    }
+
+    private void insertLogo(XWPFParagraph paragraph) {
+        for (var i = paragraph.getRuns().size() - 1; i >= 0; i--) {
+            paragraph.removeRun(i);
+        }
+
+        try {
+            paragraph.createRun().addPicture(logo.newInputStream(), PictureType.PNG, logo.fileName(),
+                    logo.widthEmu(), logo.heightEmu());
+        } catch (IOException | InvalidFormatException e) {
+            throw new RuntimeException("Error loading image data", e);
+        }
+    }
+
+}
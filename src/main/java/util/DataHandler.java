@@ -1,28 +1,33 @@
 package util;
 
-import data.OrderStatus;
 import data.Root;
-import data.RowData;
 import org.apache.poi.common.usermodel.PictureType;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
-import org.apache.poi.util.Units;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
 import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
 
-import javax.imageio.ImageIO;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
-import java.awt.image.BufferedImage;
-import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.Objects;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * The {@code DataHandler} class provides methods for loading and saving XML and DOCX data, replacing placeholders in
@@ -38,14 +43,53 @@ public class DataHandler {
      */
     public static Root loadXml(String filePath) {
         try (var fis = new FileInputStream(filePath)) {
-            JAXBContext jaxbContext = JAXBContext.newInstance(Root.class);
-            Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-            return (Root) unmarshaller.unmarshal(fis);
-        } catch (JAXBException | IOException e) {
+            return XmlLoader.load(fis);
+        } catch (IOException e) {
             throw new RuntimeException("Error loading XML data", e);
         }
     }
 
+    /**
+     * Loads XML data from the specified stream. The stream is not closed.
+     *
+     * @param inputStream the stream to load the XML data from
+     * @return the {@link Root} object representing the XML data
+     */
+    public static Root loadXml(InputStream inputStream) {
+        return XmlLoader.load(inputStream);
+    }
+
+    /**
+     * Loads XML data from the specified bytes, e.g. a message received from a queue.
+     *
+     * @param bytes the XML data
+     * @return the {@link Root} object representing the XML data
+     */
+    public static Root loadXml(byte[] bytes) {
+        return XmlLoader.load(bytes);
+    }
+
+    /**
+     * Loads XML data from the remaining bytes of the specified buffer. The position of the buffer is not changed.
+     *
+     * @param buffer the XML data
+     * @return the {@link Root} object representing the XML data
+     */
+    public static Root loadXml(ByteBuffer buffer) {
+        return XmlLoader.load(new ByteBufferInputStream(buffer));
+    }
+
+    /**
+     * Streams the {@code <root>} records of the specified XML feed one at a time, see {@link XmlRecordReader}.
+     * The returned stream must be closed.
+     *
+     * @param filePath the path of the XML feed
+     * @return the stream of {@link Root} objects
+     */
+    public static Stream<Root> loadXmlRecords(String filePath) {
+        return XmlRecordReader.open(Path.of(filePath)).stream();
+    }
+
     /**
      * Loads DOCX data from the specified file.
      *
@@ -53,13 +97,54 @@ public class DataHandler {
      * @return the {@link XWPFDocument} object representing the DOCX data
      */
     public static XWPFDocument loadDocx(String filePath) {
+        var start = RenderMetrics.start();
         try (var fis = new FileInputStream(filePath)) {
             return new XWPFDocument(fis);
         } catch (IOException e) {
             throw new RuntimeException("Error loading DOCX data", e);
+        } finally {
+            RenderMetrics.record(RenderMetrics.Stage.LOAD_DOCX, start);
         }
     }
 
+    /**
+     * Loads DOCX data from the specified stream. The stream is not closed.
+     *
+     * @param inputStream the stream to load the DOCX data from
+     * @return the {@link XWPFDocument} object representing the DOCX data
+     */
+    public static XWPFDocument loadDocx(InputStream inputStream) {
+        var start = RenderMetrics.start();
+        try {
+            return new XWPFDocument(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading DOCX data", e);
+        } finally {
+            RenderMetrics.record(RenderMetrics.Stage.LOAD_DOCX, start);
+        }
+    }
+
+    /**
+     * Loads DOCX data from the specified bytes.
+     *
+     * @param bytes the DOCX data
+     * @return the {@link XWPFDocument} object representing the DOCX data
+     */
+    public static XWPFDocument loadDocx(byte[] bytes) {
+        return loadDocx(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Loads DOCX data from the remaining bytes of the specified buffer, e.g. a template mapped with
+     * {@link #mapFile(String)}. The position of the buffer is not changed.
+     *
+     * @param buffer the DOCX data
+     * @return the {@link XWPFDocument} object representing the DOCX data
+     */
+    public static XWPFDocument loadDocx(ByteBuffer buffer) {
+        return loadDocx(new ByteBufferInputStream(buffer));
+    }
+
     /**
      * Saves DOCX data to the specified file.
      *
@@ -67,10 +152,94 @@ public class DataHandler {
      * @param filePath the path of the file to save the DOCX data to
      */
     public static void saveDocx(XWPFDocument docxData, String filePath) {
-        try (var fos = new FileOutputStream(filePath)) {
+        var start = RenderMetrics.start();
+        try (var fos = RenderMetrics.countBytes(new FileOutputStream(filePath))) {
             docxData.write(fos);
         } catch (IOException e) {
             throw new RuntimeException("Error saving DOCX data", e);
+        } finally {
+            RenderMetrics.record(RenderMetrics.Stage.SAVE_DOCX, start);
+        }
+    }
+
+    /**
+     * Saves DOCX data to the specified file, compressing the parts as the options specify.
+     *
+     * @param docxData the {@link XWPFDocument} object representing the DOCX data
+     * @param filePath the path of the file to save the DOCX data to
+     * @param options the compression of the parts
+     */
+    public static void saveDocx(XWPFDocument docxData, String filePath, SaveOptions options) {
+        try (var fos = new FileOutputStream(filePath)) {
+            writeDocx(docxData, fos, options);
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving DOCX data", e);
+        }
+    }
+
+    /**
+     * Writes DOCX data to the specified stream, e.g. an upload to object storage. The stream is not closed.
+     *
+     * @param docxData the {@link XWPFDocument} object representing the DOCX data
+     * @param outputStream the stream to write the DOCX data to
+     */
+    public static void writeDocx(XWPFDocument docxData, OutputStream outputStream) {
+        var start = RenderMetrics.start();
+        try {
+            docxData.write(RenderMetrics.countBytes(outputStream));
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving DOCX data", e);
+        } finally {
+            RenderMetrics.record(RenderMetrics.Stage.SAVE_DOCX, start);
+        }
+    }
+
+    /**
+     * Writes DOCX data to the specified stream, compressing the parts as the options specify. The stream is not
+     * closed.
+     *
+     * @param docxData the {@link XWPFDocument} object representing the DOCX data
+     * @param outputStream the stream to write the DOCX data to
+     * @param options the compression of the parts
+     */
+    public static void writeDocx(XWPFDocument docxData, OutputStream outputStream, SaveOptions options) {
+        var start = RenderMetrics.start();
+        try {
+            var zip = new DocxZipOutputStream(RenderMetrics.countBytes(outputStream), options);
+            docxData.write(zip);
+            zip.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving DOCX data", e);
+        } finally {
+            RenderMetrics.record(RenderMetrics.Stage.SAVE_DOCX, start);
+        }
+    }
+
+    /**
+     * Returns the DOCX data as bytes.
+     *
+     * @param docxData the {@link XWPFDocument} object representing the DOCX data
+     * @return the DOCX data
+     */
+    public static byte[] toBytes(XWPFDocument docxData) {
+        var out = new ByteArrayOutputStream();
+        writeDocx(docxData, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Maps the specified file into memory read-only. Reading the returned buffer does not copy the file into the
+     * heap, which suits large templates that are loaded many times. The mapping stays valid after this method returns
+     * and is released when the buffer is garbage collected.
+     *
+     * @param filePath the path of the file to map
+     * @return the mapped content of the file
+     */
+    public static ByteBuffer mapFile(String filePath) {
+        try (var channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading file: " + filePath, e);
         }
     }
 
@@ -90,50 +259,127 @@ public class DataHandler {
 
     /**
      * Replaces placeholders in the paragraphs with the corresponding values from the XML data.
+     * <p>
+     * The runs are scanned in a single pass with {@link PlaceholderScanner}, so placeholders split over several runs
+     * are found, every placeholder gets its own value and the runs keep their formatting. A {@code <...>} token is
+     * only replaced if it matches the pattern as a whole; the first group of the pattern, if any, is used as the
+     * placeholder name.
      *
      * @param docxData the {@link XWPFDocument} object representing the DOCX data
      * @param xmlData the {@link Root} object representing the XML data
      * @param pattern the pattern for identifying placeholders in the DOCX file
+     * @deprecated every {@code <...>} token is matched against the pattern separately; use
+     * {@link #replacePlaceholderInParagraphs(XWPFDocument, Root, PlaceholderMatcher)}
      */
+    @Deprecated
     public static void replacePlaceholderInParagraphs(XWPFDocument docxData, Root xmlData, Pattern pattern) {
-        for (var paragraph : docxData.getParagraphs()) {
-            Matcher matcher = pattern.matcher(paragraph.getText());
+        var start = RenderMetrics.start();
+        Matcher matcher = pattern.matcher("");
 
-            if (matcher.find()) {
-                String newText = matcher.replaceAll(replacePlaceholder(matcher.group(1), xmlData));
+        for (var paragraph : docxData.getParagraphs()) {
+            var matches = PlaceholderScanner.scan(paragraph);
+            RenderMetrics.placeholdersFound(matches.size());
 
-                for (var i = paragraph.getRuns().size() - 1; i >= 0; i--) {
-                    paragraph.removeRun(i);
+            // Replace in reverse order, so the offsets of earlier placeholders stay valid
+            for (var i = matches.size() - 1; i >= 0; i--) {
+                var match = matches.get(i);
+                if (matcher.reset("<" + match.name() + ">").matches()) {
+                    var name = matcher.groupCount() > 0 ? matcher.group(1) : match.name();
+                    PlaceholderScanner.replace(paragraph, match, replacePlaceholder(name, xmlData));
+                    RenderMetrics.placeholdersReplaced(1);
                 }
-
-                paragraph.createRun().setText(newText);
             }
         }
+        RenderMetrics.record(RenderMetrics.Stage.REPLACE_PARAGRAPHS, start);
     }
 
     /**
      * Replaces placeholders in the tables with the corresponding values from the XML data.
+     * <p>
+     * The template row of every table is repeated once per {@link data.RowTable} row, see {@link TableRowExpander};
+     * {@code <valueN>} placeholders are filled from the N-th value of the row. A {@code <...>} token is only
+     * replaced if it matches the pattern as a whole.
      *
      * @param docxData the {@link XWPFDocument} object representing the DOCX data
      * @param xmlData the {@link Root} object representing the XML data
      * @param pattern the pattern for identifying placeholders in the DOCX file
+     * @deprecated every {@code <...>} token is matched against the pattern separately; use
+     * {@link #replacePlaceholderInTables(XWPFDocument, Root, PlaceholderMatcher)}
      */
+    @Deprecated
     public static void replacePlaceholderInTables(XWPFDocument docxData, Root xmlData, Pattern pattern) {
+        var start = RenderMetrics.start();
+        Matcher matcher = pattern.matcher("");
+        var rows = xmlData.getDocumentData().getTable().getRows();
+
         for (var table : docxData.getTables()) {
-            for (var i = 1; i < table.getRows().size(); i++) {
-                for (var j = 0; j < table.getRow(i).getTableCells().size(); j++) {
-                    var cell = table.getRow(i).getCell(j);
-                    Matcher matcher = pattern.matcher(cell.getText());
-
-                    if (matcher.find()) {
-                        RowData rowData = xmlData.getDocumentData().getTable().getRowData()[i - 1];
-                        String newValue = j % 2 == 0 ? rowData.getValues().get(0) : rowData.getValues().get(1);
-                        String newText = matcher.replaceAll(newValue);
-                        cell.setText(newText);
-                    }
-                }
+            var template = TableRowExpander.find(table, name -> matcher.reset("<" + name + ">").matches());
+            if (template != null) {
+                TableRowExpander.expand(table, template, rows, name -> replacePlaceholder(name, xmlData));
             }
         }
+        RenderMetrics.record(RenderMetrics.Stage.REPLACE_TABLES, start);
+    }
+
+    /**
+     * Replaces the registered placeholders in the paragraphs with the corresponding values from the XML data.
+     * <p>
+     * The runs of every paragraph are scanned once by the matcher, so placeholders split over several runs are
+     * found and the runs keep their formatting. Tokens that are not registered placeholders are left unchanged.
+     *
+     * @param docxData the {@link XWPFDocument} object representing the DOCX data
+     * @param xmlData the {@link Root} object representing the XML data
+     * @param matcher the matcher of the registered placeholders, e.g.
+     *                {@link PlaceholderMatcher#forRegistry(PlaceholderRegistry)}
+     * @return the names of the unknown tags found, in document order
+     */
+    public static Set<String> replacePlaceholderInParagraphs(XWPFDocument docxData, Root xmlData,
+                                                             PlaceholderMatcher matcher) {
+        var start = RenderMetrics.start();
+        var unknownTags = new LinkedHashSet<String>();
+
+        for (var paragraph : docxData.getParagraphs()) {
+            var matches = matcher.scan(paragraph, unknownTags::add);
+
+            // Replace in reverse order, so the offsets of earlier placeholders stay valid
+            for (var i = matches.size() - 1; i >= 0; i--) {
+                var match = matches.get(i);
+                PlaceholderScanner.replace(paragraph, match, replacePlaceholder(match.name(), xmlData));
+            }
+            RenderMetrics.placeholdersFound(matches.size());
+            RenderMetrics.placeholdersReplaced(matches.size());
+        }
+        RenderMetrics.record(RenderMetrics.Stage.REPLACE_PARAGRAPHS, start);
+        return unknownTags;
+    }
+
+    /**
+     * Replaces the registered placeholders in the tables with the corresponding values from the XML data.
+     * <p>
+     * The template row of every table is repeated once per {@link data.RowTable} row, see {@link TableRowExpander};
+     * {@code <valueN>} placeholders are filled from the N-th value of the row, so the matcher must accept them.
+     * Tokens that are not registered placeholders are left unchanged.
+     *
+     * @param docxData the {@link XWPFDocument} object representing the DOCX data
+     * @param xmlData the {@link Root} object representing the XML data
+     * @param matcher the matcher of the registered placeholders, e.g.
+     *                {@link PlaceholderMatcher#forRegistry(PlaceholderRegistry)}
+     * @return the names of the unknown tags found, in document order
+     */
+    public static Set<String> replacePlaceholderInTables(XWPFDocument docxData, Root xmlData,
+                                                         PlaceholderMatcher matcher) {
+        var start = RenderMetrics.start();
+        var rows = CompiledTemplate.rows(xmlData);
+        var unknownTags = new LinkedHashSet<String>();
+
+        for (var table : docxData.getTables()) {
+            var template = TableRowExpander.find(table, matcher, unknownTags::add);
+            if (template != null) {
+                TableRowExpander.expand(table, template, rows, name -> replacePlaceholder(name, xmlData));
+            }
+        }
+        RenderMetrics.record(RenderMetrics.Stage.REPLACE_TABLES, start);
+        return unknownTags;
     }
 
     /**
@@ -143,55 +389,114 @@ public class DataHandler {
      * @param imageFilePath the path of the image file
      */
     public static void replacePlaceholderWithLogo(XWPFDocument docxData, String imageFilePath, String placeholder) {
+        var start = RenderMetrics.start();
+        var logo = ImageCache.get(imageFilePath);
+
         try {
-            BufferedImage bufferedImage = ImageIO.read(new File(imageFilePath));
-            int width = bufferedImage.getWidth();
-            int height = bufferedImage.getHeight();
-
-            try (var fis = new FileInputStream(imageFilePath)) {
-                for (var header : docxData.getHeaderList()) {
-                    for (var paragraph : header.getParagraphs()) {
-                        if (paragraph.getText().contains(placeholder)) {
-                            for (var i = paragraph.getRuns().size() - 1; i >= 0; i--) {
-                                paragraph.removeRun(i);
-                            }
-
-                            XWPFRun run = paragraph.createRun();
-                            run.addPicture(fis, PictureType.PNG, imageFilePath,
-                                    Units.pixelToEMU(width), Units.pixelToEMU(height));
-                        }
+            for (var header : docxData.getHeaderList()) {
+                for (var paragraph : header.getParagraphs()) {
+                    if (paragraph.getText().contains(placeholder)) {
+                        insertLogo(paragraph, logo, imageFilePath);
                     }
                 }
-            } catch (IOException e) {
-                throw new RuntimeException("Error loading image data", e);
-            } catch (InvalidFormatException e) {
-                throw new RuntimeException(e);
             }
-        } catch (IOException e) {
-            throw new RuntimeException("Error reading image dimensions", e);
+        } finally {
+            RenderMetrics.record(RenderMetrics.Stage.REPLACE_LOGO, start);
+        }
+    }
+
+    /**
+     * Replaces the registered placeholders and the logo placeholder in every part of the document, in a single walk
+     * with {@link DocumentWalker}: headers, body, footers, footnotes, endnotes, nested tables and text boxes.
+     * <p>
+     * Template rows of any table are repeated once per {@link data.RowTable} row, see {@link TableRowExpander}.
+     * Paragraphs containing the logo placeholder are replaced with the logo. Tokens that are not registered
+     * placeholders are left unchanged.
+     *
+     * @param docxData the {@link XWPFDocument} object representing the DOCX data
+     * @param xmlData the {@link Root} object representing the XML data
+     * @param matcher the matcher of the registered placeholders, e.g.
+     *                {@link PlaceholderMatcher#forRegistry(PlaceholderRegistry)}
+     * @param imageFilePath the path of the PNG logo, or {@code null} for no logo
+     * @param logoPlaceholder the placeholder marking the logo, or {@code null} for no logo
+     * @return the names of the unknown tags found, in document order
+     */
+    public static Set<String> replacePlaceholders(XWPFDocument docxData, Root xmlData, PlaceholderMatcher matcher,
+                                                  String imageFilePath, String logoPlaceholder) {
+        var start = RenderMetrics.start();
+        var rows = CompiledTemplate.rows(xmlData);
+        var logo = imageFilePath != null && logoPlaceholder != null ? ImageCache.get(imageFilePath) : null;
+        var unknownTags = new LinkedHashSet<String>();
+        var generatedRows = Collections.newSetFromMap(new IdentityHashMap<XWPFTableRow, Boolean>());
+
+        DocumentWalker.walk(docxData, new DocumentWalker.Visitor() {
+
+            @Override
+            public void visitTable(XWPFTable table) {
+                var template = TableRowExpander.find(table, matcher, unknownTags::add);
+                if (template != null) {
+                    TableRowExpander.expand(table, template, rows, name -> replacePlaceholder(name, xmlData));
+                    var generated = rows != null ? rows.size() : 0;
+                    generatedRows.addAll(table.getRows().subList(template.row(), template.row() + generated));
+                }
+            }
+
+            @Override
+            public boolean visitRow(XWPFTableRow row) {
+                // The placeholders of the generated rows are already replaced
+                return !generatedRows.contains(row);
+            }
+
+            @Override
+            public void visitParagraph(XWPFParagraph paragraph, XWPFTableRow row) {
+                if (logo != null && paragraph.getText().contains(logoPlaceholder)) {
+                    insertLogo(paragraph, logo, imageFilePath);
+                    return;
+                }
+
+                var matches = matcher.scan(paragraph, unknownTags::add);
+
+                // Replace in reverse order, so the offsets of earlier placeholders stay valid
+                for (var i = matches.size() - 1; i >= 0; i--) {
+                    var match = matches.get(i);
+                    PlaceholderScanner.replace(paragraph, match, replacePlaceholder(match.name(), xmlData));
+                }
+                RenderMetrics.placeholdersFound(matches.size());
+                RenderMetrics.placeholdersReplaced(matches.size());
+            }
+
+        });
+        RenderMetrics.record(RenderMetrics.Stage.REPLACE_PLACEHOLDERS, start);
+        return unknownTags;
+    }
+
+    /**
+     * Replaces the runs of the paragraph with the logo.
+     */
+    private static void insertLogo(XWPFParagraph paragraph, ImageAsset logo, String imageFilePath) {
+        for (var i = paragraph.getRuns().size() - 1; i >= 0; i--) {
+            paragraph.removeRun(i);
+        }
+
+        // POI finds the picture part by its checksum, so it is embedded once per document
+        try {
+            XWPFRun run = paragraph.createRun();
+            run.addPicture(logo.newInputStream(), PictureType.PNG, imageFilePath, logo.widthEmu(), logo.heightEmu());
+        } catch (IOException | InvalidFormatException e) {
+            throw new RuntimeException("Error loading image data", e);
         }
     }
 
     /**
-     * Replaces the placeholder with the corresponding value from the XML data.
+     * Replaces the placeholder with the corresponding value from the XML data, using the resolvers of
+     * {@link PlaceholderRegistry#defaults()}.
      *
      * @param placeholder the placeholder to replace
      * @param xmlData the XML data
-     * @return the value corresponding to the placeholder
+     * @return the value corresponding to the placeholder, or {@link PlaceholderRegistry#UNKNOWN}
      */
     public static String replacePlaceholder(String placeholder, Root xmlData) {
-        return switch (placeholder) {
-            case "name" -> xmlData.getCustomerDetails().getName();
-            case "data1" -> xmlData.getDocumentData().getDataSection().getData()[0];
-            case "data2" -> xmlData.getDocumentData().getDataSection().getData()[1];
-            case "data3" -> xmlData.getDocumentData().getDataSection().getData()[2];
-            case "data4" -> xmlData.getDocumentData().getDataSection().getData()[3];
-            case "birthplace" -> xmlData.getCustomerDetails().getBirthplace();
-            case "birthday" -> xmlData.getCustomerDetails().getBirthday();
-            case "date" -> LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd."));
-            case "order_status" -> OrderStatus.getNameFromId(xmlData.getCustomerDetails().getCustomerType());
-            default -> "Unknown";
-        };
+        return PlaceholderRegistry.defaults().resolve(placeholder, xmlData);
     }
 
 }
\ No newline at end of file
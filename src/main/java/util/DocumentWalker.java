@@ -0,0 +1,219 @@
+package util;
+
+import org.apache.poi.xwpf.usermodel.IBody;
+import org.apache.poi.xwpf.usermodel.IBodyElement;
+import org.apache.poi.xwpf.usermodel.XWPFAbstractFootnoteEndnote;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFHeaderFooter;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTP;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTbl;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTxbxContent;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code DocumentWalker} class visits the paragraphs and tables of every part of a document that holds text, in
+ * a single pass: the headers, the body, the footers, the footnotes and the endnotes, including nested tables and the
+ * content of text boxes.
+ * <p>
+ * The parts are visited in that order, and the content of every part in document order. The text boxes anchored in a
+ * paragraph are visited before the paragraph itself, so a visitor replacing the runs of the paragraph does not change
+ * which text boxes are visited. Word stores a text box twice, as a drawing and as a VML fallback for older readers;
+ * both copies are visited.
+ * <p>
+ * POI does not parse the content of text boxes stored as drawings. The walker visits a parsed copy of such a text box
+ * and writes the copy back after the visit, so changes made by the visitor are kept. Content controls are not visited,
+ * since POI only exposes their text.
+ */
+public class DocumentWalker {
+
+    /**
+     * Receives the content of a document from {@link #walk(XWPFDocument, Visitor)}.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+
+        /**
+         * Visits a table before its rows. The rows are read after this call returns, so the visitor may add or remove
+         * rows, e.g. with {@link TableRowExpander#expand}.
+         *
+         * @param table the table
+         */
+        default void visitTable(XWPFTable table) {
+        }
+
+        /**
+         * Visits a table row before its cells.
+         *
+         * @param row the table row
+         * @return {@code true} to visit the cells of the row, {@code false} to skip them
+         */
+        default boolean visitRow(XWPFTableRow row) {
+            return true;
+        }
+
+        /**
+         * Visits a paragraph.
+         *
+         * @param paragraph the paragraph
+         * @param row the innermost table row containing the paragraph, or {@code null} outside of tables
+         */
+        void visitParagraph(XWPFParagraph paragraph, XWPFTableRow row);
+
+    }
+
+    private static final String W_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+
+    private static final QName TXBX_CONTENT = new QName(W_NS, "txbxContent");
+
+    /**
+     * Visits the content of every part of the specified document.
+     *
+     * @param docxData the document to visit
+     * @param visitor the visitor receiving the content
+     */
+    public static void walk(XWPFDocument docxData, Visitor visitor) {
+        for (var header : docxData.getHeaderList()) {
+            walkBodyElements(header, header.getBodyElements(), null, visitor);
+        }
+        walkBodyElements(docxData, docxData.getBodyElements(), null, visitor);
+        for (var footer : docxData.getFooterList()) {
+            walkBodyElements(footer, footer.getBodyElements(), null, visitor);
+        }
+        for (var footnote : docxData.getFootnotes()) {
+            walkBodyElements(footnote, footnote.getBodyElements(), null, visitor);
+        }
+        for (var endnote : docxData.getEndnotes()) {
+            walkBodyElements(endnote, endnote.getBodyElements(), null, visitor);
+        }
+    }
+
+    /**
+     * Returns whether the specified paragraph belongs to a parsed copy of a text box, see {@link DocumentWalker}.
+     * Such a paragraph can only be changed while it is visited; later changes are lost, since the document holds the
+     * content written back from the copy.
+     *
+     * @param paragraph the paragraph received by a {@link Visitor}
+     * @return {@code true} if the paragraph is not part of the document
+     */
+    static boolean isDetached(XWPFParagraph paragraph) {
+        // The cells of a table in a text box belong to the copy as well, so look at the part holding the table
+        var body = paragraph.getBody();
+        while (body instanceof XWPFTableCell cell) {
+            body = cell.getTableRow().getTable().getBody();
+        }
+
+        XmlObject root;
+        if (body instanceof XWPFDocument docxData) {
+            root = docxData.getDocument();
+        } else if (body instanceof XWPFHeaderFooter headerFooter) {
+            root = headerFooter._getHdrFtr();
+        } else if (body instanceof XWPFAbstractFootnoteEndnote note) {
+            root = note.getCTFtnEdn();
+        } else {
+            return true;
+        }
+
+        try (var cursor = paragraph.getCTP().newCursor(); var rootCursor = root.newCursor()) {
+            return !cursor.isInSameDocument(rootCursor);
+        }
+    }
+
+    private static void walkBodyElements(IBody body, List<IBodyElement> elements, XWPFTableRow row,
+                                         Visitor visitor) {
+        for (var element : elements) {
+            if (element instanceof XWPFParagraph paragraph) {
+                walkParagraph(body, paragraph, row, visitor);
+            } else if (element instanceof XWPFTable table) {
+                walkTable(table, visitor);
+            }
+        }
+    }
+
+    private static void walkParagraph(IBody body, XWPFParagraph paragraph, XWPFTableRow row, Visitor visitor) {
+        for (var textBox : findTextBoxes(paragraph.getCTP())) {
+            walkTextBox(body, textBox, row, visitor);
+        }
+        visitor.visitParagraph(paragraph, row);
+    }
+
+    private static void walkTable(XWPFTable table, Visitor visitor) {
+        visitor.visitTable(table);
+        for (var tableRow : table.getRows()) {
+            if (visitor.visitRow(tableRow)) {
+                for (var cell : tableRow.getTableCells()) {
+                    walkBodyElements(cell, cell.getBodyElements(), tableRow, visitor);
+                }
+            }
+        }
+    }
+
+    private static void walkTextBox(IBody body, XmlObject textBox, XWPFTableRow row, Visitor visitor) {
+        var content = textBox instanceof CTTxbxContent typed ? typed : parseTextBox(textBox);
+
+        try (var cursor = content.newCursor()) {
+            if (cursor.toFirstChild()) {
+                do {
+                    var child = cursor.getObject();
+                    if (child instanceof CTP ctp) {
+                        walkParagraph(body, new XWPFParagraph(ctp, body), row, visitor);
+                    } else if (child instanceof CTTbl ctTbl) {
+                        walkTable(new XWPFTable(ctTbl, body), visitor);
+                    }
+                } while (cursor.toNextSibling());
+            }
+        }
+
+        if (content != textBox) {
+            textBox.set(content);
+        }
+    }
+
+    /**
+     * Returns the text boxes anchored in the specified paragraph, without the text boxes nested in them.
+     * <p>
+     * The tokens of the paragraph are walked with a cursor, which is much cheaper than an XPath query per paragraph.
+     */
+    private static List<XmlObject> findTextBoxes(CTP ctp) {
+        List<XmlObject> textBoxes = List.of();
+        try (var cursor = ctp.newCursor()) {
+            var depth = 0;
+            for (var token = cursor.toNextToken(); !token.isNone(); token = cursor.toNextToken()) {
+                if (token.isStart()) {
+                    if (TXBX_CONTENT.equals(cursor.getName())) {
+                        if (textBoxes.isEmpty()) {
+                            textBoxes = new ArrayList<>();
+                        }
+                        textBoxes.add(cursor.getObject());
+                        cursor.toEndToken();
+                    } else {
+                        depth++;
+                    }
+                } else if (token.isEnd() && depth-- == 0) {
+                    break;
+                }
+            }
+        }
+        return textBoxes;
+    }
+
+    /**
+     * Parses a text box that XmlBeans left untyped, since it is stored inside markup POI has no schema for.
+     */
+    private static CTTxbxContent parseTextBox(XmlObject textBox) {
+        try {
+            return CTTxbxContent.Factory.parse(textBox.newXMLStreamReader());
+        } catch (XmlException e) {
+            throw new RuntimeException("Error loading DOCX data", e);
+        }
+    }
+
+}
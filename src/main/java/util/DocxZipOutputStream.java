@@ -0,0 +1,127 @@
+package util;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A ZIP output stream compressing every entry as the {@link SaveOptions} specify.
+ * <p>
+ * POI writes a package straight into a {@link ZipArchiveOutputStream} it is given, so passing this stream to
+ * {@link org.apache.poi.xwpf.usermodel.XWPFDocument#write(OutputStream)} decides the compression of every part. The
+ * content of an entry is buffered until the entry is closed, since a stored entry needs its size and CRC before its
+ * content, and an entry equal to the template part is not compressed at all.
+ * <p>
+ * The archive is written by a separate {@link ZipArchiveOutputStream}, since the methods of the superclass call each
+ * other and would see the buffering overrides; the superclass itself never writes anything.
+ */
+class DocxZipOutputStream extends ZipArchiveOutputStream {
+
+    private final SaveOptions options;
+
+    private final ZipArchiveOutputStream archive;
+
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+    private ZipArchiveEntry entry;
+
+    /**
+     * Creates a ZIP output stream writing to the specified stream.
+     *
+     * @param outputStream the stream to write the ZIP archive to
+     * @param options the compression of the entries
+     */
+    DocxZipOutputStream(OutputStream outputStream, SaveOptions options) {
+        super(OutputStream.nullOutputStream());
+        this.options = options;
+        this.archive = new ZipArchiveOutputStream(outputStream);
+    }
+
+    @Override
+    public void putArchiveEntry(ZipArchiveEntry archiveEntry) throws IOException {
+        if (entry != null) {
+            throw new IOException("Entry not closed: " + entry.getName());
+        }
+        entry = archiveEntry;
+        content.reset();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (entry == null) {
+            throw new IOException("No current entry");
+        }
+        content.write(bytes, offset, length);
+    }
+
+    @Override
+    public void closeArchiveEntry() throws IOException {
+        if (entry == null) {
+            throw new IOException("No current entry to close");
+        }
+        var name = entry.getName();
+        var bytes = content.toByteArray();
+        var crc = new CRC32();
+        crc.update(bytes);
+        entry = null;
+
+        var templatePart = options.templatePart(name);
+        if (templatePart != null && templatePart.entry().getCrc() == crc.getValue()
+                && Arrays.equals(templatePart.content(), bytes)) {
+            archive.addRawArchiveEntry(templatePart.entry(), new ByteArrayInputStream(templatePart.raw()));
+            return;
+        }
+
+        var level = options.level(name);
+        var output = new ZipArchiveEntry(name);
+        output.setSize(bytes.length);
+        output.setCrc(crc.getValue());
+        if (level == Deflater.NO_COMPRESSION) {
+            output.setMethod(ZipArchiveEntry.STORED);
+            output.setCompressedSize(bytes.length);
+        } else {
+            output.setMethod(ZipArchiveEntry.DEFLATED);
+            archive.setLevel(level);
+        }
+        archive.putArchiveEntry(output);
+        archive.write(bytes, 0, bytes.length);
+        archive.closeArchiveEntry();
+    }
+
+    @Override
+    public void addRawArchiveEntry(ZipArchiveEntry entry, InputStream rawStream) throws IOException {
+        archive.addRawArchiveEntry(entry, rawStream);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (entry != null) {
+            throw new IOException("Entry not closed: " + entry.getName());
+        }
+        archive.finish();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        archive.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        archive.close();
+    }
+
+}
@@ -0,0 +1,47 @@
+package util;
+
+import org.apache.poi.util.Units;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * An image read once and shared by every document it is embedded into, see {@link ImageCache}.
+ *
+ * @param fileName the file name of the image, used as the name of the embedded picture
+ * @param bytes the content of the image file; must not be modified
+ * @param hash the SHA-256 hash of the content, in hexadecimal
+ * @param width the width of the image in pixels
+ * @param height the height of the image in pixels
+ */
+public record ImageAsset(String fileName, byte[] bytes, String hash, int width, int height) {
+
+    /**
+     * Returns a new stream over the content of the image. Every embedding needs its own stream, a consumed stream
+     * embeds an empty picture.
+     *
+     * @return the stream
+     */
+    public InputStream newInputStream() {
+        return new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * Returns the width of the image in EMUs, the unit of drawing extents in DOCX files.
+     *
+     * @return the width in EMUs
+     */
+    public int widthEmu() {
+        return Units.pixelToEMU(width);
+    }
+
+    /**
+     * Returns the height of the image in EMUs, the unit of drawing extents in DOCX files.
+     *
+     * @return the height in EMUs
+     */
+    public int heightEmu() {
+        return Units.pixelToEMU(height);
+    }
+
+}
@@ -0,0 +1,147 @@
+package util;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code ImageCache} class reads images once and shares them between documents.
+ * <p>
+ * Images are cached by path and by content hash. A path is read again only when the size or the modification time of
+ * the file changes, and files with the same content share a single {@link ImageAsset}. The dimensions of PNG images are
+ * read from the {@code IHDR} chunk of the file header, so the image is never decoded; other formats fall back to
+ * {@link ImageIO}.
+ * <p>
+ * The cache is thread-safe and holds every distinct image it has read, which suits the handful of logos a deployment
+ * uses.
+ */
+public class ImageCache {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private static final int PNG_IHDR_END = 24;
+
+    /**
+     * The cached image of a file and the file attributes it was read with.
+     */
+    private record FileEntry(long size, FileTime modified, ImageAsset asset) {
+    }
+
+    private static final Map<Path, FileEntry> BY_PATH = new ConcurrentHashMap<>();
+
+    private static final Map<String, ImageAsset> BY_HASH = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the image stored in the specified file.
+     *
+     * @param imageFilePath the path of the image file
+     * @return the image
+     */
+    public static ImageAsset get(String imageFilePath) {
+        return get(Path.of(imageFilePath));
+    }
+
+    /**
+     * Returns the image stored in the specified file. The file is read again only if it has changed since it was
+     * last read.
+     *
+     * @param path the path of the image file
+     * @return the image
+     */
+    public static ImageAsset get(Path path) {
+        var key = path.toAbsolutePath().normalize();
+        try {
+            var attributes = Files.readAttributes(key, BasicFileAttributes.class);
+            var cached = BY_PATH.get(key);
+            if (cached != null && cached.size() == attributes.size()
+                    && cached.modified().equals(attributes.lastModifiedTime())) {
+                return cached.asset();
+            }
+
+            var asset = of(key.getFileName().toString(), Files.readAllBytes(key));
+            BY_PATH.put(key, new FileEntry(attributes.size(), attributes.lastModifiedTime(), asset));
+            return asset;
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading image data", e);
+        }
+    }
+
+    /**
+     * Returns the image with the specified content. An image with the same content read before is returned instead of
+     * a new one.
+     *
+     * @param fileName the file name of the image
+     * @param bytes the content of the image file; must not be modified afterwards
+     * @return the image
+     */
+    public static ImageAsset of(String fileName, byte[] bytes) {
+        var hash = hash(bytes);
+        return BY_HASH.computeIfAbsent(hash, key -> {
+            var dimensions = dimensions(bytes);
+            return new ImageAsset(fileName, bytes, key, dimensions[0], dimensions[1]);
+        });
+    }
+
+    /**
+     * Removes every cached image.
+     */
+    public static void clear() {
+        BY_PATH.clear();
+        BY_HASH.clear();
+    }
+
+    /**
+     * Returns the width and height of an image in pixels.
+     *
+     * @param bytes the content of the image file
+     * @return the width and the height
+     */
+    static int[] dimensions(byte[] bytes) {
+        if (isPng(bytes)) {
+            // The IHDR chunk directly follows the signature: length, type, then width and height as big-endian ints
+            var header = ByteBuffer.wrap(bytes);
+            return new int[]{header.getInt(16), header.getInt(20)};
+        }
+
+        try {
+            var image = ImageIO.read(new ByteArrayInputStream(bytes));
+            if (image == null) {
+                throw new IllegalArgumentException("Unsupported image format");
+            }
+            return new int[]{image.getWidth(), image.getHeight()};
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading image dimensions", e);
+        }
+    }
+
+    private static boolean isPng(byte[] bytes) {
+        if (bytes.length < PNG_IHDR_END) {
+            return false;
+        }
+        for (var i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (bytes[i] != PNG_SIGNATURE[i]) {
+                return false;
+            }
+        }
+        return bytes[12] == 'I' && bytes[13] == 'H' && bytes[14] == 'D' && bytes[15] == 'R';
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+}
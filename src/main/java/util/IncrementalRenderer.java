@@ -0,0 +1,225 @@
+package util;
+
+import data.Root;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code IncrementalRenderer} class keeps a document rendered from a {@link CompiledTemplate} together with the
+ * location and value of every placeholder written into it, so the document can be brought up to date with changed XML
+ * data by rewriting only the values that changed.
+ * <p>
+ * An update resolves the placeholder values of the new XML data and compares them with the values in the document.
+ * Unchanged values cost a string comparison; changed values are rewritten in their text element, without reloading
+ * the template or touching the other runs. The document is rendered again from the template only when the number of
+ * table rows changes, or when a changed value is inside a text box that POI does not parse (see
+ * {@link DocumentWalker}).
+ * <p>
+ * A renderer holds a mutable document, so it must not be used by several threads at the same time.
+ */
+public class IncrementalRenderer {
+
+    /**
+     * The location and the current value of a placeholder in the rendered document.
+     */
+    static final class Slot {
+
+        private final XWPFRun run;
+
+        private final int text;
+
+        private final String name;
+
+        private final int row;
+
+        private final int column;
+
+        private final boolean detached;
+
+        private int offset;
+
+        private String value;
+
+        /**
+         * Creates a slot.
+         *
+         * @param run the run holding the value
+         * @param text the index of the text element in the run
+         * @param offset the offset of the value in the text element
+         * @param value the value
+         * @param name the placeholder name
+         * @param row the index of the generated table row, or -1 outside of generated rows
+         * @param column the zero-based index of the row value for {@code <valueN>} placeholders, or -1 otherwise
+         * @param detached whether the value is in a parsed copy of a text box, see
+         *                 {@link DocumentWalker#isDetached(XWPFParagraph)}
+         */
+        Slot(XWPFRun run, int text, int offset, String value, String name, int row, int column, boolean detached) {
+            this.run = run;
+            this.text = text;
+            this.offset = offset;
+            this.value = value;
+            this.name = name;
+            this.row = row;
+            this.column = column;
+            this.detached = detached;
+        }
+
+    }
+
+    private final CompiledTemplate template;
+
+    private final PlaceholderRegistry registry;
+
+    private XWPFDocument docxData;
+
+    private List<Slot> slots;
+
+    private int rowCount;
+
+    private IncrementalRenderer(CompiledTemplate template, PlaceholderRegistry registry) {
+        this.template = template;
+        this.registry = registry;
+    }
+
+    /**
+     * Renders the template for the specified XML data with the default placeholder resolvers.
+     *
+     * @param template the compiled template
+     * @param xmlData the {@link Root} object representing the XML data
+     * @return the renderer holding the rendered document
+     */
+    public static IncrementalRenderer render(CompiledTemplate template, Root xmlData) {
+        return render(template, xmlData, PlaceholderRegistry.defaults());
+    }
+
+    /**
+     * Renders the template for the specified XML data.
+     *
+     * @param template the compiled template
+     * @param xmlData the {@link Root} object representing the XML data
+     * @param registry the resolvers of the placeholder values, used for every update as well
+     * @return the renderer holding the rendered document
+     */
+    public static IncrementalRenderer render(CompiledTemplate template, Root xmlData, PlaceholderRegistry registry) {
+        var renderer = new IncrementalRenderer(template, registry);
+        renderer.renderFully(xmlData);
+        return renderer;
+    }
+
+    /**
+     * Returns the rendered document. The document is replaced when an update has to render it again, so it should be
+     * fetched again after every {@link #update(Root)}.
+     *
+     * @return the rendered document
+     */
+    public XWPFDocument getDocument() {
+        return docxData;
+    }
+
+    /**
+     * Brings the document up to date with the specified XML data.
+     *
+     * @param xmlData the {@link Root} object representing the new XML data
+     * @return {@code true} if the changed values were rewritten in place, {@code false} if the document was rendered
+     * again from the template
+     */
+    public boolean update(Root xmlData) {
+        var start = RenderMetrics.start();
+        try {
+            var rows = CompiledTemplate.rows(xmlData);
+            if ((rows != null ? rows.size() : 0) != rowCount) {
+                renderFully(xmlData);
+                return false;
+            }
+
+            var values = template.values(xmlData, registry);
+            var newValues = new String[slots.size()];
+            for (var i = 0; i < newValues.length; i++) {
+                var slot = slots.get(i);
+                // Written like PlaceholderScanner writes them, a missing value as "null"
+                newValues[i] = String.valueOf(slot.column >= 0
+                        ? rows.get(slot.row, slot.column)
+                        : values.get(slot.name));
+                if (slot.detached && !newValues[i].equals(slot.value)) {
+                    renderFully(xmlData);
+                    return false;
+                }
+            }
+
+            RenderMetrics.placeholdersFound(newValues.length);
+            RenderMetrics.placeholdersReplaced(rewrite(newValues));
+            return true;
+        } finally {
+            RenderMetrics.record(RenderMetrics.Stage.UPDATE, start);
+        }
+    }
+
+    /**
+     * Rewrites the slots whose value changed. The slots are in document order, so the values following a rewritten
+     * value in the same text element are moved by the change in length.
+     *
+     * @return the number of values rewritten
+     */
+    private int rewrite(String[] newValues) {
+        XWPFRun shiftRun = null;
+        var shiftText = -1;
+        var shift = 0;
+        var rewritten = 0;
+
+        for (var i = 0; i < newValues.length; i++) {
+            var slot = slots.get(i);
+            if (slot.run != shiftRun || slot.text != shiftText) {
+                shiftRun = slot.run;
+                shiftText = slot.text;
+                shift = 0;
+            }
+            slot.offset += shift;
+
+            var value = newValues[i];
+            if (!value.equals(slot.value)) {
+                var text = slot.run.getText(slot.text);
+                slot.run.setText(text.substring(0, slot.offset) + value
+                        + text.substring(slot.offset + slot.value.length()), slot.text);
+                shift += value.length() - slot.value.length();
+                slot.value = value;
+                rewritten++;
+            }
+        }
+        return rewritten;
+    }
+
+    private void renderFully(Root xmlData) {
+        var rows = CompiledTemplate.rows(xmlData);
+        var recorded = new ArrayList<Slot>();
+        docxData = template.render(template.values(xmlData, registry), rows, recorded);
+        slots = recorded;
+        rowCount = rows != null ? rows.size() : 0;
+    }
+
+    /**
+     * Records the slots of the values written into a paragraph.
+     *
+     * @param paragraph the paragraph
+     * @param matches the placeholders replaced in the paragraph, in document order
+     * @param values the values written in place of the placeholders
+     * @param row the index of the generated table row, or -1 outside of generated rows
+     * @param columns the row value index of every placeholder, or {@code null} outside of generated rows
+     * @param slots receives the slots
+     */
+    static void record(XWPFParagraph paragraph, List<PlaceholderScanner.Match> matches, List<String> values,
+                       int row, int[] columns, List<Slot> slots) {
+        var offsets = PlaceholderScanner.valueOffsets(matches, values);
+        var detached = DocumentWalker.isDetached(paragraph);
+        var runs = paragraph.getRuns();
+        for (var i = 0; i < matches.size(); i++) {
+            var match = matches.get(i);
+            slots.add(new Slot(runs.get(match.startRun()), match.startText(), offsets[i], String.valueOf(values.get(i)),
+                    match.name(), row, columns != null ? columns[i] : -1, detached));
+        }
+    }
+
+}
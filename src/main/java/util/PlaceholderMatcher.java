@@ -0,0 +1,247 @@
+package util;
+
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * The {@code PlaceholderMatcher} class finds the {@code <name>} tokens of a fixed set of placeholder names in the runs
+ * of a paragraph.
+ * <p>
+ * The runs are scanned by {@link PlaceholderScanner}, and the text between every {@code <} and {@code >} is looked up
+ * in a trie of the names, compiled from {@code "<" + name + ">"}. Since every pattern starts with {@code <} and no
+ * name contains one, an Aho-Corasick automaton over the patterns would only ever fail back to the root, so the trie
+ * is all of it. A lookup takes one step per character, whatever the number of names, and no string is created for
+ * the text that is not a placeholder.
+ * <p>
+ * Text that is not a registered placeholder is left alone, e.g. a literal {@code a < b} in legal text. A token that
+ * looks like a placeholder, i.e. a {@code <} followed by letters, digits, {@code _}, {@code -} or {@code .} and a
+ * {@code >}, but whose name is not registered is reported as an unknown tag.
+ * <p>
+ * A matcher is immutable, so a single instance can be shared by any number of threads.
+ */
+public class PlaceholderMatcher {
+
+    /**
+     * The names of the row value placeholders accepted by {@link #forRegistry(PlaceholderRegistry)}, see
+     * {@link TableRowExpander}: {@code value1} to {@code value63}, since a Word table has at most 63 columns.
+     */
+    public static final List<String> ROW_VALUE_NAMES = IntStream.rangeClosed(1, TableRowExpander.MAX_ROW_VALUES)
+            .mapToObj(column -> "value" + column)
+            .toList();
+
+    private static final int ROOT = 0;
+
+    /**
+     * The state after a {@code <}.
+     */
+    private static final int OPEN = 1;
+
+    /**
+     * Unknown tags longer than this are not reported, they are rather text between a stray {@code <} and {@code >}.
+     */
+    private static final int MAX_TAG_LENGTH = 256;
+
+    /**
+     * The symbol of every ASCII character, 0 for characters that do not occur in any name.
+     */
+    private final int[] asciiSymbols = new int[128];
+
+    /**
+     * The symbols of the other characters occurring in the names.
+     */
+    private final Map<Character, Integer> symbols = new HashMap<>();
+
+    /**
+     * The transitions by state and symbol; -1 where there is none.
+     */
+    private final int[][] transitions;
+
+    /**
+     * The placeholder name accepted in each state, i.e. after its closing {@code >}; {@code null} in the others.
+     */
+    private final String[] accepted;
+
+    private final Set<String> names;
+
+    private PlaceholderMatcher(Collection<String> names) {
+        this.names = Set.copyOf(names);
+
+        // Symbol 0 stands for all characters not occurring in the names, '<' and '>' get their own
+        var symbolCount = 1;
+        for (var c : new char[]{'<', '>'}) {
+            asciiSymbols[c] = symbolCount++;
+        }
+        for (var name : this.names) {
+            if (name.isEmpty() || name.indexOf('<') >= 0 || name.indexOf('>') >= 0) {
+                throw new IllegalArgumentException("Invalid placeholder name: " + name);
+            }
+            for (var i = 0; i < name.length(); i++) {
+                var c = name.charAt(i);
+                if (symbol(c) == 0) {
+                    if (c < 128) {
+                        asciiSymbols[c] = symbolCount++;
+                    } else {
+                        symbols.put(c, symbolCount++);
+                    }
+                }
+            }
+        }
+
+        var trie = new ArrayList<int[]>();
+        var acceptedNames = new ArrayList<String>();
+        trie.add(newState(symbolCount));
+        acceptedNames.add(null);
+        trie.add(newState(symbolCount));
+        acceptedNames.add(null);
+        trie.get(ROOT)[symbol('<')] = OPEN;
+
+        for (var name : this.names) {
+            var state = OPEN;
+            for (var i = 0; i <= name.length(); i++) {
+                var symbol = symbol(i < name.length() ? name.charAt(i) : '>');
+                if (trie.get(state)[symbol] < 0) {
+                    trie.get(state)[symbol] = trie.size();
+                    trie.add(newState(symbolCount));
+                    acceptedNames.add(null);
+                }
+                state = trie.get(state)[symbol];
+            }
+            acceptedNames.set(state, name);
+        }
+
+        this.transitions = trie.toArray(new int[0][]);
+        this.accepted = acceptedNames.toArray(new String[0]);
+    }
+
+    /**
+     * Creates a matcher for the specified placeholder names.
+     *
+     * @param names the placeholder names, without the angle brackets
+     * @return the matcher
+     * @throws IllegalArgumentException if a name is empty or contains an angle bracket
+     */
+    public static PlaceholderMatcher of(Collection<String> names) {
+        return new PlaceholderMatcher(names);
+    }
+
+    /**
+     * Creates a matcher for the placeholders of the specified registry and the {@link #ROW_VALUE_NAMES}.
+     *
+     * @param registry the placeholder registry
+     * @return the matcher
+     */
+    public static PlaceholderMatcher forRegistry(PlaceholderRegistry registry) {
+        var names = new LinkedHashSet<>(registry.names());
+        names.addAll(ROW_VALUE_NAMES);
+        return new PlaceholderMatcher(names);
+    }
+
+    /**
+     * Returns whether the specified name is a registered placeholder.
+     *
+     * @param name the placeholder name, without the angle brackets
+     * @return {@code true} if the name is registered
+     */
+    public boolean isKnown(String name) {
+        return names.contains(name);
+    }
+
+    /**
+     * Finds the registered placeholders in the specified paragraph, in document order.
+     *
+     * @param paragraph the paragraph to scan
+     * @return the placeholders found, or an empty list if there are none
+     */
+    public List<PlaceholderScanner.Match> scan(XWPFParagraph paragraph) {
+        return scan(paragraph, null);
+    }
+
+    /**
+     * Finds the registered placeholders in the specified paragraph, in document order, and reports the unknown tags.
+     * Like {@link PlaceholderScanner#scan(XWPFParagraph)}, placeholders split over several runs are found.
+     *
+     * @param paragraph the paragraph to scan
+     * @param unknownTags receives the names of the unknown tags, or {@code null} to ignore them
+     * @return the placeholders found, or an empty list if there are none
+     */
+    public List<PlaceholderScanner.Match> scan(XWPFParagraph paragraph, Consumer<String> unknownTags) {
+        return PlaceholderScanner.scan(paragraph, tag -> accept(tag, unknownTags));
+    }
+
+    /**
+     * Finds the registered placeholders in a sequence of text segments, e.g. the {@code <w:t>} contents of a paragraph
+     * read from the raw XML, see {@link PlaceholderScanner#scan(List)}.
+     *
+     * @param segments the text segments, in document order
+     * @return the placeholders found, or an empty list if there are none
+     */
+    List<PlaceholderScanner.SegmentMatch> scan(List<String> segments) {
+        return PlaceholderScanner.scan(segments, tag -> accept(tag, null));
+    }
+
+    /**
+     * Walks the trie over the text between a {@code <} and a {@code >}.
+     *
+     * @param tag the text between the brackets
+     * @param unknownTags receives the tag if it is not registered but looks like a placeholder, may be {@code null}
+     * @return the registered placeholder name, or {@code null} if the tag is not registered
+     */
+    private String accept(CharSequence tag, Consumer<String> unknownTags) {
+        var state = OPEN;
+        for (var i = 0; i < tag.length() && state >= 0; i++) {
+            state = transitions[state][symbol(tag.charAt(i))];
+        }
+        if (state >= 0) {
+            state = transitions[state][symbol('>')];
+        }
+        if (state >= 0 && accepted[state] != null) {
+            return accepted[state];
+        }
+
+        if (unknownTags != null && isTag(tag)) {
+            unknownTags.accept(tag.toString());
+        }
+        return null;
+    }
+
+    private int symbol(char c) {
+        if (c < 128) {
+            return asciiSymbols[c];
+        }
+        var symbol = symbols.get(c);
+        return symbol != null ? symbol : 0;
+    }
+
+    private static int[] newState(int symbolCount) {
+        var state = new int[symbolCount];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private static boolean isTag(CharSequence tag) {
+        if (tag.isEmpty() || tag.length() > MAX_TAG_LENGTH) {
+            return false;
+        }
+        for (var i = 0; i < tag.length(); i++) {
+            if (!isTagChar(tag.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isTagChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+    }
+
+}
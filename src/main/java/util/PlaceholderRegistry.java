@@ -0,0 +1,173 @@
+package util;
+
+import data.Formats;
+import data.OrderStatus;
+import data.Root;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The {@code PlaceholderRegistry} class binds placeholder names to the functions resolving their values from the XML
+ * data.
+ * <p>
+ * Resolvers are registered once and looked up by name, so new placeholders can be added without touching the
+ * rendering code. A registry is thread-safe; the {@link #defaults() default registry} is shared by
+ * {@link DataHandler} and {@link CompiledTemplate} and is read-only, so custom placeholders are registered on a
+ * {@link #copy()} of it.
+ */
+public class PlaceholderRegistry {
+
+    /**
+     * The value of placeholders without a registered resolver.
+     */
+    public static final String UNKNOWN = "Unknown";
+
+    /**
+     * The number of {@code <dataN>} placeholders, resolved from the elements of the data section.
+     */
+    static final int DATA_VALUES = 4;
+
+    private static final PlaceholderRegistry DEFAULTS = createDefaults();
+
+    private final Map<String, Function<Root, String>> resolvers = new ConcurrentHashMap<>();
+
+    private boolean readOnly;
+
+    /**
+     * Returns the shared read-only registry holding the built-in placeholders.
+     *
+     * @return the default registry
+     */
+    public static PlaceholderRegistry defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Returns a new, modifiable registry holding a copy of the resolvers of this registry.
+     *
+     * @return the copy
+     */
+    public PlaceholderRegistry copy() {
+        var copy = new PlaceholderRegistry();
+        copy.resolvers.putAll(resolvers);
+        return copy;
+    }
+
+    /**
+     * Registers a resolver, replacing any resolver registered under the same name.
+     *
+     * @param name the placeholder name without the angle brackets
+     * @param resolver the function resolving the value from the XML data
+     * @return this registry
+     * @throws UnsupportedOperationException if this is the {@link #defaults() default registry}
+     */
+    public PlaceholderRegistry register(String name, Function<Root, String> resolver) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("The default registry is read-only, register on a copy()");
+        }
+        resolvers.put(name, resolver);
+        return this;
+    }
+
+    /**
+     * Returns whether a resolver is registered under the specified name.
+     *
+     * @param name the placeholder name
+     * @return {@code true} if the placeholder is known
+     */
+    public boolean contains(String name) {
+        return resolvers.containsKey(name);
+    }
+
+    /**
+     * Returns the names of the registered placeholders.
+     *
+     * @return the placeholder names
+     */
+    public Set<String> names() {
+        return Set.copyOf(resolvers.keySet());
+    }
+
+    /**
+     * Resolves a single placeholder.
+     *
+     * @param name the placeholder name
+     * @param xmlData the XML data
+     * @return the value of the placeholder, or {@link #UNKNOWN} if no resolver is registered
+     */
+    public String resolve(String name, Root xmlData) {
+        var resolver = resolvers.get(name);
+        if (resolver == null) {
+            RenderMetrics.placeholderUnknown();
+            return UNKNOWN;
+        }
+        return resolver.apply(xmlData);
+    }
+
+    /**
+     * Resolves every registered placeholder into a flat name to value map.
+     *
+     * @param xmlData the XML data
+     * @return the values by placeholder name
+     */
+    public Map<String, String> snapshot(Root xmlData) {
+        var values = new HashMap<String, String>(resolvers.size() * 2);
+        resolvers.forEach((name, resolver) -> values.put(name, resolver.apply(xmlData)));
+        return values;
+    }
+
+    /**
+     * Resolves the specified placeholders into a flat name to value map. Typically called with the placeholder names
+     * of a template, so only the values the template uses are evaluated.
+     *
+     * @param xmlData the XML data
+     * @param names the placeholder names to resolve
+     * @return the values by placeholder name; unknown names map to {@link #UNKNOWN}
+     */
+    public Map<String, String> snapshot(Root xmlData, Collection<String> names) {
+        var values = new HashMap<String, String>(names.size() * 2);
+        for (var name : names) {
+            values.put(name, resolve(name, xmlData));
+        }
+        return values;
+    }
+
+    /**
+     * Returns today's date in the document date format, see {@link Formats#today()}.
+     *
+     * @return today's date
+     */
+    public static String today() {
+        return Formats.today();
+    }
+
+    private static PlaceholderRegistry createDefaults() {
+        var registry = new PlaceholderRegistry()
+                .register("name", xmlData -> xmlData.getCustomerDetails().getName())
+                .register("birthplace", xmlData -> xmlData.getCustomerDetails().getBirthplace())
+                .register("birthday", xmlData -> xmlData.getCustomerDetails().getBirthday())
+                .register("date", xmlData -> today())
+                .register("order_status",
+                        xmlData -> OrderStatus.getNameFromId(xmlData.getCustomerDetails().getCustomerType()))
+                .register("city", xmlData -> xmlData.getCustomerDetails().getAddressData().getCity())
+                .register("street", xmlData -> xmlData.getCustomerDetails().getAddressData().getStreet())
+                .register("postal_code", xmlData ->
+                        Formats.formatInteger(xmlData.getCustomerDetails().getAddressData().getPostalCode()));
+
+        // data1..data4 map to the elements of the data section, starting from 1
+        for (var i = 0; i < DATA_VALUES; i++) {
+            var index = i;
+            registry.register("data" + (i + 1),
+                    xmlData -> xmlData.getDocumentData().getDataSection().getData()[index]);
+        }
+
+        registry.readOnly = true;
+        return registry;
+    }
+
+}
@@ -0,0 +1,310 @@
+package util;
+
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Function;
+
+/**
+ * The {@code PlaceholderScanner} class finds {@code <placeholder>} tokens in the runs of a paragraph and replaces them
+ * in place.
+ * <p>
+ * Word frequently splits a single placeholder over several runs (e.g. {@code "<"}, {@code "order_status"},
+ * {@code ">"}), so the scanner works on the text elements of the runs directly instead of on
+ * {@link XWPFParagraph#getText()}. A match is described by the run and text element where it starts and ends, which
+ * lets the replacement keep every run and its properties.
+ */
+public class PlaceholderScanner {
+
+    /**
+     * A placeholder found in a paragraph.
+     *
+     * @param startRun the index of the run holding the opening {@code <}
+     * @param startText the index of the text element in the start run
+     * @param startOffset the offset of the opening {@code <} in the start text element
+     * @param endRun the index of the run holding the closing {@code >}
+     * @param endText the index of the text element in the end run
+     * @param endOffset the offset just after the closing {@code >} in the end text element
+     * @param name the placeholder name without the angle brackets
+     */
+    public record Match(int startRun, int startText, int startOffset,
+                        int endRun, int endText, int endOffset, String name) {
+    }
+
+    /**
+     * A placeholder found in a sequence of text segments.
+     *
+     * @param startSegment the index of the segment holding the opening {@code <}
+     * @param startOffset the offset of the opening {@code <} in the start segment
+     * @param endSegment the index of the segment holding the closing {@code >}
+     * @param endOffset the offset just after the closing {@code >} in the end segment
+     * @param name the placeholder name without the angle brackets
+     */
+    public record SegmentMatch(int startSegment, int startOffset, int endSegment, int endOffset, String name) {
+    }
+
+    /**
+     * Finds all placeholders in the specified paragraph, in document order. Paragraphs without a {@code <} character
+     * are scanned without allocating.
+     *
+     * @param paragraph the paragraph to scan
+     * @return the placeholders found, or an empty list if there are none
+     */
+    public static List<Match> scan(XWPFParagraph paragraph) {
+        return scan(paragraph, PlaceholderScanner::anyName);
+    }
+
+    /**
+     * Finds the placeholders accepted by the specified function in a paragraph, see
+     * {@link #scan(List, Function)}.
+     *
+     * @param paragraph the paragraph to scan
+     * @param accept returns the placeholder name for the text between the brackets, or {@code null} to skip it
+     * @return the placeholders found, or an empty list if there are none
+     */
+    static List<Match> scan(XWPFParagraph paragraph, Function<CharSequence, String> accept) {
+        if (!containsOpeningBracket(paragraph)) {
+            return List.of();
+        }
+
+        var segments = new ParagraphSegments(paragraph);
+        var segmentMatches = scan(segments, accept);
+        if (segmentMatches.isEmpty()) {
+            return List.of();
+        }
+        var matches = new ArrayList<Match>(segmentMatches.size());
+        for (var match : segmentMatches) {
+            matches.add(segments.toMatch(match));
+        }
+        return matches;
+    }
+
+    /**
+     * Replaces the specified placeholder with a value. The value is written into the text element holding the opening
+     * {@code <}; the remaining characters of the placeholder are removed from the following text elements, so the
+     * properties of every run are kept.
+     * <p>
+     * When several placeholders of the same paragraph are replaced, they must be replaced in reverse document order,
+     * so the offsets of the remaining matches stay valid.
+     *
+     * @param paragraph the paragraph containing the placeholder
+     * @param match the placeholder to replace
+     * @param value the value to write in place of the placeholder
+     */
+    public static void replace(XWPFParagraph paragraph, Match match, String value) {
+        var segments = new ParagraphSegments(paragraph);
+        replace(segments, segments.toSegmentMatch(match), value);
+    }
+
+    /**
+     * Returns where the values of the specified placeholders are located once all of them were replaced with
+     * {@link #replace(XWPFParagraph, Match, String)}: every value starts in the start text element of its match, at
+     * the returned offset.
+     *
+     * @param matches the placeholders of a paragraph, in document order
+     * @param values the values written in place of the placeholders, in the same order
+     * @return the offsets of the values in their start text elements
+     */
+    public static int[] valueOffsets(List<Match> matches, List<String> values) {
+        var offsets = new int[matches.size()];
+        var shiftRun = -1;
+        var shiftText = -1;
+        var shift = 0;
+
+        for (var i = 0; i < matches.size(); i++) {
+            var match = matches.get(i);
+            if (match.startRun() != shiftRun || match.startText() != shiftText) {
+                shiftRun = match.startRun();
+                shiftText = match.startText();
+                shift = 0;
+            }
+            offsets[i] = match.startOffset() + shift;
+
+            if (match.startRun() == match.endRun() && match.startText() == match.endText()) {
+                shift += values.get(i).length() - (match.endOffset() - match.startOffset());
+            } else {
+                // The end text element lost the characters up to the end of the placeholder
+                shiftRun = match.endRun();
+                shiftText = match.endText();
+                shift = -match.endOffset();
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Finds all placeholders in a sequence of text segments, e.g. the {@code <w:t>} contents of a paragraph read from
+     * the raw XML.
+     *
+     * @param segments the text segments, in document order
+     * @return the placeholders found, or an empty list if there are none
+     */
+    public static List<SegmentMatch> scan(List<String> segments) {
+        return scan(segments, PlaceholderScanner::anyName);
+    }
+
+    /**
+     * Finds the placeholders accepted by the specified function in a sequence of text segments. Every scan method
+     * runs on this loop: a candidate is the text from a {@code <} to the next {@code >}, possibly spanning several
+     * segments, and a {@code <} inside a candidate starts a new one. The function decides which candidates are
+     * placeholders.
+     *
+     * @param segments the text segments, in document order; {@code null} segments are skipped
+     * @param accept returns the placeholder name for the text between the brackets, or {@code null} to skip it
+     * @return the placeholders found, or an empty list if there are none
+     */
+    static List<SegmentMatch> scan(List<String> segments, Function<CharSequence, String> accept) {
+        List<SegmentMatch> matches = List.of();
+        StringBuilder name = null;
+        int startSegment = -1;
+        int startOffset = -1;
+
+        for (var s = 0; s < segments.size(); s++) {
+            var text = segments.get(s);
+            if (text == null) {
+                continue;
+            }
+
+            for (var i = 0; i < text.length(); i++) {
+                if (startSegment < 0) {
+                    // Skip ahead to the next opening bracket outside of a placeholder
+                    i = text.indexOf('<', i);
+                    if (i < 0) {
+                        break;
+                    }
+                }
+
+                var c = text.charAt(i);
+                if (c == '<') {
+                    if (name == null) {
+                        name = new StringBuilder();
+                    }
+                    name.setLength(0);
+                    startSegment = s;
+                    startOffset = i;
+                } else if (startSegment >= 0) {
+                    if (c == '>') {
+                        var accepted = accept.apply(name);
+                        if (accepted != null) {
+                            if (matches.isEmpty()) {
+                                matches = new ArrayList<>();
+                            }
+                            matches.add(new SegmentMatch(startSegment, startOffset, s, i + 1, accepted));
+                        }
+                        startSegment = -1;
+                    } else {
+                        name.append(c);
+                    }
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Replaces the specified placeholder in a sequence of text segments, like
+     * {@link #replace(XWPFParagraph, Match, String)}.
+     *
+     * @param segments the mutable text segments containing the placeholder
+     * @param match the placeholder to replace
+     * @param value the value to write in place of the placeholder
+     */
+    public static void replace(List<String> segments, SegmentMatch match, String value) {
+        var startText = segments.get(match.startSegment());
+        if (match.startSegment() == match.endSegment()) {
+            segments.set(match.startSegment(), startText.substring(0, match.startOffset()) + value
+                    + startText.substring(match.endOffset()));
+            return;
+        }
+
+        segments.set(match.startSegment(), startText.substring(0, match.startOffset()) + value);
+        for (var s = match.startSegment() + 1; s < match.endSegment(); s++) {
+            segments.set(s, "");
+        }
+        segments.set(match.endSegment(), segments.get(match.endSegment()).substring(match.endOffset()));
+    }
+
+    private static String anyName(CharSequence name) {
+        return name.length() > 0 ? name.toString() : null;
+    }
+
+    private static boolean containsOpeningBracket(XWPFParagraph paragraph) {
+        for (var run : paragraph.getRuns()) {
+            var textCount = run.getCTR().sizeOfTArray();
+            for (var t = 0; t < textCount; t++) {
+                var text = run.getText(t);
+                if (text != null && text.indexOf('<') >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The text elements of the runs of a paragraph as a list of text segments. Setting a segment sets the text element
+     * in its run.
+     */
+    private static final class ParagraphSegments extends AbstractList<String> implements RandomAccess {
+
+        private final List<XWPFRun> runs;
+
+        /**
+         * The index of the first segment of every run, followed by the number of segments.
+         */
+        private final int[] firstSegments;
+
+        private final int[] segmentRuns;
+
+        ParagraphSegments(XWPFParagraph paragraph) {
+            runs = paragraph.getRuns();
+            firstSegments = new int[runs.size() + 1];
+            for (var r = 0; r < runs.size(); r++) {
+                firstSegments[r + 1] = firstSegments[r] + runs.get(r).getCTR().sizeOfTArray();
+            }
+            segmentRuns = new int[firstSegments[runs.size()]];
+            for (var r = 0; r < runs.size(); r++) {
+                Arrays.fill(segmentRuns, firstSegments[r], firstSegments[r + 1], r);
+            }
+        }
+
+        @Override
+        public int size() {
+            return segmentRuns.length;
+        }
+
+        @Override
+        public String get(int index) {
+            var r = segmentRuns[index];
+            return runs.get(r).getText(index - firstSegments[r]);
+        }
+
+        @Override
+        public String set(int index, String text) {
+            var previous = get(index);
+            var r = segmentRuns[index];
+            runs.get(r).setText(text, index - firstSegments[r]);
+            return previous;
+        }
+
+        Match toMatch(SegmentMatch match) {
+            var startRun = segmentRuns[match.startSegment()];
+            var endRun = segmentRuns[match.endSegment()];
+            return new Match(startRun, match.startSegment() - firstSegments[startRun], match.startOffset(),
+                    endRun, match.endSegment() - firstSegments[endRun], match.endOffset(), match.name());
+        }
+
+        SegmentMatch toSegmentMatch(Match match) {
+            return new SegmentMatch(firstSegments[match.startRun()] + match.startText(), match.startOffset(),
+                    firstSegments[match.endRun()] + match.endText(), match.endOffset(), match.name());
+        }
+
+    }
+
+}
@@ -0,0 +1,417 @@
+package util;
+
+import data.Root;
+import data.RowTable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code RenderCache} class keeps rendered DOCX files, so a request repeating the data of an earlier one is
+ * answered with the earlier bytes without rendering or saving the document again.
+ * <p>
+ * Documents are keyed by a SHA-256 hash of the {@link CompiledTemplate#getHash() template} and of the values the
+ * template writes: the resolved placeholder values and the row data. The values are hashed in a canonical order, so
+ * XML documents that only differ in formatting, element order or in data the template does not use share an entry.
+ * <p>
+ * Since the key holds the resolved values, a volatile placeholder can never serve a stale document: {@code <date>}
+ * resolves to today's date, so the entries rendered yesterday are simply no longer hit and age out. A resolver that
+ * returns a different value on every call (e.g. a timestamp) makes every render of its templates a miss.
+ * <p>
+ * The cache has a memory tier and an optional disk tier, each bounded by the total size of its documents and evicting
+ * the least recently used documents first. Every rendered document is added to both tiers; a document found on disk
+ * is added to the memory tier again. The disk tier survives restarts: the files found in its directory are indexed
+ * when the cache is created, ordered by their modification time, which is updated on every hit. The disk tier is
+ * best-effort: a document that cannot be written or deleted is logged, and the render still returns its bytes.
+ * <p>
+ * The cache is thread-safe. Two threads rendering the same data at the same time both render the document; the
+ * second one replaces the entry of the first with identical bytes.
+ */
+public class RenderCache {
+
+    private static final Logger LOGGER = LogManager.getLogger(RenderCache.class);
+
+    private static final String SUFFIX = ".docx";
+
+    private final long maxMemoryBytes;
+
+    private final Path directory;
+
+    private final long maxDiskBytes;
+
+    /**
+     * The documents held in memory, in access order.
+     */
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The sizes of the documents stored on disk, in access order.
+     */
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private long memoryBytes;
+
+    private long diskBytes;
+
+    /**
+     * Creates a render cache holding documents in memory only.
+     *
+     * @param maxMemoryBytes the maximum total size of the documents held in memory
+     */
+    public RenderCache(long maxMemoryBytes) {
+        this(maxMemoryBytes, null, 0);
+    }
+
+    /**
+     * Creates a render cache holding documents in memory and in the specified directory. Documents stored in the
+     * directory by an earlier cache are reused.
+     *
+     * @param maxMemoryBytes the maximum total size of the documents held in memory
+     * @param directory the directory of the disk tier, created if it does not exist, or {@code null} for no disk tier
+     * @param maxDiskBytes the maximum total size of the documents stored on disk
+     */
+    public RenderCache(long maxMemoryBytes, Path directory, long maxDiskBytes) {
+        if (maxMemoryBytes < 0) {
+            throw new IllegalArgumentException("maxMemoryBytes must not be negative: " + maxMemoryBytes);
+        }
+        if (directory != null && maxDiskBytes < 1) {
+            throw new IllegalArgumentException("maxDiskBytes must be positive: " + maxDiskBytes);
+        }
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory);
+                loadIndex();
+            } catch (IOException e) {
+                throw new RuntimeException("Error loading render cache", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the rendered document for the specified XML data with the default placeholder resolvers, rendering it
+     * only if it is not cached.
+     *
+     * @param template the compiled template
+     * @param xmlData the {@link Root} object representing the XML data
+     * @return the DOCX file; shared with other callers, so it must not be modified
+     */
+    public byte[] render(CompiledTemplate template, Root xmlData) {
+        return render(template, xmlData, PlaceholderRegistry.defaults());
+    }
+
+    /**
+     * Returns the rendered document for the specified XML data, rendering it only if it is not cached.
+     *
+     * @param template the compiled template
+     * @param xmlData the {@link Root} object representing the XML data
+     * @param registry the resolvers of the placeholder values
+     * @return the DOCX file; shared with other callers, so it must not be modified
+     */
+    public byte[] render(CompiledTemplate template, Root xmlData, PlaceholderRegistry registry) {
+        var values = template.values(xmlData, registry);
+        var rows = CompiledTemplate.rows(xmlData);
+        var key = key(template, values, rows);
+
+        var docx = get(key);
+        if (docx != null) {
+            hits.increment();
+            return docx;
+        }
+        misses.increment();
+
+        var start = RenderMetrics.start();
+        var out = new ByteArrayOutputStream();
+        try (var docxData = template.render(values, rows, null)) {
+            RenderMetrics.record(RenderMetrics.Stage.RENDER, start);
+            DataHandler.writeDocx(docxData, out, template.getSaveOptions());
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving DOCX data", e);
+        }
+        docx = out.toByteArray();
+        put(key, docx);
+        return docx;
+    }
+
+    /**
+     * Returns the number of renders answered from the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of renders that had to render the document.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the total size of the documents held in memory.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * Returns the total size of the documents stored on disk.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    /**
+     * Returns the cache key of a document.
+     *
+     * @param template the compiled template
+     * @param values the values of the placeholders, see {@link CompiledTemplate#values(Root, PlaceholderRegistry)}
+     * @param rows the row data, or {@code null} if the XML data has no table
+     * @return the SHA-256 hash, in hexadecimal
+     */
+    static String key(CompiledTemplate template, Map<String, String> values, RowTable rows) {
+        var digest = sha256();
+        update(digest, template.getHash());
+
+        // Every string is prefixed with its length, so no two sequences of values hash the same input
+        update(digest, values.size());
+        for (var entry : new TreeMap<>(values).entrySet()) {
+            update(digest, entry.getKey());
+            update(digest, entry.getValue());
+        }
+
+        update(digest, rows != null ? rows.size() : -1);
+        if (rows != null) {
+            for (var cursor = rows.cursor(); cursor.next(); ) {
+                update(digest, cursor.columns());
+                for (var c = 0; c < cursor.columns(); c++) {
+                    update(digest, cursor.get(c));
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Returns a new SHA-256 digest.
+     *
+     * @return the digest
+     */
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private byte[] get(String key) {
+        synchronized (this) {
+            var docx = memory.get(key);
+            if (docx != null) {
+                return docx;
+            }
+            if (disk.get(key) == null) {
+                return null;
+            }
+        }
+
+        byte[] docx;
+        var file = file(key);
+        try {
+            docx = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Deleted since it was looked up, e.g. evicted by another thread
+            synchronized (this) {
+                var size = disk.remove(key);
+                if (size != null) {
+                    diskBytes -= size;
+                }
+            }
+            return null;
+        }
+
+        synchronized (this) {
+            putMemory(key, docx);
+        }
+        return docx;
+    }
+
+    private void put(String key, byte[] docx) {
+        synchronized (this) {
+            putMemory(key, docx);
+        }
+        if (directory == null || docx.length > maxDiskBytes) {
+            return;
+        }
+
+        if (!store(key, docx)) {
+            return;
+        }
+
+        List<String> evicted;
+        synchronized (this) {
+            var previous = disk.put(key, (long) docx.length);
+            diskBytes += docx.length - (previous != null ? previous : 0);
+            evicted = evictDisk();
+        }
+        delete(evicted);
+    }
+
+    /**
+     * Writes a document to the disk tier. The disk tier is best-effort: a document that cannot be written is logged
+     * and left out of it, and the caller still gets the rendered bytes.
+     *
+     * @param key the cache key
+     * @param docx the DOCX file
+     * @return {@code true} if the document was written
+     */
+    private boolean store(String key, byte[] docx) {
+        // Written to a temporary file first, so a crash never leaves a truncated document behind
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(directory, "render", ".tmp");
+            Files.write(temporary, docx);
+            Files.move(temporary, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Error saving cached DOCX data", e);
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException suppressed) {
+                    // Deleted on the next start, see loadIndex
+                    LOGGER.warn("Error deleting temporary DOCX data", suppressed);
+                }
+            }
+            return false;
+        }
+    }
+
+    private void putMemory(String key, byte[] docx) {
+        if (docx.length > maxMemoryBytes) {
+            return;
+        }
+        var previous = memory.put(key, docx);
+        memoryBytes += docx.length - (previous != null ? previous.length : 0);
+
+        // The entry just added is the most recently used, so it is never evicted here
+        var entries = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes) {
+            memoryBytes -= entries.next().length;
+            entries.remove();
+        }
+    }
+
+    /**
+     * Removes the least recently used documents from the disk index until it fits its maximum size.
+     *
+     * @return the keys of the documents whose files must be deleted
+     */
+    private List<String> evictDisk() {
+        var evicted = new ArrayList<String>();
+        var entries = disk.entrySet().iterator();
+        while (diskBytes > maxDiskBytes) {
+            var eldest = entries.next();
+            diskBytes -= eldest.getValue();
+            evicted.add(eldest.getKey());
+            entries.remove();
+        }
+        return evicted;
+    }
+
+    private void delete(List<String> keys) {
+        for (var key : keys) {
+            try {
+                Files.deleteIfExists(file(key));
+            } catch (IOException e) {
+                // Already out of the index; the file is indexed again, and evicted, on the next start
+                LOGGER.warn("Error deleting cached DOCX data", e);
+            }
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        try (var files = Files.newDirectoryStream(directory, "*.tmp")) {
+            // Left behind by a process stopped while writing a document
+            for (var file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        var entries = new ArrayList<Map.Entry<Path, BasicFileAttributes>>();
+        try (var files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (var file : files) {
+                entries.add(Map.entry(file, Files.readAttributes(file, BasicFileAttributes.class)));
+            }
+        }
+        entries.sort(Comparator.comparing(entry -> entry.getValue().lastModifiedTime()));
+
+        List<String> evicted;
+        synchronized (this) {
+            for (var entry : entries) {
+                var name = entry.getKey().getFileName().toString();
+                disk.put(name.substring(0, name.length() - SUFFIX.length()), entry.getValue().size());
+                diskBytes += entry.getValue().size();
+            }
+            evicted = evictDisk();
+        }
+        delete(evicted);
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            update(digest, -1);
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        update(digest, bytes.length);
+        digest.update(bytes);
+    }
+
+    private static void update(MessageDigest digest, int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+
+}
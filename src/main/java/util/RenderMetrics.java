@@ -0,0 +1,632 @@
+package util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code RenderMetrics} class records where the time of a render goes: the duration of every {@link Stage} in a
+ * histogram, the number of placeholders found, replaced and resolved to {@link PlaceholderRegistry#UNKNOWN}, and the
+ * number of DOCX bytes written.
+ * <p>
+ * Placeholders are counted per occurrence in the rendered document, on every render path: a placeholder of a table
+ * template row counts once per generated row. A placeholder is found when a render has to fill it and replaced when
+ * its value is written, so the two counts only differ where a render leaves a placeholder in place or, for an
+ * {@link IncrementalRenderer} update, keeps a value that did not change.
+ * <p>
+ * Unknown placeholders are counted per resolution instead: the renders of a {@link CompiledTemplate} and the
+ * {@link StreamingDocxWriter} resolve every placeholder name once per render, the {@link DataHandler} methods once per
+ * placeholder in the template, so an unknown name repeated in the document is counted once by the former.
+ * <p>
+ * Metrics are disabled unless the {@value #ENABLED_PROPERTY} system property is {@code true}, or they are enabled with
+ * {@link #setEnabled(boolean)}. While disabled, every recording call only reads a volatile flag. {@link #install()}
+ * publishes the metrics over JMX and logs a summary line periodically.
+ * <p>
+ * All methods are thread-safe.
+ */
+public class RenderMetrics {
+
+    /**
+     * The system property enabling the metrics at startup.
+     */
+    public static final String ENABLED_PROPERTY = "xmltodocx.metrics";
+
+    /**
+     * The system property holding the period of the summary line in seconds; 0 disables the line. Defaults to 60.
+     */
+    public static final String LOG_PERIOD_PROPERTY = "xmltodocx.metrics.logPeriod";
+
+    /**
+     * The JMX domain of the metrics MBeans.
+     */
+    public static final String JMX_DOMAIN = "xmltodocx";
+
+    /**
+     * Returned by {@link #start()} while the metrics are disabled.
+     */
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    /**
+     * The measured stages of a render.
+     */
+    public enum Stage {
+
+        /**
+         * Unmarshalling the XML data, see {@link XmlLoader}.
+         */
+        LOAD_XML("loadXml"),
+
+        /**
+         * Opening the DOCX template.
+         */
+        LOAD_DOCX("loadDocx"),
+
+        /**
+         * {@link DataHandler#replacePlaceholderInParagraphs}.
+         */
+        REPLACE_PARAGRAPHS("replacePlaceholderInParagraphs"),
+
+        /**
+         * {@link DataHandler#replacePlaceholderInTables}.
+         */
+        REPLACE_TABLES("replacePlaceholderInTables"),
+
+        /**
+         * {@link DataHandler#replacePlaceholderWithLogo}.
+         */
+        REPLACE_LOGO("replacePlaceholderWithLogo"),
+
+        /**
+         * {@link DataHandler#replacePlaceholders}, replacing text, table rows and the logo in a single walk.
+         */
+        REPLACE_PLACEHOLDERS("replacePlaceholders"),
+
+        /**
+         * Writing and compressing an {@link org.apache.poi.xwpf.usermodel.XWPFDocument}.
+         */
+        SAVE_DOCX("saveDocx"),
+
+        /**
+         * {@link CompiledTemplate#render}, including opening the template.
+         */
+        RENDER("render"),
+
+        /**
+         * {@link IncrementalRenderer#update}, rewriting the changed values of a rendered document.
+         */
+        UPDATE("update"),
+
+        /**
+         * {@link StreamingDocxWriter#write}, from opening the template to the last byte written.
+         */
+        STREAM_DOCX("streamDocx");
+
+        private final String displayName;
+
+        Stage(String displayName) {
+            this.displayName = displayName;
+        }
+
+        /**
+         * Returns the name of the stage in JMX and in the summary line.
+         *
+         * @return the display name
+         */
+        public String displayName() {
+            return displayName;
+        }
+
+    }
+
+    /**
+     * The JMX view of the counters.
+     */
+    public interface CountersMXBean {
+
+        boolean isEnabled();
+
+        void setEnabled(boolean enabled);
+
+        long getPlaceholdersFound();
+
+        long getPlaceholdersReplaced();
+
+        long getPlaceholdersUnknown();
+
+        long getBytesWritten();
+
+        void reset();
+
+    }
+
+    /**
+     * The JMX view of the histogram of a stage.
+     */
+    public interface StageMXBean {
+
+        long getCount();
+
+        double getTotalMillis();
+
+        double getMeanMillis();
+
+        double getMaxMillis();
+
+        double getP50Millis();
+
+        double getP95Millis();
+
+        double getP99Millis();
+
+    }
+
+    /**
+     * A histogram of durations. Durations are counted in buckets of four per power of two, so a percentile is
+     * reported with an error of at most 25%, using a fixed amount of memory.
+     */
+    public static final class Histogram implements StageMXBean {
+
+        private static final int BUCKETS = 252;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private Histogram() {
+            for (var i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            buckets[bucket(nanos)].increment();
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        /**
+         * Returns the specified percentile, i.e. the upper bound of the bucket holding it.
+         *
+         * @param percentile the percentile, between 0 and 100
+         * @return the duration in nanoseconds, or 0 if nothing has been recorded
+         */
+        public long percentileNanos(double percentile) {
+            var total = count.sum();
+            if (total == 0) {
+                return 0;
+            }
+            var rank = (long) Math.ceil(total * percentile / 100);
+            var seen = 0L;
+            for (var i = 0; i < BUCKETS; i++) {
+                seen += buckets[i].sum();
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), maxNanos.get());
+                }
+            }
+            return maxNanos.get();
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public double getTotalMillis() {
+            return totalNanos.sum() / 1e6;
+        }
+
+        @Override
+        public double getMeanMillis() {
+            var total = count.sum();
+            return total == 0 ? 0 : totalNanos.sum() / 1e6 / total;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return percentileNanos(50) / 1e6;
+        }
+
+        @Override
+        public double getP95Millis() {
+            return percentileNanos(95) / 1e6;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return percentileNanos(99) / 1e6;
+        }
+
+        private void reset() {
+            for (var bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+
+        /**
+         * Returns the bucket of a duration: values below 4 have a bucket each, larger values are split by their
+         * highest bit and the two bits below it.
+         */
+        static int bucket(long nanos) {
+            if (nanos < 4) {
+                return (int) nanos;
+            }
+            var exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            var fraction = (int) (nanos >>> (exponent - 2)) & 3;
+            return (exponent - 1) * 4 + fraction;
+        }
+
+        /**
+         * Returns the largest duration counted in the specified bucket.
+         */
+        static long upperBound(int bucket) {
+            if (bucket < 4) {
+                return bucket;
+            }
+            var exponent = bucket / 4 + 1;
+            var fraction = bucket & 3;
+            if (exponent == 63 || exponent == 62 && fraction == 3) {
+                return Long.MAX_VALUE;
+            }
+            return ((5L + fraction) << (exponent - 2)) - 1;
+        }
+
+    }
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    private static final Histogram[] HISTOGRAMS = new Histogram[Stage.values().length];
+
+    private static final LongAdder PLACEHOLDERS_FOUND = new LongAdder();
+
+    private static final LongAdder PLACEHOLDERS_REPLACED = new LongAdder();
+
+    private static final LongAdder PLACEHOLDERS_UNKNOWN = new LongAdder();
+
+    private static final LongAdder BYTES_WRITTEN = new LongAdder();
+
+    private static ScheduledExecutorService logger;
+
+    private static boolean installed;
+
+    static {
+        for (var i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Returns whether the metrics are recorded.
+     *
+     * @return {@code true} if the metrics are enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables recording the metrics. The recorded values are kept.
+     *
+     * @param enabled whether to record the metrics
+     */
+    public static void setEnabled(boolean enabled) {
+        RenderMetrics.enabled = enabled;
+    }
+
+    /**
+     * Starts timing a stage.
+     *
+     * @return the start time to pass to {@link #record(Stage, long)}
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : NOT_STARTED;
+    }
+
+    /**
+     * Records the duration of a stage. Does nothing if the metrics were disabled when the stage was started.
+     *
+     * @param stage the stage
+     * @param start the value returned by {@link #start()} when the stage started
+     */
+    public static void record(Stage stage, long start) {
+        if (start != NOT_STARTED) {
+            HISTOGRAMS[stage.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Counts placeholders found in a rendered document, one per occurrence.
+     *
+     * @param count the number of placeholders
+     */
+    public static void placeholdersFound(int count) {
+        if (enabled) {
+            PLACEHOLDERS_FOUND.add(count);
+        }
+    }
+
+    /**
+     * Counts placeholders replaced with their values, one per occurrence.
+     *
+     * @param count the number of placeholders
+     */
+    public static void placeholdersReplaced(int count) {
+        if (enabled) {
+            PLACEHOLDERS_REPLACED.add(count);
+        }
+    }
+
+    /**
+     * Counts a resolution of a placeholder without a resolver, i.e. resolved to {@link PlaceholderRegistry#UNKNOWN}.
+     */
+    public static void placeholderUnknown() {
+        if (enabled) {
+            PLACEHOLDERS_UNKNOWN.increment();
+        }
+    }
+
+    /**
+     * Returns a stream counting the bytes written to the specified stream, or the stream itself if the metrics are
+     * disabled. Closing the returned stream closes the specified stream.
+     *
+     * @param outputStream the stream the DOCX data is written to
+     * @return the stream to write to
+     */
+    public static OutputStream countBytes(OutputStream outputStream) {
+        if (!enabled) {
+            return outputStream;
+        }
+        return new FilterOutputStream(outputStream) {
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                BYTES_WRITTEN.increment();
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+                BYTES_WRITTEN.add(length);
+            }
+
+        };
+    }
+
+    /**
+     * Returns the histogram of the specified stage.
+     *
+     * @param stage the stage
+     * @return the histogram
+     */
+    public static Histogram histogram(Stage stage) {
+        return HISTOGRAMS[stage.ordinal()];
+    }
+
+    /**
+     * Returns the number of placeholders found, counted per occurrence.
+     *
+     * @return the number of placeholders found since the last reset
+     */
+    public static long getPlaceholdersFound() {
+        return PLACEHOLDERS_FOUND.sum();
+    }
+
+    /**
+     * Returns the number of placeholders replaced with their values, counted per occurrence.
+     *
+     * @return the number of placeholders replaced since the last reset
+     */
+    public static long getPlaceholdersReplaced() {
+        return PLACEHOLDERS_REPLACED.sum();
+    }
+
+    /**
+     * Returns the number of placeholders resolved to {@link PlaceholderRegistry#UNKNOWN}, counted per resolution.
+     *
+     * @return the number of unknown placeholders since the last reset
+     */
+    public static long getPlaceholdersUnknown() {
+        return PLACEHOLDERS_UNKNOWN.sum();
+    }
+
+    /**
+     * Returns the number of DOCX bytes written through {@link #countBytes(OutputStream)}.
+     *
+     * @return the number of bytes since the last reset
+     */
+    public static long getBytesWritten() {
+        return BYTES_WRITTEN.sum();
+    }
+
+    /**
+     * Clears the recorded values.
+     */
+    public static void reset() {
+        for (var histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+        PLACEHOLDERS_FOUND.reset();
+        PLACEHOLDERS_REPLACED.reset();
+        PLACEHOLDERS_UNKNOWN.reset();
+        BYTES_WRITTEN.reset();
+    }
+
+    /**
+     * Returns a one-line summary of the metrics, listing the stages that have been recorded.
+     *
+     * @return the summary
+     */
+    public static String summary() {
+        var summary = new StringBuilder(256);
+        for (var stage : Stage.values()) {
+            var histogram = histogram(stage);
+            if (histogram.getCount() > 0) {
+                summary.append(String.format(Locale.ROOT, "%s: n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms, ",
+                        stage.displayName(), histogram.getCount(), histogram.getMeanMillis(),
+                        histogram.getP50Millis(), histogram.getP99Millis(), histogram.getMaxMillis()));
+            }
+        }
+        summary.append(String.format(Locale.ROOT, "placeholders: found=%d replaced=%d unknown=%d, bytesWritten=%d",
+                getPlaceholdersFound(), getPlaceholdersReplaced(), getPlaceholdersUnknown(), getBytesWritten()));
+        return summary.toString();
+    }
+
+    /**
+     * Publishes the metrics over JMX and logs the {@link #summary()} every {@value #LOG_PERIOD_PROPERTY} seconds and
+     * when the JVM exits, if the metrics are enabled. Calling it again has no effect.
+     */
+    public static synchronized void install() {
+        if (!enabled || installed) {
+            return;
+        }
+        installed = true;
+        registerMBeans();
+
+        var period = Long.getLong(LOG_PERIOD_PROPERTY, 60);
+        if (period > 0) {
+            startLogging(Duration.ofSeconds(period));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> Log.LOGGER.info(summary()), "render-metrics-summary"));
+    }
+
+    /**
+     * Registers the counters as {@code xmltodocx:type=RenderMetrics,name=counters} and every stage as
+     * {@code xmltodocx:type=RenderMetrics,name=<stage>} with the platform MBean server. Already registered MBeans
+     * are kept.
+     */
+    public static void registerMBeans() {
+        var server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            var counters = objectName("counters");
+            if (!server.isRegistered(counters)) {
+                server.registerMBean(new Counters(), counters);
+            }
+            for (var stage : Stage.values()) {
+                var name = objectName(stage.displayName());
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(histogram(stage), name);
+                }
+            }
+        } catch (JMException e) {
+            throw new RuntimeException("Error registering metrics", e);
+        }
+    }
+
+    /**
+     * Returns the JMX name of the metrics MBean with the specified name.
+     *
+     * @param name {@code counters} or the display name of a stage
+     * @return the object name
+     */
+    public static ObjectName objectName(String name) {
+        try {
+            return new ObjectName(JMX_DOMAIN + ":type=RenderMetrics,name=" + name);
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Invalid metrics name: " + name, e);
+        }
+    }
+
+    /**
+     * Logs the {@link #summary()} at the specified period on a daemon thread, until {@link #stopLogging()}.
+     *
+     * @param period the period of the summary line
+     */
+    public static synchronized void startLogging(Duration period) {
+        stopLogging();
+        logger = Executors.newSingleThreadScheduledExecutor(task -> {
+            var thread = new Thread(task, "render-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.scheduleAtFixedRate(() -> Log.LOGGER.info(summary()), period.toMillis(), period.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops logging the summary line.
+     */
+    public static synchronized void stopLogging() {
+        if (logger != null) {
+            logger.shutdownNow();
+            logger = null;
+        }
+    }
+
+    private static final class Counters implements CountersMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return RenderMetrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            RenderMetrics.setEnabled(enabled);
+        }
+
+        @Override
+        public long getPlaceholdersFound() {
+            return RenderMetrics.getPlaceholdersFound();
+        }
+
+        @Override
+        public long getPlaceholdersReplaced() {
+            return RenderMetrics.getPlaceholdersReplaced();
+        }
+
+        @Override
+        public long getPlaceholdersUnknown() {
+            return RenderMetrics.getPlaceholdersUnknown();
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return RenderMetrics.getBytesWritten();
+        }
+
+        @Override
+        public void reset() {
+            RenderMetrics.reset();
+        }
+
+    }
+
+    /**
+     * Holds the logger, so the logging framework is only initialized once a summary is logged. Initializing it is a
+     * large part of the startup time of a single render.
+     */
+    private static final class Log {
+
+        static final Logger LOGGER = LogManager.getLogger(RenderMetrics.class);
+
+    }
+
+}
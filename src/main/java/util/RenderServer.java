@@ -0,0 +1,268 @@
+package util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import data.Root;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The {@code RenderServer} class renders documents over HTTP, so the JVM, the JAXB context and the compiled templates
+ * stay warm between documents.
+ * <p>
+ * {@code POST /render} takes an XML document as the request body and responds with the rendered DOCX file. The
+ * template is the default template, or {@code <template directory>/<name>.docx} when the request has a
+ * {@code template=<name>} query parameter. Templates are kept in a {@link TemplateCache}. {@code GET /health} responds
+ * with {@code OK}.
+ * <p>
+ * Every request is handled on its own virtual thread. At most {@code maxInFlight} documents are rendered at the same
+ * time; further render requests are rejected with {@code 503 Service Unavailable} and a {@code Retry-After} header
+ * instead of piling up in memory.
+ * <p>
+ * With a {@link RenderCache}, a request repeating the data of an earlier request is answered with the cached DOCX file,
+ * without rendering the document again.
+ * <p>
+ * A request whose document cannot be rendered is answered with a generic {@code 500 Internal Server Error}; the cause
+ * is logged, not sent to the client.
+ */
+public class RenderServer {
+
+    private static final Logger LOGGER = LogManager.getLogger(RenderServer.class);
+
+    private static final String DOCX_CONTENT_TYPE =
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
+    private static final int MAX_REQUEST_SIZE = 16 * 1024 * 1024;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final TemplateCache templates;
+
+    private final Path defaultTemplate;
+
+    private final Path templateDirectory;
+
+    private final Semaphore inFlight;
+
+    private final RenderCache renders;
+
+    /**
+     * Creates a render server. The server does not accept requests until it is {@link #start() started}.
+     *
+     * @param address the address to listen on; port 0 picks a free port
+     * @param templates the cache of the compiled templates
+     * @param defaultTemplate the template used when a request does not name one
+     * @param templateDirectory the directory of the named templates, or {@code null} to only serve the default
+     * @param maxInFlight the maximum number of documents rendered at the same time
+     */
+    public RenderServer(InetSocketAddress address, TemplateCache templates, Path defaultTemplate,
+                        Path templateDirectory, int maxInFlight) {
+        this(address, templates, defaultTemplate, templateDirectory, maxInFlight, null);
+    }
+
+    /**
+     * Creates a render server answering repeated requests from a cache of rendered documents. The server does not
+     * accept requests until it is {@link #start() started}.
+     *
+     * @param address the address to listen on; port 0 picks a free port
+     * @param templates the cache of the compiled templates
+     * @param defaultTemplate the template used when a request does not name one
+     * @param templateDirectory the directory of the named templates, or {@code null} to only serve the default
+     * @param maxInFlight the maximum number of documents rendered at the same time
+     * @param renders the cache of the rendered documents, or {@code null} to render every request
+     */
+    public RenderServer(InetSocketAddress address, TemplateCache templates, Path defaultTemplate,
+                        Path templateDirectory, int maxInFlight, RenderCache renders) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.templates = templates;
+        this.defaultTemplate = defaultTemplate;
+        this.templateDirectory = templateDirectory != null ? templateDirectory.toAbsolutePath().normalize() : null;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.renders = renders;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        try {
+            server = HttpServer.create(address, 0);
+        } catch (IOException e) {
+            throw new RuntimeException("Error starting render server", e);
+        }
+        server.setExecutor(executor);
+        server.createContext("/render", this::handleRender);
+        server.createContext("/health", this::handleHealth);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, waiting up to the specified delay for the running requests to finish.
+     *
+     * @param delaySeconds the maximum time to wait, in seconds
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.close();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            respond(exchange, 200, "OK");
+        }
+    }
+
+    private void handleRender(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            var template = resolveTemplate(exchange.getRequestURI().getRawQuery());
+            if (template == null) {
+                respond(exchange, 404, "Unknown template");
+                return;
+            }
+
+            if (!inFlight.tryAcquire()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, "Too many documents in flight");
+                return;
+            }
+            try {
+                render(exchange, template);
+            } finally {
+                inFlight.release();
+            }
+        }
+    }
+
+    private void render(HttpExchange exchange, Path templatePath) throws IOException {
+        byte[] xml;
+        try (var body = exchange.getRequestBody()) {
+            xml = readBody(body);
+        }
+        if (xml == null) {
+            respond(exchange, 413, "Request body too large");
+            return;
+        }
+
+        Root xmlData;
+        try {
+            xmlData = XmlLoader.load(xml);
+        } catch (RuntimeException e) {
+            respond(exchange, 400, e.getMessage());
+            return;
+        }
+
+        if (renders != null) {
+            byte[] docx;
+            try {
+                docx = renders.render(templates.get(templatePath), xmlData);
+            } catch (RuntimeException e) {
+                respondError(exchange, templatePath, e);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", DOCX_CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, docx.length);
+            try (var out = exchange.getResponseBody()) {
+                out.write(docx);
+            }
+            return;
+        }
+
+        CompiledTemplate template;
+        XWPFDocument docxData;
+        try {
+            template = templates.get(templatePath);
+            docxData = template.render(xmlData);
+        } catch (RuntimeException e) {
+            respondError(exchange, templatePath, e);
+            return;
+        }
+
+        try (docxData) {
+            exchange.getResponseHeaders().set("Content-Type", DOCX_CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, 0);
+            try (var out = exchange.getResponseBody()) {
+                DataHandler.writeDocx(docxData, out, template.getSaveOptions());
+            }
+        }
+    }
+
+    /**
+     * Returns the template named in the query, or the default template if the query does not name one.
+     *
+     * @return the template path, or {@code null} if the named template does not exist
+     */
+    private Path resolveTemplate(String query) {
+        String name = null;
+        if (query != null) {
+            for (var parameter : query.split("&")) {
+                if (parameter.startsWith("template=")) {
+                    name = URLDecoder.decode(parameter.substring("template=".length()), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        if (name == null || name.isEmpty()) {
+            return defaultTemplate;
+        }
+        if (templateDirectory == null) {
+            return null;
+        }
+
+        // Only names of files directly inside the template directory are accepted
+        var path = templateDirectory.resolve(name + ".docx").normalize();
+        return path.getParent().equals(templateDirectory) && Files.isRegularFile(path) ? path : null;
+    }
+
+    private static byte[] readBody(InputStream body) throws IOException {
+        var bytes = body.readNBytes(MAX_REQUEST_SIZE + 1);
+        return bytes.length > MAX_REQUEST_SIZE ? null : bytes;
+    }
+
+    private static void respondError(HttpExchange exchange, Path templatePath, RuntimeException e) throws IOException {
+        LOGGER.error("Error rendering document with template {}", templatePath, e);
+        respond(exchange, 500, "Error rendering document");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        var bytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
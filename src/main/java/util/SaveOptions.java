@@ -0,0 +1,187 @@
+package util;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * The {@code SaveOptions} class controls how the parts of a DOCX file are compressed when it is saved with
+ * {@link DataHandler#saveDocx(org.apache.poi.xwpf.usermodel.XWPFDocument, String, SaveOptions)}.
+ * <p>
+ * Every part is deflated with the level of its file extension, or the default level. A level of
+ * {@link Deflater#NO_COMPRESSION} stores the part uncompressed. Images and other media that are already compressed are
+ * stored by default, since deflating them again costs CPU time without making them smaller. When a template is set,
+ * parts whose content is the same as in the template are copied with the template's compressed bytes, without being
+ * compressed again.
+ * <p>
+ * Options are immutable; the {@code with} methods return a modified copy.
+ */
+public final class SaveOptions {
+
+    /**
+     * The extensions of the parts that are already compressed.
+     */
+    public static final Set<String> COMPRESSED_MEDIA = Set.of("png", "jpg", "jpeg", "jpe", "gif", "tif", "tiff",
+            "wdp", "jxr", "mp3", "mp4", "m4a", "zip", "docx", "xlsx", "pptx");
+
+    /**
+     * A part of the template.
+     *
+     * @param entry the ZIP entry of the part, with method, CRC and sizes
+     * @param content the uncompressed content
+     * @param raw the compressed content
+     */
+    record TemplatePart(ZipArchiveEntry entry, byte[] content, byte[] raw) {
+    }
+
+    private static final SaveOptions DEFAULTS = new SaveOptions(Deflater.DEFAULT_COMPRESSION, Map.of(), true, Map.of());
+
+    private final int level;
+
+    private final Map<String, Integer> levels;
+
+    private final boolean storeMedia;
+
+    private final Map<String, TemplatePart> templateParts;
+
+    private SaveOptions(int level, Map<String, Integer> levels, boolean storeMedia,
+                        Map<String, TemplatePart> templateParts) {
+        this.level = level;
+        this.levels = levels;
+        this.storeMedia = storeMedia;
+        this.templateParts = templateParts;
+    }
+
+    /**
+     * Returns the default options: every part is deflated with the default level of {@link Deflater}, except
+     * compressed media, which are stored.
+     *
+     * @return the default options
+     */
+    public static SaveOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Returns a copy of the options with the specified default level.
+     *
+     * @param level the deflate level, from {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION}, or
+     *              {@link Deflater#DEFAULT_COMPRESSION}
+     * @return the modified options
+     */
+    public SaveOptions withLevel(int level) {
+        return new SaveOptions(checkLevel(level), levels, storeMedia, templateParts);
+    }
+
+    /**
+     * Returns a copy of the options with the specified level for the parts with the specified extension, e.g.
+     * {@code xml} or {@code rels}.
+     *
+     * @param extension the file extension of the parts, without the dot
+     * @param level the deflate level, from {@link Deflater#NO_COMPRESSION} to {@link Deflater#BEST_COMPRESSION}, or
+     *              {@link Deflater#DEFAULT_COMPRESSION}
+     * @return the modified options
+     */
+    public SaveOptions withLevel(String extension, int level) {
+        var modified = new HashMap<>(levels);
+        modified.put(extension.toLowerCase(Locale.ROOT), checkLevel(level));
+        return new SaveOptions(this.level, Map.copyOf(modified), storeMedia, templateParts);
+    }
+
+    /**
+     * Returns a copy of the options that stores the {@link #COMPRESSED_MEDIA} or deflates them like any other part.
+     * A level set for the extension of a medium with {@link #withLevel(String, int)} takes precedence.
+     *
+     * @param storeMedia whether to store compressed media
+     * @return the modified options
+     */
+    public SaveOptions withStoredMedia(boolean storeMedia) {
+        return new SaveOptions(level, levels, storeMedia, templateParts);
+    }
+
+    /**
+     * Returns a copy of the options that copies the parts not modified since the specified template was loaded with
+     * the template's compressed bytes. The template is read once, so the options can be reused for every document
+     * rendered from it.
+     *
+     * @param docxBytes the DOCX template the documents are rendered from
+     * @return the modified options
+     */
+    public SaveOptions withTemplate(byte[] docxBytes) {
+        var parts = new HashMap<String, TemplatePart>();
+        try (var zipFile = new ZipFile(new SeekableInMemoryByteChannel(docxBytes))) {
+            for (var entries = zipFile.getEntries(); entries.hasMoreElements(); ) {
+                var entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                byte[] content;
+                byte[] raw;
+                try (var in = zipFile.getInputStream(entry); var rawIn = zipFile.getRawInputStream(entry)) {
+                    content = in.readAllBytes();
+                    raw = rawIn.readAllBytes();
+                }
+                parts.put(entry.getName(), new TemplatePart(entry, content, raw));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading DOCX data", e);
+        }
+        return new SaveOptions(level, levels, storeMedia, Map.copyOf(parts));
+    }
+
+    /**
+     * Returns a copy of the options that copies the parts not modified since the specified template was loaded with
+     * the template's compressed bytes, see {@link #withTemplate(byte[])}. The position of the buffer is not changed.
+     *
+     * @param docxBuffer the DOCX template the documents are rendered from
+     * @return the modified options
+     */
+    public SaveOptions withTemplate(ByteBuffer docxBuffer) {
+        var bytes = new byte[docxBuffer.remaining()];
+        docxBuffer.duplicate().get(bytes);
+        return withTemplate(bytes);
+    }
+
+    /**
+     * Returns the deflate level of the specified part.
+     *
+     * @param name the name of the ZIP entry of the part
+     * @return the deflate level; {@link Deflater#NO_COMPRESSION} if the part is stored
+     */
+    int level(String name) {
+        var dot = name.lastIndexOf('.');
+        var extension = dot >= 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+        var partLevel = levels.get(extension);
+        if (partLevel != null) {
+            return partLevel;
+        }
+        return storeMedia && COMPRESSED_MEDIA.contains(extension) ? Deflater.NO_COMPRESSION : level;
+    }
+
+    /**
+     * Returns the part of the template with the specified name.
+     *
+     * @param name the name of the ZIP entry of the part
+     * @return the part, or {@code null} if no template is set or the template has no such part
+     */
+    TemplatePart templatePart(String name) {
+        return templateParts.get(name);
+    }
+
+    private static int checkLevel(int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION
+                && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid deflate level: " + level);
+        }
+        return level;
+    }
+
+}
@@ -0,0 +1,1025 @@
+package util;
+
+import data.RowTable;
+import data.Root;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code StreamingDocxWriter} class renders a DOCX template for XML data straight into an output stream, without
+ * building an {@link org.apache.poi.xwpf.usermodel.XWPFDocument}.
+ * <p>
+ * {@code word/document.xml} is read with StAX and written to the output while it is read. Only the paragraph or table
+ * row being substituted is buffered, and the rows generated from a template row (see {@link TableRowExpander}) are
+ * written one at a time, so heap use is bounded by the largest paragraph or row instead of by the whole document. The
+ * headers, footers, footnotes and endnotes holding placeholders are substituted the same way, and text boxes are
+ * substituted as part of the paragraph anchoring them, so a document covers the same parts as a
+ * {@link CompiledTemplate} render. The other parts of the template are copied to the output as they are stored in the
+ * template, without inflating them.
+ * <p>
+ * Placeholders are located with a {@link PlaceholderMatcher} for the registry of the render, so text that is not a
+ * registered placeholder is left unchanged.
+ * <p>
+ * The logo parts (the picture, the header relationships and the drawing replacing the logo placeholder) do not depend
+ * on the XML data and are prepared once when the writer is created. A writer is immutable and thread-safe.
+ * <p>
+ * {@link #writeMerged(Iterator, PlaceholderRegistry, OutputStream)} merges any number of records into a single
+ * document, one section per record. The body of the template is written once per record, while the styles, the
+ * numbering, the headers with the logo and every other part are written once and shared by all sections; the
+ * placeholders of the headers, footers, footnotes and endnotes are left unchanged there.
+ */
+public class StreamingDocxWriter {
+
+    private static final String DOCUMENT_PART = "word/document.xml";
+
+    private static final String CONTENT_TYPES_PART = "[Content_Types].xml";
+
+    private static final Pattern HEADER_PART = Pattern.compile("word/(header\\d*\\.xml)");
+
+    /**
+     * The parts other than {@code word/document.xml} whose paragraphs are visited by {@link DocumentWalker}.
+     */
+    private static final Pattern TEXT_PART = Pattern.compile("word/(header\\d*|footer\\d*|footnotes|endnotes)\\.xml");
+
+    private static final PlaceholderMatcher DEFAULT_MATCHER =
+            PlaceholderMatcher.forRegistry(PlaceholderRegistry.defaults());
+
+    private static final String W_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+
+    private static final String WP_NS = "http://schemas.openxmlformats.org/drawingml/2006/wordprocessingDrawing";
+
+    private static final String W14_NS = "http://schemas.microsoft.com/office/word/2010/wordml";
+
+    /**
+     * The ids of paragraphs and table rows, which have to be unique within a document.
+     */
+    private static final Set<QName> PARAGRAPH_IDS = Set.of(new QName(W14_NS, "paraId"), new QName(W14_NS, "textId"));
+
+    /**
+     * The first id of the drawings of a merged document, above the ids of the template and the logo drawings.
+     */
+    private static final int FIRST_MERGED_DRAWING_ID = 1 << 20;
+
+    private static final String IMAGE_RELATIONSHIP =
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships/image";
+
+    private static final String LOGO_RELATIONSHIP_ID = "rIdStreamedLogo";
+
+    private static final String EMPTY_RELATIONSHIPS = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <Relationships xmlns="http://schemas.openxmlformats.org/package/2006/relationships"></Relationships>""";
+
+    private static final String LOGO_DRAWING = """
+            <w:r xmlns:w="http://schemas.openxmlformats.org/wordprocessingml/2006/main" \
+            xmlns:wp="http://schemas.openxmlformats.org/drawingml/2006/wordprocessingDrawing" \
+            xmlns:a="http://schemas.openxmlformats.org/drawingml/2006/main" \
+            xmlns:pic="http://schemas.openxmlformats.org/drawingml/2006/picture" \
+            xmlns:r="http://schemas.openxmlformats.org/officeDocument/2006/relationships"><w:drawing>\
+            <wp:inline distT="0" distB="0" distL="0" distR="0"><wp:extent cx="%1$d" cy="%2$d"/>\
+            <wp:docPr id="%3$d" name="Picture %3$d"/><a:graphic>\
+            <a:graphicData uri="http://schemas.openxmlformats.org/drawingml/2006/picture"><pic:pic>\
+            <pic:nvPicPr><pic:cNvPr id="0" name="%4$s"/><pic:cNvPicPr/></pic:nvPicPr>\
+            <pic:blipFill><a:blip r:embed="%5$s"/><a:stretch><a:fillRect/></a:stretch></pic:blipFill>\
+            <pic:spPr><a:xfrm><a:off x="0" y="0"/><a:ext cx="%1$d" cy="%2$d"/></a:xfrm>\
+            <a:prstGeom prst="rect"><a:avLst/></a:prstGeom></pic:spPr></pic:pic></a:graphicData></a:graphic>\
+            </wp:inline></w:drawing></w:r>""";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newFactory();
+
+    private final byte[] templateBytes;
+
+    /**
+     * Writes {@code word/document.xml}, or another part with placeholders, from the same part of the template.
+     */
+    @FunctionalInterface
+    private interface DocumentWriter {
+
+        void write(InputStream inputStream, OutputStream outputStream) throws IOException, XMLStreamException;
+
+    }
+
+    /**
+     * The events of {@code word/document.xml} split around the content of the body.
+     *
+     * @param head the events up to and including the start of the body
+     * @param content the content of the body, without its section properties
+     * @param sectPr the section properties of the body, or an empty list if the body has none
+     * @param tail the events from the end of the body
+     */
+    private record DocumentEvents(List<XMLEvent> head, List<XMLEvent> content, List<XMLEvent> sectPr,
+                                  List<XMLEvent> tail) {
+    }
+
+    /**
+     * Template parts replaced with prepared content, by part name.
+     */
+    private final Map<String, byte[]> replacedParts;
+
+    /**
+     * Parts added to the template, by part name.
+     */
+    private final Map<String, byte[]> addedParts;
+
+    /**
+     * The names of the headers, footers, footnotes and endnotes that may hold placeholders.
+     */
+    private final Set<String> textParts;
+
+    private StreamingDocxWriter(byte[] templateBytes, String logoPlaceholder, ImageAsset logo) {
+        this.templateBytes = templateBytes;
+        var replaced = new HashMap<String, byte[]>();
+        var added = new LinkedHashMap<String, byte[]>();
+
+        if (logoPlaceholder != null && logo != null) {
+            try {
+                prepareLogo(logoPlaceholder, logo, replaced, added);
+            } catch (IOException | XMLStreamException e) {
+                throw new RuntimeException("Error loading image data", e);
+            }
+        }
+
+        this.replacedParts = Map.copyOf(replaced);
+        this.addedParts = Collections.unmodifiableMap(added);
+        try {
+            this.textParts = findTextParts();
+        } catch (IOException | XMLStreamException e) {
+            throw new RuntimeException("Error loading DOCX data", e);
+        }
+    }
+
+    /**
+     * Creates a writer for the specified DOCX template without logo support.
+     *
+     * @param docxPath the path of the DOCX template
+     * @return the writer
+     */
+    public static StreamingDocxWriter of(String docxPath) {
+        return of(docxPath, null, null);
+    }
+
+    /**
+     * Creates a writer for the specified DOCX template. Header paragraphs containing the logo placeholder are replaced
+     * with the image in every written document.
+     *
+     * @param docxPath the path of the DOCX template
+     * @param logoPlaceholder the placeholder marking the logo in the headers, or {@code null} for no logo
+     * @param imageFilePath the path of the PNG logo, or {@code null} for no logo
+     * @return the writer
+     */
+    public static StreamingDocxWriter of(String docxPath, String logoPlaceholder, String imageFilePath) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(Path.of(docxPath));
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading DOCX data", e);
+        }
+
+        return of(bytes, logoPlaceholder, imageFilePath != null ? ImageCache.get(imageFilePath) : null);
+    }
+
+    /**
+     * Creates a writer for a DOCX template held in memory.
+     *
+     * @param docxBytes the DOCX template; must not be modified afterwards
+     * @param logoPlaceholder the placeholder marking the logo in the headers, or {@code null} for no logo
+     * @param logo the logo, or {@code null} for no logo
+     * @return the writer
+     */
+    public static StreamingDocxWriter of(byte[] docxBytes, String logoPlaceholder, ImageAsset logo) {
+        return new StreamingDocxWriter(docxBytes, logoPlaceholder, logo);
+    }
+
+    /**
+     * Renders the template for the specified XML data with the default placeholder resolvers and writes it to a file.
+     *
+     * @param xmlData the {@link Root} object representing the XML data
+     * @param output the path of the DOCX file to write
+     */
+    public void write(Root xmlData, Path output) {
+        try (var outputStream = Files.newOutputStream(output)) {
+            write(xmlData, PlaceholderRegistry.defaults(), outputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving DOCX data", e);
+        }
+    }
+
+    /**
+     * Renders the template for the specified XML data and writes it to a stream. The stream is not closed.
+     *
+     * @param xmlData the {@link Root} object representing the XML data
+     * @param registry the resolvers of the placeholder values
+     * @param outputStream the stream to write the DOCX data to
+     */
+    public void write(Root xmlData, PlaceholderRegistry registry, OutputStream outputStream) {
+        var values = values(xmlData, registry);
+        var rows = CompiledTemplate.rows(xmlData);
+        var matcher = matcher(registry);
+        DocumentWriter partWriter = (inputStream, partStream) ->
+                writeDocument(inputStream, partStream, values, rows, matcher);
+        writePackage(outputStream, partWriter, partWriter);
+    }
+
+    /**
+     * Renders the template for every record with the default placeholder resolvers and writes them to a single file,
+     * see {@link #writeMerged(Iterator, PlaceholderRegistry, OutputStream)}.
+     *
+     * @param records the records, read one at a time, e.g. from an {@link XmlRecordReader}
+     * @param output the path of the DOCX file to write
+     * @return the number of records written
+     */
+    public int writeMerged(Iterator<Root> records, Path output) {
+        try (var outputStream = Files.newOutputStream(output)) {
+            return writeMerged(records, PlaceholderRegistry.defaults(), outputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Error saving DOCX data", e);
+        }
+    }
+
+    /**
+     * Renders the template for every record and writes them to a stream as a single document. The stream is not
+     * closed.
+     * <p>
+     * Every record is a section of its own, starting on a new page and using the section properties, and so the
+     * headers and footers, of the template. A template without section properties gets a page break between the
+     * records instead. The records are read and written one at a time, so memory use does not grow with the number of
+     * records. Drawings in the body are renumbered, and the optional {@code w14:paraId} and {@code w14:textId} of the
+     * paragraphs and table rows are kept for the first record only, so the ids stay unique in the merged document.
+     *
+     * @param records the records, read one at a time, e.g. from an {@link XmlRecordReader}
+     * @param registry the resolvers of the placeholder values
+     * @param outputStream the stream to write the DOCX data to
+     * @return the number of records written
+     */
+    public int writeMerged(Iterator<Root> records, PlaceholderRegistry registry, OutputStream outputStream) {
+        var count = new int[1];
+        writePackage(outputStream, (inputStream, documentStream) ->
+                count[0] = writeMergedDocument(inputStream, documentStream, records, registry), null);
+        return count[0];
+    }
+
+    /**
+     * Writes the parts of the template to a stream, the document part with the specified writer.
+     *
+     * @param partWriter writes the other parts with placeholders, or {@code null} to copy them unchanged
+     */
+    private void writePackage(OutputStream outputStream, DocumentWriter documentWriter, DocumentWriter partWriter) {
+        var start = RenderMetrics.start();
+        try (var zipFile = openTemplate()) {
+            var zip = new ZipArchiveOutputStream(RenderMetrics.countBytes(outputStream));
+
+            for (var entries = zipFile.getEntries(); entries.hasMoreElements(); ) {
+                var entry = entries.nextElement();
+                var replaced = replacedParts.get(entry.getName());
+
+                if (DOCUMENT_PART.equals(entry.getName())) {
+                    zip.putArchiveEntry(new ZipArchiveEntry(DOCUMENT_PART));
+                    try (var inputStream = zipFile.getInputStream(entry)) {
+                        documentWriter.write(inputStream, zip);
+                    }
+                    zip.closeArchiveEntry();
+                } else if (partWriter != null && textParts.contains(entry.getName())) {
+                    zip.putArchiveEntry(new ZipArchiveEntry(entry.getName()));
+                    try (var inputStream = replaced != null
+                            ? new ByteArrayInputStream(replaced)
+                            : zipFile.getInputStream(entry)) {
+                        partWriter.write(inputStream, zip);
+                    }
+                    zip.closeArchiveEntry();
+                } else if (replaced != null) {
+                    writePart(zip, entry.getName(), replaced);
+                } else {
+                    zip.addRawArchiveEntry(entry, zipFile.getRawInputStream(entry));
+                }
+            }
+
+            for (var part : addedParts.entrySet()) {
+                writePart(zip, part.getKey(), part.getValue());
+            }
+            zip.finish();
+        } catch (IOException | XMLStreamException e) {
+            throw new RuntimeException("Error saving DOCX data", e);
+        } finally {
+            RenderMetrics.record(RenderMetrics.Stage.STREAM_DOCX, start);
+        }
+    }
+
+    private static void writeDocument(InputStream inputStream, OutputStream outputStream,
+                                      Function<String, String> values, RowTable rows, PlaceholderMatcher matcher)
+            throws IOException, XMLStreamException {
+        var reader = INPUT_FACTORY.createXMLEventReader(inputStream);
+        var blockWriter = new BlockWriter(outputStream);
+        var writer = OUTPUT_FACTORY.createXMLEventWriter(blockWriter);
+        new BodyTransformer(writer, values, rows, matcher).transform(reader);
+        writer.close();
+        reader.close();
+        blockWriter.flush();
+    }
+
+    private int writeMergedDocument(InputStream inputStream, OutputStream outputStream, Iterator<Root> records,
+                                    PlaceholderRegistry registry) throws IOException, XMLStreamException {
+        // The template body is held as events, it is written once per record
+        var document = readDocument(inputStream);
+        var blockWriter = new BlockWriter(outputStream);
+        var writer = OUTPUT_FACTORY.createXMLEventWriter(blockWriter);
+        for (var event : document.head()) {
+            writer.add(event);
+        }
+
+        var matcher = matcher(registry);
+        var count = 0;
+        var drawingId = FIRST_MERGED_DRAWING_ID;
+        while (records.hasNext()) {
+            var xmlData = records.next();
+            if (count > 0) {
+                writeBreak(writer, document.sectPr());
+            }
+
+            var transformer = new BodyTransformer(writer, values(xmlData, registry),
+                    CompiledTemplate.rows(xmlData), matcher);
+            for (var event : document.content()) {
+                if (event.isStartElement() && isDrawingProperties(event.asStartElement())) {
+                    event = withId(event.asStartElement(), drawingId++);
+                } else if (event.isStartElement() && count > 0) {
+                    event = withoutParagraphIds(event.asStartElement());
+                }
+                transformer.add(event);
+            }
+            count++;
+        }
+
+        for (var event : document.sectPr()) {
+            writer.add(event);
+        }
+        for (var event : document.tail()) {
+            writer.add(event);
+        }
+        writer.close();
+        blockWriter.flush();
+        return count;
+    }
+
+    private static PlaceholderMatcher matcher(PlaceholderRegistry registry) {
+        return registry == PlaceholderRegistry.defaults() ? DEFAULT_MATCHER : PlaceholderMatcher.forRegistry(registry);
+    }
+
+    private static Function<String, String> values(Root xmlData, PlaceholderRegistry registry) {
+        var cache = new HashMap<String, String>();
+        return name -> cache.computeIfAbsent(name, key -> registry.resolve(key, xmlData));
+    }
+
+    /**
+     * Reads {@code word/document.xml} and splits it around the content of the body.
+     */
+    private static DocumentEvents readDocument(InputStream inputStream) throws XMLStreamException {
+        var head = new ArrayList<XMLEvent>();
+        var content = new ArrayList<XMLEvent>();
+        var sectPr = new ArrayList<XMLEvent>();
+        var tail = new ArrayList<XMLEvent>();
+
+        var reader = INPUT_FACTORY.createXMLEventReader(inputStream);
+        var part = head;
+        var depth = 0;
+        while (reader.hasNext()) {
+            var event = reader.nextEvent();
+            if (part == head) {
+                head.add(event);
+                if (event.isStartElement() && isWordElement(event.asStartElement(), "body")) {
+                    part = content;
+                }
+                continue;
+            }
+            if (part == tail) {
+                tail.add(event);
+                continue;
+            }
+
+            if (event.isStartElement()) {
+                // The section properties of the body are its last child
+                if (depth++ == 0 && isWordElement(event.asStartElement(), "sectPr")) {
+                    part = sectPr;
+                }
+            } else if (event.isEndElement() && depth-- == 0) {
+                // The end of the body
+                tail.add(event);
+                part = tail;
+                continue;
+            }
+            part.add(event);
+            if (part == sectPr && depth == 0) {
+                part = content;
+            }
+        }
+        reader.close();
+        return new DocumentEvents(head, content, sectPr, tail);
+    }
+
+    /**
+     * Writes the end of a record: a paragraph holding the section properties of the template, or a page break if the
+     * template has none.
+     */
+    private static void writeBreak(XMLEventWriter writer, List<XMLEvent> sectPr) throws XMLStreamException {
+        writer.add(EVENT_FACTORY.createStartElement("w", W_NS, "p"));
+        if (sectPr.isEmpty()) {
+            writer.add(EVENT_FACTORY.createStartElement("w", W_NS, "r"));
+            writer.add(EVENT_FACTORY.createStartElement("w", W_NS, "br"));
+            writer.add(EVENT_FACTORY.createAttribute("w", W_NS, "type", "page"));
+            writer.add(EVENT_FACTORY.createEndElement("w", W_NS, "br"));
+            writer.add(EVENT_FACTORY.createEndElement("w", W_NS, "r"));
+        } else {
+            writer.add(EVENT_FACTORY.createStartElement("w", W_NS, "pPr"));
+            for (var event : sectPr) {
+                writer.add(event);
+            }
+            writer.add(EVENT_FACTORY.createEndElement("w", W_NS, "pPr"));
+        }
+        writer.add(EVENT_FACTORY.createEndElement("w", W_NS, "p"));
+    }
+
+    private static boolean isDrawingProperties(StartElement element) {
+        var name = element.getName();
+        return "docPr".equals(name.getLocalPart()) && WP_NS.equals(name.getNamespaceURI());
+    }
+
+    private static StartElement withId(StartElement element, int id) {
+        var attributes = new ArrayList<Attribute>();
+        element.getAttributes().forEachRemaining(attribute -> {
+            var name = attribute.getName();
+            attributes.add("id".equals(name.getLocalPart()) && name.getNamespaceURI().isEmpty()
+                    ? EVENT_FACTORY.createAttribute(name, Integer.toString(id))
+                    : attribute);
+        });
+        return withAttributes(element, attributes);
+    }
+
+    private static StartElement withoutParagraphIds(StartElement element) {
+        if (PARAGRAPH_IDS.stream().allMatch(name -> element.getAttributeByName(name) == null)) {
+            return element;
+        }
+        var attributes = new ArrayList<Attribute>();
+        element.getAttributes().forEachRemaining(attribute -> {
+            if (!PARAGRAPH_IDS.contains(attribute.getName())) {
+                attributes.add(attribute);
+            }
+        });
+        return withAttributes(element, attributes);
+    }
+
+    private static StartElement withAttributes(StartElement element, List<Attribute> attributes) {
+        var name = element.getName();
+        return EVENT_FACTORY.createStartElement(name.getPrefix(), name.getNamespaceURI(), name.getLocalPart(),
+                attributes.iterator(), element.getNamespaces(), element.getNamespaceContext());
+    }
+
+    private static void writePart(ZipArchiveOutputStream zip, String name, byte[] content) throws IOException {
+        zip.putArchiveEntry(new ZipArchiveEntry(name));
+        zip.write(content);
+        zip.closeArchiveEntry();
+    }
+
+    /**
+     * Returns the headers, footers, footnotes and endnotes of the template holding a {@code <...>} token. The other
+     * parts are copied without being parsed on every write.
+     */
+    private Set<String> findTextParts() throws IOException, XMLStreamException {
+        var parts = new HashSet<String>();
+        try (var zipFile = openTemplate()) {
+            for (var entries = zipFile.getEntries(); entries.hasMoreElements(); ) {
+                var entry = entries.nextElement();
+                if (!TEXT_PART.matcher(entry.getName()).matches()) {
+                    continue;
+                }
+
+                // All text of the part as one sequence; a token spanning two paragraphs only costs a needless parse
+                var texts = new ArrayList<String>();
+                try (var inputStream = zipFile.getInputStream(entry)) {
+                    var reader = INPUT_FACTORY.createXMLEventReader(inputStream);
+                    var inText = false;
+                    while (reader.hasNext()) {
+                        var event = reader.nextEvent();
+                        if (event.isStartElement()) {
+                            inText = isWordElement(event.asStartElement(), "t");
+                        } else if (event.isEndElement()) {
+                            inText = false;
+                        } else if (inText && event.isCharacters()) {
+                            texts.add(event.asCharacters().getData());
+                        }
+                    }
+                    reader.close();
+                }
+                if (!PlaceholderScanner.scan(texts).isEmpty()) {
+                    parts.add(entry.getName());
+                }
+            }
+        }
+        return Set.copyOf(parts);
+    }
+
+    private ZipFile openTemplate() throws IOException {
+        return new ZipFile(new SeekableInMemoryByteChannel(templateBytes));
+    }
+
+    /**
+     * Prepares the parts showing the logo: the headers with the logo placeholder replaced by a drawing, the picture,
+     * the relationships of the headers to the picture and the PNG content type.
+     */
+    private void prepareLogo(String logoPlaceholder, ImageAsset logo,
+                             Map<String, byte[]> replaced, Map<String, byte[]> added)
+            throws IOException, XMLStreamException {
+        try (var zipFile = openTemplate()) {
+            var mediaName = "word/media/logo.png";
+            for (var i = 1; zipFile.getEntry(mediaName) != null; i++) {
+                mediaName = "word/media/logo" + i + ".png";
+            }
+
+            var headers = new ArrayList<String>();
+            for (var entries = zipFile.getEntries(); entries.hasMoreElements(); ) {
+                var entry = entries.nextElement();
+                var matcher = HEADER_PART.matcher(entry.getName());
+                if (!matcher.matches()) {
+                    continue;
+                }
+
+                var drawing = parseFragment(LOGO_DRAWING.formatted(logo.widthEmu(), logo.heightEmu(),
+                        1024 + headers.size(), logo.fileName(),
+                        LOGO_RELATIONSHIP_ID));
+                var output = new ByteArrayOutputStream();
+                var writer = OUTPUT_FACTORY.createXMLEventWriter(output, "UTF-8");
+                var transformer = new LogoTransformer(writer, logoPlaceholder, drawing);
+                try (var inputStream = zipFile.getInputStream(entry)) {
+                    var reader = INPUT_FACTORY.createXMLEventReader(inputStream);
+                    transformer.transform(reader);
+                    reader.close();
+                }
+                writer.close();
+
+                if (transformer.replaced) {
+                    replaced.put(entry.getName(), output.toByteArray());
+                    headers.add(matcher.group(1));
+                }
+            }
+
+            if (headers.isEmpty()) {
+                return;
+            }
+
+            added.put(mediaName, logo.bytes());
+
+            var relationship = "<Relationship Id=\"" + LOGO_RELATIONSHIP_ID + "\" Type=\"" + IMAGE_RELATIONSHIP
+                    + "\" Target=\"" + mediaName.substring("word/".length()) + "\"/>";
+            for (var header : headers) {
+                var relsName = "word/_rels/" + header + ".rels";
+                var relsEntry = zipFile.getEntry(relsName);
+                var rels = relsEntry != null ? readPart(zipFile, relsEntry) : EMPTY_RELATIONSHIPS;
+                var content = insertBefore(rels, "</Relationships>", relationship);
+                (relsEntry != null ? replaced : added).put(relsName, content);
+            }
+
+            var contentTypes = readPart(zipFile, zipFile.getEntry(CONTENT_TYPES_PART));
+            if (!contentTypes.toLowerCase().contains("extension=\"png\"")) {
+                replaced.put(CONTENT_TYPES_PART, insertBefore(contentTypes, "</Types>",
+                        "<Default Extension=\"png\" ContentType=\"image/png\"/>"));
+            }
+        }
+    }
+
+    private static String readPart(ZipFile zipFile, ZipArchiveEntry entry) throws IOException {
+        try (var inputStream = zipFile.getInputStream(entry)) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] insertBefore(String xml, String end, String content) {
+        var index = xml.lastIndexOf(end);
+        if (index < 0) {
+            throw new IllegalStateException("Missing " + end + " in DOCX part");
+        }
+        return (xml.substring(0, index) + content + xml.substring(index)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<XMLEvent> parseFragment(String xml) throws XMLStreamException {
+        var events = new ArrayList<XMLEvent>();
+        var reader = INPUT_FACTORY.createXMLEventReader(new StringReader(xml));
+        while (reader.hasNext()) {
+            var event = reader.nextEvent();
+            if (!event.isStartDocument() && !event.isEndDocument()) {
+                events.add(event);
+            }
+        }
+        reader.close();
+        return events;
+    }
+
+    private static boolean isWordElement(StartElement element, String localName) {
+        var name = element.getName();
+        return localName.equals(name.getLocalPart()) && W_NS.equals(name.getNamespaceURI());
+    }
+
+    /**
+     * Copies the events of a part to a writer, handing every paragraph or row to {@link #element(List)} as a whole.
+     */
+    private abstract static class PartTransformer {
+
+        final XMLEventWriter writer;
+
+        /**
+         * The events of the element being buffered, or {@code null} outside of a buffered element.
+         */
+        private List<XMLEvent> buffer;
+
+        private int depth;
+
+        PartTransformer(XMLEventWriter writer) {
+            this.writer = writer;
+        }
+
+        /**
+         * Returns whether the element starting with the specified event is buffered and handed to
+         * {@link #element(List)}.
+         */
+        abstract boolean buffers(StartElement element);
+
+        /**
+         * Writes a buffered element.
+         *
+         * @param events the events of the element, from its start to its end
+         */
+        abstract void element(List<XMLEvent> events) throws XMLStreamException;
+
+        /**
+         * Writes an event outside of a buffered element.
+         */
+        void event(XMLEvent event) throws XMLStreamException {
+            writer.add(event);
+        }
+
+        void transform(XMLEventReader reader) throws XMLStreamException {
+            while (reader.hasNext()) {
+                add(reader.nextEvent());
+            }
+        }
+
+        /**
+         * Transforms the next event of the part.
+         */
+        void add(XMLEvent event) throws XMLStreamException {
+            if (buffer == null) {
+                if (event.isStartElement() && buffers(event.asStartElement())) {
+                    buffer = new ArrayList<>();
+                    buffer.add(event);
+                    depth = 1;
+                } else {
+                    event(event);
+                }
+                return;
+            }
+
+            buffer.add(event);
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement() && --depth == 0) {
+                var element = buffer;
+                buffer = null;
+                element(element);
+            }
+        }
+
+        /**
+         * Returns the indexes of the text events inside {@code <w:t>} elements.
+         */
+        static List<Integer> textEvents(List<XMLEvent> events) {
+            var indexes = new ArrayList<Integer>();
+            var inText = false;
+            for (var i = 0; i < events.size(); i++) {
+                var event = events.get(i);
+                if (event.isStartElement()) {
+                    inText = isWordElement(event.asStartElement(), "t");
+                } else if (event.isEndElement()) {
+                    inText = false;
+                } else if (inText && event.isCharacters()) {
+                    indexes.add(i);
+                }
+            }
+            return indexes;
+        }
+
+        static List<String> texts(List<XMLEvent> events, List<Integer> textEvents) {
+            var texts = new ArrayList<String>(textEvents.size());
+            for (var index : textEvents) {
+                texts.add(events.get(index).asCharacters().getData());
+            }
+            return texts;
+        }
+
+        /**
+         * Writes the events of an element with the text of its {@code <w:t>} elements replaced. Text elements whose
+         * text changed keep their spaces.
+         */
+        void write(List<XMLEvent> events, List<Integer> textEvents, List<String> texts) throws XMLStreamException {
+            var s = 0;
+            for (var i = 0; i < events.size(); i++) {
+                var event = events.get(i);
+                if (s < textEvents.size() && textEvents.get(s) == i) {
+                    var text = texts.get(s++);
+                    writer.add(text.equals(event.asCharacters().getData())
+                            ? event
+                            : EVENT_FACTORY.createCharacters(text));
+                } else if (s < textEvents.size() && textEvents.get(s) == i + 1 && event.isStartElement()
+                        && !texts.get(s).equals(events.get(i + 1).asCharacters().getData())) {
+                    writer.add(preserveSpace(event.asStartElement()));
+                } else {
+                    writer.add(event);
+                }
+            }
+        }
+
+        private static StartElement preserveSpace(StartElement element) {
+            var space = new QName(XMLConstants.XML_NS_URI, "space", XMLConstants.XML_NS_PREFIX);
+            if (element.getAttributeByName(space) != null) {
+                return element;
+            }
+
+            var attributes = new ArrayList<Attribute>();
+            element.getAttributes().forEachRemaining(attributes::add);
+            attributes.add(EVENT_FACTORY.createAttribute(space, "preserve"));
+            var name = element.getName();
+            return EVENT_FACTORY.createStartElement(name.getPrefix(), name.getNamespaceURI(), name.getLocalPart(),
+                    attributes.iterator(), element.getNamespaces(), element.getNamespaceContext());
+        }
+
+    }
+
+    /**
+     * Substitutes the placeholders of {@code word/document.xml}, or of a header, footer, footnote or endnote part, and
+     * expands the template rows of its tables.
+     */
+    private static final class BodyTransformer extends PartTransformer {
+
+        /**
+         * The row expansion state of a table.
+         */
+        private static final class TableState {
+
+            boolean expanded;
+
+            boolean inTemplateRows;
+
+        }
+
+        private final Function<String, String> values;
+
+        private final RowTable rows;
+
+        private final PlaceholderMatcher matcher;
+
+        private final Deque<TableState> tables = new ArrayDeque<>();
+
+        BodyTransformer(XMLEventWriter writer, Function<String, String> values, RowTable rows,
+                        PlaceholderMatcher matcher) {
+            super(writer);
+            this.values = values;
+            this.rows = rows != null ? rows : RowTable.EMPTY;
+            this.matcher = matcher;
+        }
+
+        @Override
+        boolean buffers(StartElement element) {
+            return isWordElement(element, "p") || isWordElement(element, "tr");
+        }
+
+        @Override
+        void event(XMLEvent event) throws XMLStreamException {
+            if (event.isStartElement() && isWordElement(event.asStartElement(), "tbl")) {
+                tables.push(new TableState());
+            } else if (event.isEndElement() && "tbl".equals(event.asEndElement().getName().getLocalPart())
+                    && W_NS.equals(event.asEndElement().getName().getNamespaceURI())) {
+                tables.pop();
+            }
+            writer.add(event);
+        }
+
+        @Override
+        void element(List<XMLEvent> events) throws XMLStreamException {
+            var textEvents = textEvents(events);
+            var texts = texts(events, textEvents);
+            var matches = matcher.scan(texts);
+            var table = tables.peek();
+
+            if (table != null && isWordElement(events.get(0).asStartElement(), "tr")) {
+                var hasRowValue = matches.stream()
+                        .anyMatch(match -> TableRowExpander.rowValueColumn(match.name()) >= 0);
+                if (hasRowValue && !table.expanded) {
+                    RenderMetrics.placeholdersFound(matches.size() * rows.size());
+                    table.expanded = true;
+                    table.inTemplateRows = true;
+                    // Only the first generated row keeps the paragraph ids of the template row
+                    var copyEvents = new ArrayList<XMLEvent>(events.size());
+                    for (var event : events) {
+                        copyEvents.add(event.isStartElement() ? withoutParagraphIds(event.asStartElement()) : event);
+                    }
+                    for (var cursor = rows.cursor(); cursor.next(); ) {
+                        var rowTexts = new ArrayList<>(texts);
+                        replace(rowTexts, matches, cursor);
+                        write(cursor.row() == 0 ? events : copyEvents, textEvents, rowTexts);
+                    }
+                    return;
+                }
+                if (hasRowValue && table.inTemplateRows) {
+                    // Pre-expanded copy of the template row
+                    return;
+                }
+                table.inTemplateRows = false;
+            }
+
+            if (matches.isEmpty()) {
+                for (var event : events) {
+                    writer.add(event);
+                }
+                return;
+            }
+            RenderMetrics.placeholdersFound(matches.size());
+            replace(texts, matches, null);
+            write(events, textEvents, texts);
+        }
+
+        private void replace(List<String> texts, List<PlaceholderScanner.SegmentMatch> matches,
+                             RowTable.Cursor row) {
+            // Replace in reverse order, so the offsets of earlier matches in the same text stay valid
+            for (var i = matches.size() - 1; i >= 0; i--) {
+                var match = matches.get(i);
+                var column = row != null ? TableRowExpander.rowValueColumn(match.name()) : -1;
+                var value = column >= 0 ? row.get(column) : values.apply(match.name());
+                PlaceholderScanner.replace(texts, match, value);
+            }
+            RenderMetrics.placeholdersReplaced(matches.size());
+        }
+
+    }
+
+    /**
+     * Replaces header paragraphs containing the logo placeholder with a paragraph holding the logo drawing.
+     */
+    private static final class LogoTransformer extends PartTransformer {
+
+        private final String logoPlaceholder;
+
+        private final List<XMLEvent> drawing;
+
+        boolean replaced;
+
+        LogoTransformer(XMLEventWriter writer, String logoPlaceholder, List<XMLEvent> drawing) {
+            super(writer);
+            this.logoPlaceholder = logoPlaceholder;
+            this.drawing = drawing;
+        }
+
+        @Override
+        boolean buffers(StartElement element) {
+            return isWordElement(element, "p");
+        }
+
+        @Override
+        void element(List<XMLEvent> events) throws XMLStreamException {
+            var text = String.join("", texts(events, textEvents(events)));
+            if (!text.contains(logoPlaceholder)) {
+                for (var event : events) {
+                    writer.add(event);
+                }
+                return;
+            }
+
+            replaced = true;
+            writer.add(events.get(0));
+
+            // Keep the paragraph properties, they are the first child of the paragraph
+            var i = 1;
+            while (i < events.size() - 1 && !events.get(i).isStartElement()) {
+                i++;
+            }
+            if (i < events.size() - 1 && isWordElement(events.get(i).asStartElement(), "pPr")) {
+                var depth = 0;
+                do {
+                    var event = events.get(i++);
+                    depth += event.isStartElement() ? 1 : event.isEndElement() ? -1 : 0;
+                    writer.add(event);
+                } while (depth > 0);
+            }
+
+            for (var event : drawing) {
+                writer.add(event);
+            }
+            writer.add(events.get(events.size() - 1));
+        }
+
+    }
+
+    /**
+     * An unsynchronized writer encoding its characters to a stream in large blocks. The XML writer writes many short
+     * strings, and the writers of {@code java.io} take a lock for every one of them. Closing the writer does not close
+     * the stream.
+     */
+    private static final class BlockWriter extends Writer {
+
+        private final OutputStream outputStream;
+
+        private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+
+        BlockWriter(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            buffer.append((char) c);
+            drainIfFull();
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            buffer.append(chars, offset, length);
+            drainIfFull();
+        }
+
+        @Override
+        public void write(String string, int offset, int length) throws IOException {
+            buffer.append(string, offset, offset + length);
+            drainIfFull();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            drain();
+        }
+
+        private void drainIfFull() throws IOException {
+            // Never split a surrogate pair between two blocks
+            if (buffer.length() >= BUFFER_SIZE && !Character.isHighSurrogate(buffer.charAt(buffer.length() - 1))) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            if (!buffer.isEmpty()) {
+                outputStream.write(buffer.toString().getBytes(StandardCharsets.UTF_8));
+                buffer.setLength(0);
+            }
+        }
+
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        var factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+}
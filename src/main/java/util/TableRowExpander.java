@@ -0,0 +1,306 @@
+package util;
+
+import data.RowTable;
+import org.apache.poi.Version;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTRow;
+
+import javax.xml.namespace.QName;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The {@code TableRowExpander} class generates one table row per row of a {@link RowTable} from a template row.
+ * <p>
+ * The template row is the first row containing a {@code <valueN>} placeholder; {@code <value1>} maps to the first
+ * value of a row, {@code <value2>} to the second and so on, regardless of the column the placeholder is in. Rows
+ * directly following the template row that contain {@code <valueN>} placeholders as well are treated as pre-expanded
+ * copies of it and are replaced too. Rows before and after the template rows are kept.
+ * <p>
+ * The template row is scanned once; every generated row is a copy of it whose placeholders are replaced at the
+ * recorded locations, so the cost grows linearly with the number of rows. The row data is read with a
+ * {@link RowTable.Cursor}, so no object is created per row of data.
+ */
+public class TableRowExpander {
+
+    private static final String ROW_VALUE_PREFIX = "value";
+
+    private static final String W14_NS = "http://schemas.microsoft.com/office/word/2010/wordml";
+
+    /**
+     * The ids of paragraphs and table rows, which have to be unique within a document.
+     */
+    private static final Set<QName> PARAGRAPH_IDS = Set.of(new QName(W14_NS, "paraId"), new QName(W14_NS, "textId"));
+
+    /**
+     * The highest {@code N} of a {@code <valueN>} placeholder, since a Word table has at most 63 columns.
+     */
+    static final int MAX_ROW_VALUES = 63;
+
+    /**
+     * The POI major version whose {@link XWPFTable} row list has been verified to be safe to append to directly.
+     */
+    private static final String VERIFIED_POI_VERSION = "5.";
+
+    private static final Field TABLE_ROWS = findTableRowsField(Version.getVersion());
+
+    /**
+     * A placeholder location in the template row.
+     *
+     * @param cell the index of the cell in the row
+     * @param paragraph the index of the paragraph in the cell
+     * @param column the zero-based index of the row value for {@code <valueN>} placeholders, or -1 otherwise
+     * @param match the location of the placeholder in the paragraph
+     */
+    record Site(int cell, int paragraph, int column, PlaceholderScanner.Match match) {
+    }
+
+    /**
+     * The template rows of a table. A row template only holds indexes, so it can be reused for every copy of the
+     * table it was found in.
+     *
+     * @param row the index of the template row
+     * @param count the number of template rows, including pre-expanded copies
+     * @param sites the placeholders of the template row, in document order
+     */
+    public record RowTemplate(int row, int count, List<Site> sites) {
+    }
+
+    /**
+     * Finds the template rows of the specified table.
+     *
+     * @param table the table to scan
+     * @param accept decides whether a {@code <...>} token with the given name is a placeholder
+     * @return the template rows, or {@code null} if the table has no row containing a {@code <valueN>} placeholder
+     */
+    public static RowTemplate find(XWPFTable table, Predicate<String> accept) {
+        return findRows(table, paragraph -> {
+            var matches = PlaceholderScanner.scan(paragraph);
+            return matches.isEmpty() ? matches : matches.stream().filter(match -> accept.test(match.name())).toList();
+        });
+    }
+
+    /**
+     * Finds the template rows of the specified table, locating the placeholders with a {@link PlaceholderMatcher}.
+     *
+     * @param table the table to scan
+     * @param matcher the matcher of the placeholders
+     * @param unknownTags receives the names of the unknown tags in the table, or {@code null} to ignore them
+     * @return the template rows, or {@code null} if the table has no row containing a {@code <valueN>} placeholder
+     */
+    public static RowTemplate find(XWPFTable table, PlaceholderMatcher matcher, Consumer<String> unknownTags) {
+        return findRows(table, paragraph -> matcher.scan(paragraph, unknownTags));
+    }
+
+    private static RowTemplate findRows(XWPFTable table,
+                                        Function<XWPFParagraph, List<PlaceholderScanner.Match>> scanner) {
+        var rows = table.getRows();
+        List<Site> templateSites = null;
+        var first = -1;
+        var count = 0;
+
+        for (var r = 0; r < rows.size(); r++) {
+            var sites = scanRow(rows.get(r), scanner);
+            var hasRowValue = sites.stream().anyMatch(site -> site.column() >= 0);
+
+            if (hasRowValue && first < 0) {
+                first = r;
+                count = 1;
+                templateSites = sites;
+            } else if (hasRowValue && r == first + count) {
+                count++;
+            }
+        }
+
+        return first < 0 ? null : new RowTemplate(first, count, List.copyOf(templateSites));
+    }
+
+    /**
+     * Replaces the template rows of the table with one row per row of the row data.
+     *
+     * @param table the table to expand
+     * @param template the template rows of the table
+     * @param rows the row data, one row per generated row, or {@code null} for none
+     * @param values resolves the placeholders of the template row that are not row values
+     */
+    public static void expand(XWPFTable table, RowTemplate template, RowTable rows,
+                              Function<String, String> values) {
+        var tableRows = table.getRows();
+        var templateRow = (CTRow) tableRows.get(template.row()).getCtRow().copy();
+        // Only the first generated row keeps the paragraph ids of the template row
+        var copyRow = withoutParagraphIds((CTRow) templateRow.copy());
+
+        // Detach the rows following the template rows, they are appended again after the generated rows
+        var end = template.row() + template.count();
+        var trailingRows = new ArrayList<CTRow>();
+        for (var r = tableRows.size() - 1; r >= end; r--) {
+            trailingRows.add((CTRow) tableRows.get(r).getCtRow().copy());
+            table.removeRow(r);
+        }
+        Collections.reverse(trailingRows);
+        for (var r = end - 1; r >= template.row(); r--) {
+            table.removeRow(r);
+        }
+
+        // Values of other placeholders are the same in every row
+        var rowValues = new String[template.sites().size()];
+        for (var i = 0; i < rowValues.length; i++) {
+            var site = template.sites().get(i);
+            if (site.column() < 0) {
+                rowValues[i] = values.apply(site.match().name());
+            }
+        }
+
+        var allRows = rows != null ? rows : RowTable.EMPTY;
+        RenderMetrics.placeholdersFound(template.sites().size() * allRows.size());
+        RenderMetrics.placeholdersReplaced(template.sites().size() * allRows.size());
+        for (var cursor = allRows.cursor(); cursor.next(); ) {
+            var row = appendRow(table, cursor.row() == 0 ? templateRow : copyRow);
+            var sites = template.sites();
+
+            // Replace in reverse order, so the offsets of earlier sites in the same paragraph stay valid
+            for (var i = sites.size() - 1; i >= 0; i--) {
+                var site = sites.get(i);
+                var paragraph = row.getTableCells().get(site.cell()).getParagraphs().get(site.paragraph());
+                var value = site.column() >= 0 ? cursor.get(site.column()) : rowValues[i];
+                PlaceholderScanner.replace(paragraph, site.match(), value);
+            }
+        }
+
+        for (var trailingRow : trailingRows) {
+            appendRow(table, trailingRow);
+        }
+    }
+
+    private static CTRow withoutParagraphIds(CTRow row) {
+        try (var cursor = row.newCursor()) {
+            while (cursor.hasNextToken()) {
+                if (cursor.toNextToken().isAttr() && PARAGRAPH_IDS.contains(cursor.getName())) {
+                    // Removing moves the cursor to the next token, step back so it is not skipped
+                    cursor.removeXml();
+                    cursor.toPrevToken();
+                }
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Appends a copy of the specified row to the end of the table.
+     *
+     * @param table the table to append to
+     * @param content the content of the new row
+     * @return the appended row
+     */
+    private static XWPFTableRow appendRow(XWPFTable table, CTRow content) {
+        return appendRow(table, content, TABLE_ROWS);
+    }
+
+    /**
+     * Appends a copy of the specified row to the end of the table.
+     *
+     * @param table the table to append to
+     * @param content the content of the new row
+     * @param tableRows the row list of {@link XWPFTable}, or {@code null} to append through the public methods
+     * @return the appended row
+     */
+    @SuppressWarnings("unchecked")
+    static XWPFTableRow appendRow(XWPFTable table, CTRow content, Field tableRows) {
+        var ctTbl = table.getCTTbl();
+        var position = table.getRows().size();
+        var ctRow = ctTbl.addNewTr();
+        ctRow.set(content);
+        var row = new XWPFTableRow(ctRow, table);
+
+        if (tableRows != null) {
+            try {
+                ((List<XWPFTableRow>) tableRows.get(table)).add(row);
+                return row;
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Error registering table row", e);
+            }
+        }
+
+        // XWPFTable only registers rows it inserts a copy of. Let it insert the copy in front of the new row and
+        // remove the copy again, so the registered row is backed by the XML that is actually in the table.
+        table.addRow(row, position);
+        ctTbl.removeTr(position);
+        return row;
+    }
+
+    /**
+     * Returns the protected row list of {@link XWPFTable}, or {@code null} to append rows through the public methods.
+     * <p>
+     * The public methods adding rows to an {@link XWPFTable} address the rows by index, which XmlBeans resolves by
+     * walking the rows of the table, so appending n rows through them costs O(n&sup2;): 10,000 rows take about four
+     * times as long as through the row list, 100,000 rows several minutes. The row list is only used with the POI
+     * major version it has been verified against, so an upgrade falls back to the public methods until it is checked.
+     *
+     * @param poiVersion the version of POI, see {@link Version#getVersion()}
+     * @return the row list field, or {@code null}
+     */
+    static Field findTableRowsField(String poiVersion) {
+        if (poiVersion == null || !poiVersion.startsWith(VERIFIED_POI_VERSION)) {
+            return null;
+        }
+        try {
+            var field = XWPFTable.class.getDeclaredField("tableRows");
+            if (!List.class.isAssignableFrom(field.getType())) {
+                return null;
+            }
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static List<Site> scanRow(XWPFTableRow row,
+                                      Function<XWPFParagraph, List<PlaceholderScanner.Match>> scanner) {
+        var sites = new ArrayList<Site>();
+        var cells = row.getTableCells();
+        for (var c = 0; c < cells.size(); c++) {
+            var paragraphs = cells.get(c).getParagraphs();
+            for (var p = 0; p < paragraphs.size(); p++) {
+                for (var match : scanner.apply(paragraphs.get(p))) {
+                    sites.add(new Site(c, p, rowValueColumn(match.name()), match));
+                }
+            }
+        }
+        return sites;
+    }
+
+    /**
+     * Returns the zero-based row value index of a {@code valueN} placeholder.
+     *
+     * @param name the placeholder name
+     * @return the index of the row value, or -1 if the name is not a row value
+     */
+    static int rowValueColumn(String name) {
+        var start = ROW_VALUE_PREFIX.length();
+        if (!name.startsWith(ROW_VALUE_PREFIX) || name.length() == start || name.charAt(start) == '0') {
+            return -1;
+        }
+        var value = 0;
+        for (var i = start; i < name.length(); i++) {
+            var c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+            if (value > MAX_ROW_VALUES) {
+                return -1;
+            }
+        }
+        return value - 1;
+    }
+
+}
@@ -0,0 +1,96 @@
+package util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@code TemplateCache} class keeps the most recently used {@link CompiledTemplate}s.
+ * <p>
+ * Templates are keyed by path and modification time, so a template file that is replaced on disk is compiled again on
+ * its next use, and the stale entry is dropped. When the cache is full, the least recently used template is evicted.
+ * The cache is thread-safe.
+ */
+public class TemplateCache {
+
+    private record Key(Path path, FileTime modified) {
+    }
+
+    private final int maxSize;
+
+    private final String logoPlaceholder;
+
+    private final String imageFilePath;
+
+    private final Map<Key, CompiledTemplate> templates;
+
+    /**
+     * Creates a template cache.
+     *
+     * @param maxSize the maximum number of cached templates
+     * @param logoPlaceholder the placeholder marking the logo in the headers, or {@code null} for no logo
+     * @param imageFilePath the path of the PNG logo, or {@code null} for no logo
+     */
+    public TemplateCache(int maxSize, String logoPlaceholder, String imageFilePath) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.logoPlaceholder = logoPlaceholder;
+        this.imageFilePath = imageFilePath;
+        this.templates = new LinkedHashMap<>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompiledTemplate> eldest) {
+                return size() > TemplateCache.this.maxSize;
+            }
+
+        };
+    }
+
+    /**
+     * Returns the compiled template of the specified file, compiling it if it is not cached or has changed.
+     *
+     * @param docxPath the path of the DOCX template
+     * @return the compiled template
+     */
+    public CompiledTemplate get(Path docxPath) {
+        var path = docxPath.toAbsolutePath().normalize();
+        Key key;
+        try {
+            key = new Key(path, Files.getLastModifiedTime(path));
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading DOCX data", e);
+        }
+
+        synchronized (templates) {
+            var template = templates.get(key);
+            if (template != null) {
+                return template;
+            }
+        }
+
+        // Compile outside of the lock, so renders of other templates are not blocked meanwhile
+        var template = CompiledTemplate.compile(path.toString(), logoPlaceholder, imageFilePath);
+        synchronized (templates) {
+            templates.keySet().removeIf(cached -> cached.path().equals(path));
+            templates.put(key, template);
+        }
+        return template;
+    }
+
+    /**
+     * Returns the number of cached templates.
+     *
+     * @return the number of cached templates
+     */
+    public int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+
+}
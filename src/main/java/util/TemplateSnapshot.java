@@ -0,0 +1,124 @@
+package util;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code TemplateSnapshot} class keeps a DOCX template with its parts already inflated, so a fresh document can be
+ * opened for every record without inflating the template again.
+ * <p>
+ * The parts are inflated once, when the snapshot is taken, and kept as a ZIP archive with uncompressed
+ * ({@code STORED}) entries. Opening a document from the snapshot only copies the bytes of the parts, and the archive is
+ * not subject to POI's zip bomb check, which rejects templates with very repetitive XML.
+ * <p>
+ * POI builds the object model of a document by parsing the XML of its parts, so the parts are still parsed on every
+ * {@link #newDocument()}; only reading the archive is saved.
+ * <p>
+ * A snapshot is immutable, so a single instance can be shared by any number of threads.
+ */
+public class TemplateSnapshot {
+
+    private final byte[] parts;
+
+    private TemplateSnapshot(byte[] parts) {
+        this.parts = parts;
+    }
+
+    /**
+     * Takes a snapshot of the specified DOCX template.
+     *
+     * @param docxPath the path of the DOCX template
+     * @return the snapshot
+     */
+    public static TemplateSnapshot of(String docxPath) {
+        try (var in = Files.newInputStream(Path.of(docxPath))) {
+            return new TemplateSnapshot(inflate(in));
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading DOCX data", e);
+        }
+    }
+
+    /**
+     * Takes a snapshot of a DOCX template held in memory.
+     *
+     * @param docxBytes the DOCX template
+     * @return the snapshot
+     */
+    public static TemplateSnapshot of(byte[] docxBytes) {
+        return of(ByteBuffer.wrap(docxBytes));
+    }
+
+    /**
+     * Takes a snapshot of a DOCX template from the remaining bytes of a buffer, e.g. of a memory-mapped file. The
+     * position of the buffer is not changed.
+     *
+     * @param docxBuffer the DOCX template
+     * @return the snapshot
+     */
+    public static TemplateSnapshot of(ByteBuffer docxBuffer) {
+        try {
+            return new TemplateSnapshot(inflate(new ByteBufferInputStream(docxBuffer)));
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading DOCX data", e);
+        }
+    }
+
+    /**
+     * Opens a new, independent document from the snapshot.
+     *
+     * @return the document
+     */
+    public XWPFDocument newDocument() {
+        return DataHandler.loadDocx(parts);
+    }
+
+    /**
+     * Returns the size of the snapshot, i.e. the total size of the inflated parts plus the ZIP structure.
+     *
+     * @return the size in bytes
+     */
+    public int size() {
+        return parts.length;
+    }
+
+    /**
+     * Copies the entries of the ZIP archive to a new archive with uncompressed entries, in the same order.
+     */
+    private static byte[] inflate(InputStream docx) throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (var in = new ZipArchiveInputStream(docx); var zip = new ZipArchiveOutputStream(out)) {
+            ZipArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                var bytes = in.readAllBytes();
+                var crc = new CRC32();
+                crc.update(bytes);
+
+                // Size and CRC are set up front, so they are written to the local header the way POI reads them
+                var stored = new ZipArchiveEntry(entry.getName());
+                stored.setMethod(ZipArchiveEntry.STORED);
+                stored.setSize(bytes.length);
+                stored.setCompressedSize(bytes.length);
+                stored.setCrc(crc.getValue());
+                zip.putArchiveEntry(stored);
+                zip.write(bytes);
+                zip.closeArchiveEntry();
+            }
+            zip.finish();
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,318 @@
+package util;
+
+import data.Root;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.SchemaOutputResolver;
+import javax.xml.bind.UnmarshalException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.ValidationEvent;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code XmlLoader} class loads {@link Root} records from XML sources using a single, shared {@link JAXBContext}.
+ * <p>
+ * Building a {@link JAXBContext} reflects over the whole {@code data} model, so it is created once and reused. The
+ * context itself is thread-safe, but {@link Unmarshaller}s are not; they are therefore handed out from a small pool
+ * and returned after each call.
+ * <p>
+ * When validation is enabled, with the {@value #VALIDATE_PROPERTY} system property or
+ * {@link #setValidating(boolean)}, every record is validated against the {@link #getSchema() schema of the data
+ * model} while it is unmarshalled, and the first violation rejects it. A record missing a section the placeholders
+ * read, e.g. the address or the data section, then fails when it is loaded instead of in the middle of a render.
+ */
+public class XmlLoader {
+
+    /**
+     * The maximum number of idle unmarshallers kept in the pool.
+     */
+    private static final int MAX_POOLED_UNMARSHALLERS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final Queue<Unmarshaller> UNMARSHALLERS = new ConcurrentLinkedQueue<>();
+
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    /**
+     * The system property enabling validation, {@code false} by default.
+     */
+    public static final String VALIDATE_PROPERTY = "xmltodocx.validate";
+
+    private static volatile boolean validating = Boolean.getBoolean(VALIDATE_PROPERTY);
+
+    /**
+     * Lazily initialized holder of the shared context, so the model is only built on first use.
+     */
+    private static class ContextHolder {
+
+        private static final JAXBContext CONTEXT = createContext();
+
+        private static JAXBContext createContext() {
+            try {
+                return JAXBContext.newInstance(Root.class);
+            } catch (JAXBException e) {
+                throw new RuntimeException("Error creating JAXB context", e);
+            }
+        }
+
+    }
+
+    /**
+     * Lazily initialized holder of the shared schema, so it is only generated when validation is first used.
+     */
+    private static class SchemaHolder {
+
+        private static final Schema SCHEMA = createSchema();
+
+    }
+
+    /**
+     * Returns the shared {@link JAXBContext} for the {@code data} model.
+     *
+     * @return the shared JAXB context
+     */
+    public static JAXBContext getContext() {
+        return ContextHolder.CONTEXT;
+    }
+
+    /**
+     * Returns the schema of the {@code data} model. The schema is generated from the JAXB annotations of the model
+     * and compiled once; it is thread-safe.
+     * <p>
+     * Two adjustments make the generated schema match what the unmarshaller accepts and what rendering needs: the
+     * children of a type that occur at most once may appear in any order, and the data section must hold at least
+     * as many {@code <data>} elements as there are {@code <dataN>} placeholders.
+     *
+     * @return the shared schema
+     */
+    public static Schema getSchema() {
+        return SchemaHolder.SCHEMA;
+    }
+
+    /**
+     * Returns whether loaded records are validated against the {@link #getSchema() schema}.
+     *
+     * @return {@code true} if validation is enabled
+     */
+    public static boolean isValidating() {
+        return validating;
+    }
+
+    /**
+     * Enables or disables the validation of loaded records. Readers already open keep their setting.
+     *
+     * @param validating {@code true} to validate records
+     */
+    public static void setValidating(boolean validating) {
+        XmlLoader.validating = validating;
+    }
+
+    /**
+     * Loads XML data from the specified stream. The stream is not closed.
+     *
+     * @param inputStream the stream to load the XML data from
+     * @return the {@link Root} object representing the XML data
+     */
+    public static Root load(InputStream inputStream) {
+        var start = RenderMetrics.start();
+        Unmarshaller unmarshaller = borrowUnmarshaller();
+        try {
+            return (Root) unmarshaller.unmarshal(inputStream);
+        } catch (JAXBException e) {
+            throw loadError(e);
+        } finally {
+            returnUnmarshaller(unmarshaller);
+            RenderMetrics.record(RenderMetrics.Stage.LOAD_XML, start);
+        }
+    }
+
+    /**
+     * Loads XML data from the specified file.
+     *
+     * @param path the path of the file to load the XML data from
+     * @return the {@link Root} object representing the XML data
+     */
+    public static Root load(Path path) {
+        try (var is = Files.newInputStream(path)) {
+            return load(is);
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading XML data", e);
+        }
+    }
+
+    /**
+     * Loads XML data from the specified bytes.
+     *
+     * @param bytes the bytes of the XML document
+     * @return the {@link Root} object representing the XML data
+     */
+    public static Root load(byte[] bytes) {
+        return load(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Loads XML data from the specified DOM node.
+     *
+     * @param node the element or document node holding a {@code <root>} record
+     * @return the {@link Root} object representing the XML data
+     */
+    public static Root load(Node node) {
+        var start = RenderMetrics.start();
+        Unmarshaller unmarshaller = borrowUnmarshaller();
+        try {
+            return unmarshaller.unmarshal(node, Root.class).getValue();
+        } catch (JAXBException e) {
+            throw loadError(e);
+        } finally {
+            returnUnmarshaller(unmarshaller);
+            RenderMetrics.record(RenderMetrics.Stage.LOAD_XML, start);
+        }
+    }
+
+    /**
+     * Takes an unmarshaller from the pool, or creates a new one if the pool is empty. The unmarshaller validates if
+     * validation is enabled.
+     *
+     * @return an unmarshaller owned exclusively by the caller until it is returned
+     */
+    static Unmarshaller borrowUnmarshaller() {
+        Unmarshaller unmarshaller = UNMARSHALLERS.poll();
+        try {
+            if (unmarshaller != null) {
+                POOLED.decrementAndGet();
+            } else {
+                unmarshaller = getContext().createUnmarshaller();
+            }
+
+            var schema = validating ? getSchema() : null;
+            unmarshaller.setSchema(schema);
+            // Without a handler, the unmarshaller carries on after errors; stop at the first violation instead
+            unmarshaller.setEventHandler(schema != null ? XmlLoader::isWarning : null);
+            return unmarshaller;
+        } catch (JAXBException e) {
+            throw new RuntimeException("Error creating unmarshaller", e);
+        }
+    }
+
+    /**
+     * Returns an unmarshaller to the pool. Unmarshallers beyond the pool limit are dropped.
+     *
+     * @param unmarshaller the unmarshaller to return
+     */
+    static void returnUnmarshaller(Unmarshaller unmarshaller) {
+        if (POOLED.incrementAndGet() <= MAX_POOLED_UNMARSHALLERS) {
+            UNMARSHALLERS.offer(unmarshaller);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+
+    /**
+     * Wraps an unmarshalling failure. A rejected record is reported with the violation, e.g. a missing element.
+     *
+     * @param e the failure
+     * @return the exception to throw
+     */
+    static RuntimeException loadError(JAXBException e) {
+        var cause = e.getLinkedException() != null ? e.getLinkedException() : e.getCause();
+        if (e instanceof UnmarshalException && cause instanceof SAXParseException) {
+            return new RuntimeException("Invalid XML data: " + cause.getMessage(), e);
+        }
+        return new RuntimeException("Error loading XML data", e);
+    }
+
+    private static boolean isWarning(ValidationEvent event) {
+        return event.getSeverity() == ValidationEvent.WARNING;
+    }
+
+    private static Schema createSchema() {
+        var results = new ArrayList<DOMResult>();
+        try {
+            getContext().generateSchema(new SchemaOutputResolver() {
+
+                @Override
+                public Result createOutput(String namespaceUri, String suggestedFileName) {
+                    var result = new DOMResult();
+                    result.setSystemId(suggestedFileName);
+                    results.add(result);
+                    return result;
+                }
+
+            });
+
+            var sources = new ArrayList<Source>();
+            for (var result : results) {
+                var document = (Document) result.getNode();
+                adjustSchema(document);
+                sources.add(new DOMSource(document, result.getSystemId()));
+            }
+            return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                    .newSchema(sources.toArray(Source[]::new));
+        } catch (IOException | SAXException e) {
+            throw new RuntimeException("Error creating XML schema", e);
+        }
+    }
+
+    /**
+     * Adjusts a generated schema document, see {@link #getSchema()}.
+     */
+    private static void adjustSchema(Document document) {
+        var sequences = new ArrayList<Element>();
+        var nodes = document.getElementsByTagNameNS(XMLConstants.W3C_XML_SCHEMA_NS_URI, "sequence");
+        for (var i = 0; i < nodes.getLength(); i++) {
+            sequences.add((Element) nodes.item(i));
+        }
+
+        // The generated sequences list the properties alphabetically, the unmarshaller accepts them in any order
+        for (var sequence : sequences) {
+            var unordered = true;
+            for (var child = sequence.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child instanceof Element element && (!"element".equals(element.getLocalName())
+                        || !element.getAttribute("maxOccurs").isEmpty())) {
+                    unordered = false;
+                }
+            }
+            if (unordered) {
+                var prefix = sequence.getPrefix();
+                document.renameNode(sequence, XMLConstants.W3C_XML_SCHEMA_NS_URI,
+                        prefix != null ? prefix + ":all" : "all");
+            }
+        }
+
+        var types = document.getElementsByTagNameNS(XMLConstants.W3C_XML_SCHEMA_NS_URI, "complexType");
+        for (var i = 0; i < types.getLength(); i++) {
+            var type = (Element) types.item(i);
+            if (!"dataSection".equals(type.getAttribute("name"))) {
+                continue;
+            }
+            var elements = type.getElementsByTagNameNS(XMLConstants.W3C_XML_SCHEMA_NS_URI, "element");
+            for (var j = 0; j < elements.getLength(); j++) {
+                var element = (Element) elements.item(j);
+                if ("data".equals(element.getAttribute("name"))) {
+                    element.setAttribute("minOccurs", String.valueOf(PlaceholderRegistry.DATA_VALUES));
+                }
+            }
+        }
+    }
+
+}
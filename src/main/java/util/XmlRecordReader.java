@@ -0,0 +1,199 @@
+package util;
+
+import data.Root;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The {@code XmlRecordReader} class reads {@code <root>} records one at a time from an XML feed.
+ * <p>
+ * The feed is read with StAX and every {@code <root>} element is unmarshalled on its own, so only the current record
+ * is held in memory no matter how many records the feed contains. The records may be wrapped in any document element;
+ * a document whose document element is a {@code <root>} itself yields a single record.
+ * <p>
+ * A record the unmarshaller rejects, e.g. one failing {@link XmlLoader#isValidating() validation}, is skipped: its
+ * {@link #next()} throws, and the records after it can still be read. Malformed XML ends the feed.
+ * <p>
+ * A reader is not thread-safe and must be closed after use.
+ */
+public class XmlRecordReader implements Iterator<Root>, AutoCloseable {
+
+    private static final String RECORD_ELEMENT = "root";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final InputStream inputStream;
+
+    private final XMLStreamReader reader;
+
+    private Unmarshaller unmarshaller;
+
+    private Root next;
+
+    /**
+     * The failure of a rejected record, thrown by the next call of {@link #next()}.
+     */
+    private RuntimeException failure;
+
+    /**
+     * The element depth of the current event, counted while reading, so a rejected record can be skipped.
+     */
+    private int depth;
+
+    /**
+     * Creates a reader over the specified stream. The stream is closed when the reader is closed.
+     *
+     * @param inputStream the stream of the XML feed
+     */
+    public XmlRecordReader(InputStream inputStream) {
+        this.inputStream = inputStream;
+        try {
+            this.reader = new StreamReaderDelegate(INPUT_FACTORY.createXMLStreamReader(inputStream)) {
+
+                @Override
+                public int next() throws XMLStreamException {
+                    var event = super.next();
+                    if (event == START_ELEMENT) {
+                        depth++;
+                    } else if (event == END_ELEMENT) {
+                        depth--;
+                    }
+                    return event;
+                }
+
+                @Override
+                public int nextTag() throws XMLStreamException {
+                    // Through next(), so the depth is counted
+                    var event = next();
+                    while (event == CHARACTERS && isWhiteSpace() || event == SPACE || event == COMMENT
+                            || event == PROCESSING_INSTRUCTION) {
+                        event = next();
+                    }
+                    if (event != START_ELEMENT && event != END_ELEMENT) {
+                        throw new XMLStreamException("Expected a start or end tag", getLocation());
+                    }
+                    return event;
+                }
+
+            };
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Error loading XML data", e);
+        }
+        this.unmarshaller = XmlLoader.borrowUnmarshaller();
+    }
+
+    /**
+     * Opens a reader over the specified file.
+     *
+     * @param path the path of the XML feed
+     * @return the reader
+     */
+    public static XmlRecordReader open(Path path) {
+        try {
+            return new XmlRecordReader(Files.newInputStream(path));
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading XML data", e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && failure == null && unmarshaller != null) {
+            next = readNext();
+        }
+        return next != null || failure != null;
+    }
+
+    @Override
+    public Root next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (failure != null) {
+            var rejected = failure;
+            failure = null;
+            throw rejected;
+        }
+        var record = next;
+        next = null;
+        return record;
+    }
+
+    /**
+     * Returns the remaining records as a sequential stream. Closing the stream closes the reader.
+     *
+     * @return the stream of records
+     */
+    public Stream<Root> stream() {
+        return StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (unmarshaller != null) {
+            XmlLoader.returnUnmarshaller(unmarshaller);
+            unmarshaller = null;
+        }
+        try {
+            reader.close();
+            inputStream.close();
+        } catch (XMLStreamException | IOException e) {
+            throw new RuntimeException("Error closing XML data", e);
+        }
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return the record, or {@code null} at the end of the feed or if the record was rejected
+     */
+    private Root readNext() {
+        try {
+            while (reader.hasNext()) {
+                if (reader.isStartElement() && RECORD_ELEMENT.equals(reader.getLocalName())) {
+                    var recordDepth = depth;
+                    try {
+                        // Leaves the reader on the event following the end of the record
+                        return unmarshaller.unmarshal(reader, Root.class).getValue();
+                    } catch (JAXBException e) {
+                        // Skip the rest of the record, up to its end tag
+                        while (depth >= recordDepth) {
+                            reader.next();
+                        }
+                        failure = XmlLoader.loadError(e);
+                        return null;
+                    }
+                }
+                reader.next();
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Error loading XML data", e);
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        var factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+}
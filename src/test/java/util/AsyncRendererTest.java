@@ -0,0 +1,112 @@
+package util;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncRendererTest {
+
+    Path correctXmlPath = Path.of(DataHandler.getFilePath("/raw.xml"));
+
+    CompiledTemplate template = CompiledTemplate.compile(DataHandler.getFilePath("/raw.docx"), "[logo]",
+            DataHandler.getFilePath("/logo.png"));
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void render() throws Exception {
+        try (var executor = new ForkJoinPool(2)) {
+            var renderer = new AsyncRenderer(template, executor);
+            var docx = renderer.render(Files.readAllBytes(correctXmlPath)).get();
+            var output = renderer.render(correctXmlPath, tempDir.resolve("out.docx")).get();
+
+            assertEquals(tempDir.resolve("out.docx"), output);
+            assertTrue(text(docx).contains("Dear Sandor Szekelyhidi!"));
+            assertEquals(text(docx), text(Files.readAllBytes(output)));
+        }
+    }
+
+    @Test
+    void render_failure() {
+        var renderer = new AsyncRenderer(template, Runnable::run);
+
+        var error = assertThrows(ExecutionException.class, () -> renderer.render("<root>".getBytes()).get());
+        assertTrue(error.getCause().getMessage().startsWith("Invalid XML data: "), error.getCause().getMessage());
+        error = assertThrows(ExecutionException.class,
+                () -> renderer.render(tempDir.resolve("missing.xml"), tempDir.resolve("out.docx")).get());
+        assertEquals("Error loading XML data", error.getCause().getMessage());
+        assertFalse(Files.exists(tempDir.resolve("out.docx")));
+    }
+
+    @Test
+    void render_writeFailure() throws IOException {
+        var renderer = new AsyncRenderer(template, Runnable::run);
+
+        // A non-empty directory in place of the output, so moving the written file fails
+        var output = Files.createDirectory(tempDir.resolve("out.docx"));
+        Files.createFile(output.resolve("blocker"));
+
+        var error = assertThrows(ExecutionException.class, () -> renderer.render(correctXmlPath, output).get());
+        assertEquals("Error saving DOCX data", error.getCause().getMessage());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void render_cancelled() throws IOException {
+        var tasks = new ArrayDeque<Runnable>();
+        var renderer = new AsyncRenderer(template, tasks::add);
+
+        var future = renderer.render(Files.readAllBytes(correctXmlPath));
+        assertEquals(1, tasks.size());
+        assertTrue(future.cancel(true));
+
+        // The pending stage is skipped, so the later stages are never scheduled
+        tasks.poll().run();
+        assertTrue(tasks.isEmpty());
+        assertThrows(CancellationException.class, future::join);
+    }
+
+    @Test
+    void render_timeout() throws Exception {
+        // The file is read on another thread, which schedules the next stage
+        var tasks = new ConcurrentLinkedQueue<Runnable>();
+        var renderer = new AsyncRenderer(template, PlaceholderRegistry.defaults(), tasks::add, Duration.ofMillis(50));
+
+        var output = tempDir.resolve("out.docx");
+        var future = renderer.render(correctXmlPath, output);
+        var error = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(TimeoutException.class, error.getCause());
+
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+        assertFalse(Files.exists(output));
+    }
+
+    private static String text(byte[] docx) throws IOException {
+        try (var docxData = new XWPFDocument(new ByteArrayInputStream(docx))) {
+            var text = new StringBuilder();
+            DocumentWalker.walk(docxData, (paragraph, row) ->
+                    text.append(paragraph.getText()).append('\n'));
+            return text.toString();
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchRendererTest {
+
+    Path correctXmlPath = Path.of(DataHandler.getFilePath("/raw.xml"));
+
+    CompiledTemplate template = CompiledTemplate.compile(DataHandler.getFilePath("/raw.docx"), "[logo]",
+            DataHandler.getFilePath("/logo.png"));
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void render_multiRecordFile() throws IOException {
+        var record = Files.readString(correctXmlPath);
+        var feed = tempDir.resolve("feed.xml");
+        Files.writeString(feed, "<records>" + record + record + record + "</records>");
+
+        var succeeded = ConcurrentHashMap.<String>newKeySet();
+        BatchRenderer.BatchListener listener = new BatchRenderer.BatchListener() {
+            @Override
+            public void onSuccess(String id, Path output) {
+                succeeded.add(id);
+            }
+        };
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var result = new BatchRenderer(template, executor, 2, listener)
+                    .render(BatchRenderer.fromMultiRecordFile(feed), tempDir.resolve("out"));
+
+            assertEquals(3, result.succeeded());
+            assertEquals(0, result.failed());
+        }
+        assertEquals(Set.of("feed-1", "feed-2", "feed-3"), succeeded);
+        assertTrue(Files.exists(tempDir.resolve("out/feed-2.docx")));
+    }
+
+    @Test
+    void render_reportsFailures() throws IOException {
+        var broken = tempDir.resolve("broken.xml");
+        Files.writeString(broken, "<root>");
+
+        try (var executor = new ForkJoinPool(2)) {
+            var result = new BatchRenderer(template, executor, 4, null)
+                    .render(BatchRenderer.fromFiles(List.of(correctXmlPath, broken)), tempDir.resolve("out"));
+
+            assertEquals(1, result.succeeded());
+            assertEquals(Set.of("broken"), result.failures().keySet());
+        }
+        assertTrue(Files.exists(tempDir.resolve("out/raw.docx")));
+        assertFalse(Files.exists(tempDir.resolve("out/broken.docx")));
+    }
+
+    @Test
+    void render_waitsForWorkersOnReadFailure() {
+        var succeeded = new AtomicInteger();
+        BatchRenderer.BatchListener listener = new BatchRenderer.BatchListener() {
+            @Override
+            public void onSuccess(String id, Path output) {
+                succeeded.incrementAndGet();
+            }
+        };
+        var records = new Iterator<BatchRenderer.Record>() {
+
+            private boolean read;
+
+            @Override
+            public boolean hasNext() {
+                if (read) {
+                    throw new RuntimeException("Error reading records");
+                }
+                return true;
+            }
+
+            @Override
+            public BatchRenderer.Record next() {
+                read = true;
+                return new BatchRenderer.Record("slow", () -> {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return XmlLoader.load(correctXmlPath);
+                });
+            }
+
+        };
+
+        try (var executor = new ForkJoinPool(2)) {
+            var renderer = new BatchRenderer(template, executor, 2, listener);
+            var error = assertThrows(RuntimeException.class, () -> renderer.render(records, tempDir.resolve("out")));
+            assertEquals("Error reading records", error.getMessage());
+
+            // The record in flight was finished before the failure was reported
+            assertEquals(1, succeeded.get());
+            assertTrue(Files.exists(tempDir.resolve("out/slow.docx")));
+        }
+    }
+
+    @Test
+    void fromFiles_duplicateNames() throws IOException {
+        var first = Files.createDirectories(tempDir.resolve("a")).resolve("x.xml");
+        var second = Files.createDirectories(tempDir.resolve("b")).resolve("x.xml");
+        var third = tempDir.resolve("x-2.xml");
+        for (var file : List.of(first, second, third)) {
+            Files.copy(correctXmlPath, file);
+        }
+
+        var ids = new ArrayList<String>();
+        BatchRenderer.fromFiles(List.of(first, second, third)).forEachRemaining(record -> ids.add(record.id()));
+        assertEquals(List.of("x", "x-2", "x-2-2"), ids);
+
+        try (var executor = new ForkJoinPool(2)) {
+            var result = new BatchRenderer(template, executor, 4, null)
+                    .render(BatchRenderer.fromFiles(List.of(first, second)), tempDir.resolve("out"));
+
+            assertEquals(2, result.succeeded());
+        }
+        assertTrue(Files.exists(tempDir.resolve("out/x.docx")));
+        assertTrue(Files.exists(tempDir.resolve("out/x-2.docx")));
+    }
+
+}
@@ -0,0 +1,137 @@
+package util;
+
+import data.Root;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledTemplateTest {
+
+    String correctXmlPath = DataHandler.getFilePath("/raw.xml");
+
+    String correctDocxPath = DataHandler.getFilePath("/raw.docx");
+
+    String imageFilePath = DataHandler.getFilePath("/logo.png");
+
+    Pattern pattern = Pattern.compile("<(.*?)>");
+
+    @Test
+    void getPlaceholderNames() {
+        var template = CompiledTemplate.compile(correctDocxPath);
+        assertTrue(template.getPlaceholderNames().contains("name"));
+        assertTrue(template.getPlaceholderNames().contains("order_status"));
+        assertTrue(template.getPlaceholderNames().contains("date"));
+        assertTrue(template.getPlaceholderNames().contains("value1"));
+    }
+
+    @Test
+    void render() {
+        var template = CompiledTemplate.compile(correctDocxPath, "[logo]", imageFilePath);
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+
+        XWPFDocument docxData = template.render(xmlData);
+
+        var text = new StringBuilder();
+        DocumentWalker.walk(docxData, (paragraph, row) -> {
+            assertFalse(pattern.matcher(paragraph.getText()).find());
+            text.append(paragraph.getText()).append('\n');
+        });
+        assertTrue(text.toString().contains("Dear Sandor Szekelyhidi!"));
+        assertTrue(text.toString().contains("Order status: placed"));
+        assertTrue(text.toString().contains("Samsung Galaxy A60"));
+
+        for (var header : docxData.getHeaderList()) {
+            for (var paragraph : header.getParagraphs()) {
+                assertFalse(paragraph.getText().contains("[logo]"));
+            }
+        }
+        assertFalse(docxData.getHeaderList().get(0).getAllPictures().isEmpty());
+    }
+
+    @Test
+    void render_independentDocuments() {
+        var template = CompiledTemplate.compile(correctDocxPath);
+        Root first = DataHandler.loadXml(correctXmlPath);
+        Root second = DataHandler.loadXml(correctXmlPath);
+        second.getCustomerDetails().setName("Jane Doe");
+
+        var firstText = template.render(first).getParagraphs().get(0).getText();
+        var secondText = template.render(second).getParagraphs().get(0).getText();
+
+        assertEquals("Dear Sandor Szekelyhidi!", firstText);
+        assertEquals("Dear Jane Doe!", secondText);
+    }
+
+    @Test
+    void render_inMemory() throws IOException {
+        var logo = ImageCache.of("logo.png", Files.readAllBytes(Path.of(imageFilePath)));
+        var template = CompiledTemplate.compile(DataHandler.mapFile(correctDocxPath), "[logo]", logo);
+        Root xmlData = DataHandler.loadXml(Files.readAllBytes(Path.of(correctXmlPath)));
+
+        try (var docxData = template.render(xmlData);
+             var reloaded = DataHandler.loadDocx(DataHandler.toBytes(docxData))) {
+            assertEquals("Dear Sandor Szekelyhidi!", reloaded.getParagraphs().get(0).getText());
+            assertFalse(reloaded.getHeaderList().get(0).getAllPictures().isEmpty());
+        }
+    }
+
+    @Test
+    void render_allParts() throws IOException {
+        byte[] docxBytes;
+        try (var docxData = DocumentWalkerTest.createDocument()) {
+            docxBytes = DataHandler.toBytes(docxData);
+        }
+        var template = CompiledTemplate.compile(docxBytes, "[logo]", ImageCache.get(imageFilePath));
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+
+        try (var docxData = template.render(xmlData);
+             var reloaded = DataHandler.loadDocx(DataHandler.toBytes(docxData))) {
+            var text = new StringBuilder();
+            DocumentWalker.walk(reloaded, (paragraph, row) ->
+                    text.append(paragraph.getText()).append('\n'));
+            assertFalse(pattern.matcher(text).find(), text::toString);
+            assertTrue(text.toString().contains("Box Sandor Szekelyhidi\nBox Sandor Szekelyhidi\n"));
+            assertTrue(text.toString().contains("Footnote Sandor Szekelyhidi"));
+            assertFalse(reloaded.getHeaderList().get(0).getAllPictures().isEmpty());
+            assertEquals(xmlData.getDocumentData().getTable().getRowData().length + 1,
+                    reloaded.getTables().get(0).getNumberOfRows());
+        }
+    }
+
+    @Test
+    void render_registeredPlaceholdersOnly() throws IOException {
+        byte[] docxBytes;
+        try (var docxData = new XWPFDocument()) {
+            docxData.createParagraph().createRun().setText("Dear <name>, <greeting> 1 < 2");
+            docxBytes = DataHandler.toBytes(docxData);
+        }
+        var registry = PlaceholderRegistry.defaults().copy().register("greeting", root -> "hello");
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+
+        var template = CompiledTemplate.compile(docxBytes, null, null);
+        assertEquals(Set.of("name"), template.getPlaceholderNames());
+        try (var docxData = template.render(xmlData, registry)) {
+            assertEquals("Dear Sandor Szekelyhidi, <greeting> 1 < 2", docxData.getParagraphs().get(0).getText());
+        }
+
+        template = CompiledTemplate.compile(ByteBuffer.wrap(docxBytes), null, null,
+                PlaceholderMatcher.forRegistry(registry));
+        try (var docxData = template.render(xmlData, registry)) {
+            assertEquals("Dear Sandor Szekelyhidi, hello 1 < 2", docxData.getParagraphs().get(0).getText());
+        }
+    }
+
+    @Test
+    void failure_compile() {
+        assertThrows(RuntimeException.class, () -> CompiledTemplate.compile("/raw1.docx"));
+    }
+
+}
@@ -6,6 +6,10 @@ import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.regex.Pattern;
@@ -30,6 +34,16 @@ class DataHandlerTest {
         assertThrows(RuntimeException.class, () -> DataHandler.loadXml("/raw1.xml"));
     }
 
+    @Test
+    void success_loadXml_inMemory() throws IOException {
+        var bytes = Files.readAllBytes(Path.of(correctXmlPath));
+        var buffer = ByteBuffer.wrap(bytes);
+
+        assertEquals("Sandor Szekelyhidi", DataHandler.loadXml(bytes).getCustomerDetails().getName());
+        assertEquals("Sandor Szekelyhidi", DataHandler.loadXml(buffer).getCustomerDetails().getName());
+        assertEquals(0, buffer.position());
+    }
+
     @Test
     void success_loadDocx() {
         var docxData = DataHandler.loadDocx(correctDocxPath);
@@ -63,6 +77,22 @@ class DataHandlerTest {
     }
 
     @Test
+    void success_loadDocx_mapped() throws IOException {
+        try (var docxData = DataHandler.loadDocx(DataHandler.mapFile(correctDocxPath))) {
+            assertFalse(docxData.getParagraphs().isEmpty());
+        }
+    }
+
+    @Test
+    void saveDocx_toBytes() throws IOException {
+        try (var docxData = DataHandler.loadDocx(correctDocxPath);
+             var reloaded = DataHandler.loadDocx(DataHandler.toBytes(docxData))) {
+            assertEquals(docxData.getParagraphs().get(0).getText(), reloaded.getParagraphs().get(0).getText());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
     void replacePlaceholderInParagraphs() {
         // Assets
         XWPFDocument docxDataForValidPattern = DataHandler.loadDocx(correctDocxPath);
@@ -107,6 +137,26 @@ class DataHandlerTest {
     }
 
     @Test
+    void replacePlaceholderInParagraphs_preservesRuns() {
+        XWPFDocument docxData = new XWPFDocument();
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+        var paragraph = docxData.createParagraph();
+        var boldRun = paragraph.createRun();
+        boldRun.setBold(true);
+        boldRun.setText("Dear <na");
+        paragraph.createRun().setText("me> from <data1>, 1 < 2!");
+
+        DataHandler.replacePlaceholderInParagraphs(docxData, xmlData,
+                PlaceholderMatcher.forRegistry(PlaceholderRegistry.defaults()));
+
+        assertEquals("Dear Sandor Szekelyhidi from XY Tech, 1 < 2!", paragraph.getText());
+        assertEquals(2, paragraph.getRuns().size());
+        assertTrue(paragraph.getRuns().get(0).isBold());
+        assertEquals("Dear Sandor Szekelyhidi", paragraph.getRuns().get(0).getText(0));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
     void replacePlaceholderInTables() {
         // Assets
         XWPFDocument docxDataForValidPattern = DataHandler.loadDocx(correctDocxPath);
@@ -207,6 +257,50 @@ class DataHandlerTest {
         assertFalse(found);
     }
 
+    @Test
+    void replacePlaceholderWithLogo_embedsOnce() {
+        XWPFDocument docxData = DataHandler.loadDocx(correctDocxPath);
+        String imageFilePath = DataHandler.getFilePath("/logo.png");
+        var header = docxData.getHeaderList().get(0);
+        header.createParagraph().createRun().setText("[logo]");
+
+        DataHandler.replacePlaceholderWithLogo(docxData, imageFilePath, "[logo]");
+
+        var pictures = header.getParagraphs().stream()
+                .flatMap(paragraph -> paragraph.getRuns().stream())
+                .flatMap(run -> run.getEmbeddedPictures().stream())
+                .toList();
+        assertEquals(2, pictures.size());
+        for (var picture : pictures) {
+            assertTrue(picture.getPictureData().getData().length > 0);
+        }
+        assertEquals(1, docxData.getAllPackagePictures().size());
+    }
+
+    @Test
+    void replacePlaceholders_allParts() throws IOException {
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+        String imageFilePath = DataHandler.getFilePath("/logo.png");
+        var matcher = PlaceholderMatcher.forRegistry(PlaceholderRegistry.defaults());
+
+        try (var docxData = DocumentWalkerTest.createDocument()) {
+            var unknownTags = DataHandler.replacePlaceholders(docxData, xmlData, matcher, imageFilePath, "[logo]");
+
+            try (var reloaded = DataHandler.loadDocx(DataHandler.toBytes(docxData))) {
+                var text = new StringBuilder();
+                DocumentWalker.walk(reloaded, (paragraph, row) -> text.append(paragraph.getText()).append('\n'));
+                assertFalse(text.toString().contains("<"), text::toString);
+                assertTrue(text.toString().contains("Box Sandor Szekelyhidi\nBox Sandor Szekelyhidi\n"));
+                assertTrue(text.toString().contains("Footer Sandor Szekelyhidi"));
+                assertTrue(text.toString().contains("Endnote Sandor Szekelyhidi"));
+                assertFalse(reloaded.getHeaderList().get(0).getAllPictures().isEmpty());
+                assertEquals(xmlData.getDocumentData().getTable().getRowData().length + 1,
+                        reloaded.getTables().get(0).getNumberOfRows());
+            }
+            assertTrue(unknownTags.isEmpty(), unknownTags::toString);
+        }
+    }
+
     @Test
     void replacePlaceholder() {
         Root xmlData = DataHandler.loadXml(correctXmlPath);
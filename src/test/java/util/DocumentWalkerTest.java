@@ -0,0 +1,129 @@
+package util;
+
+import org.apache.poi.wp.usermodel.HeaderFooterType;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.apache.xmlbeans.XmlException;
+import org.junit.jupiter.api.Test;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTR;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentWalkerTest {
+
+    /**
+     * A text box stored the way Word stores it, as a drawing with a VML fallback.
+     */
+    private static final String TEXT_BOX = """
+            <xml-fragment xmlns:w="http://schemas.openxmlformats.org/wordprocessingml/2006/main" \
+            xmlns:mc="http://schemas.openxmlformats.org/markup-compatibility/2006" \
+            xmlns:wps="http://schemas.microsoft.com/office/word/2010/wordprocessingShape" \
+            xmlns:v="urn:schemas-microsoft-com:vml"><mc:AlternateContent><mc:Choice Requires="wps"><w:drawing>\
+            <wps:wsp><wps:txbx><w:txbxContent><w:p><w:r><w:t>%1$s</w:t></w:r></w:p></w:txbxContent></wps:txbx>\
+            </wps:wsp></w:drawing></mc:Choice><mc:Fallback><w:pict><v:shape><v:textbox><w:txbxContent><w:p><w:r>\
+            <w:t>%1$s</w:t></w:r></w:p></w:txbxContent></v:textbox></v:shape></w:pict></mc:Fallback>\
+            </mc:AlternateContent></xml-fragment>""";
+
+    @Test
+    void walk_allParts() throws IOException {
+        try (var docxData = createDocument()) {
+            var text = new ArrayList<String>();
+            DocumentWalker.walk(docxData, (paragraph, row) -> text.add(paragraph.getText()));
+
+            assertEquals(List.of("[logo]", "Box <name>", "Box <name>", "Dear <name>!", "<value1>", "<value2>",
+                    "Total", "", "Nested <date>", "", "Footer <name>", "Footnote <name>", "Endnote <name>"), text);
+        }
+    }
+
+    @Test
+    void walk_skipsRows() throws IOException {
+        try (var docxData = createDocument()) {
+            var tables = new ArrayList<XWPFTable>();
+            var text = new ArrayList<String>();
+            DocumentWalker.walk(docxData, new DocumentWalker.Visitor() {
+
+                @Override
+                public void visitTable(XWPFTable table) {
+                    tables.add(table);
+                }
+
+                @Override
+                public boolean visitRow(XWPFTableRow row) {
+                    return !row.getCell(0).getText().equals("<value1>");
+                }
+
+                @Override
+                public void visitParagraph(XWPFParagraph paragraph, XWPFTableRow row) {
+                    if (row != null) {
+                        text.add(paragraph.getText());
+                    }
+                }
+
+            });
+
+            assertEquals(2, tables.size());
+            assertEquals(List.of("Total", "", "Nested <date>", ""), text);
+        }
+    }
+
+    @Test
+    void walk_keepsTextBoxChanges() throws IOException {
+        try (var docxData = createDocument()) {
+            DocumentWalker.walk(docxData, (paragraph, row) -> {
+                if (paragraph.getText().startsWith("Box")) {
+                    paragraph.getRuns().get(0).setText("Box Jane", 0);
+                }
+            });
+
+            try (var reloaded = DataHandler.loadDocx(DataHandler.toBytes(docxData))) {
+                var text = new ArrayList<String>();
+                DocumentWalker.walk(reloaded, (paragraph, row) -> text.add(paragraph.getText()));
+                assertEquals(List.of("Box Jane", "Box Jane"), text.subList(1, 3));
+            }
+        }
+    }
+
+    /**
+     * Creates a document with placeholders in every part the walker visits: the logo placeholder in the header, a
+     * text box, a table with a template row and a nested table in the row after it, a footer, a footnote and an
+     * endnote.
+     *
+     * @return the document, saved and loaded again so POI sees it like a document written by Word
+     */
+    static XWPFDocument createDocument() throws IOException {
+        try (var docxData = new XWPFDocument()) {
+            docxData.createHeader(HeaderFooterType.DEFAULT).createParagraph().createRun().setText("[logo]");
+
+            var paragraph = docxData.createParagraph();
+            paragraph.createRun().setText("Dear <name>!");
+            try {
+                paragraph.getCTP().addNewR().set(CTR.Factory.parse(TEXT_BOX.formatted("Box &lt;name&gt;")));
+            } catch (XmlException e) {
+                throw new IOException(e);
+            }
+
+            var table = docxData.createTable(2, 2);
+            table.getRow(0).getCell(0).setText("<value1>");
+            table.getRow(0).getCell(1).setText("<value2>");
+            table.getRow(1).getCell(0).setText("Total");
+            var cell = table.getRow(1).getCell(1);
+            var nested = new XWPFTable(cell.getCTTc().addNewTbl(), cell, 1, 1);
+            nested.getRow(0).getCell(0).setText("Nested <date>");
+            cell.getCTTc().addNewP();
+
+            docxData.createFooter(HeaderFooterType.DEFAULT).createParagraph().createRun().setText("Footer <name>");
+            docxData.createFootnotes();
+            docxData.createFootnote().createParagraph().createRun().setText("Footnote <name>");
+            docxData.createEndnote().createParagraph().createRun().setText("Endnote <name>");
+
+            return DataHandler.loadDocx(DataHandler.toBytes(docxData));
+        }
+    }
+
+}
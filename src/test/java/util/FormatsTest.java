@@ -0,0 +1,80 @@
+package util;
+
+import data.Formats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormatsTest {
+
+    Locale locale = Formats.getLocale();
+
+    String datePattern = Formats.getDatePattern();
+
+    @AfterEach
+    void restore() {
+        Formats.configure(locale, datePattern);
+    }
+
+    @Test
+    void parseIsoDateTime() {
+        var inputs = new String[]{
+                "1941-02-15T13:09:12.561Z", "1941-02-15T13:09:12Z", "1941-02-15T13:09", "1941-02-15t13:09:12z",
+                "2024-02-29T00:00:00+01:00", "2024-02-29T00:00:00-18:00", "2024-02-29T00:00:00+01:00:30",
+                "2024-12-31T23:59:59.123456789", "2024-12-31T23:59:59.", "2000-01-01T00:00:00.1234567890",
+                "1941-02-45T13:09:12.561Z", "2023-02-29T00:00", "2024-13-01T00:00", "2024-00-10T00:00",
+                "2024-01-01T24:00", "2024-01-01T12:60", "2024-01-01T12:00:60", "2024-01-01T12:00+19:00",
+                "2024-01-01T12:00+01", "2024-01-01T12:00Zx", "2024-01-01 12:00", "2024-01-01", "24-01-01T12:00",
+                "2024-1-01T12:00", "", "not a date"
+        };
+
+        for (var input : inputs) {
+            LocalDate expected;
+            try {
+                expected = LocalDateTime.parse(input, DateTimeFormatter.ISO_DATE_TIME).toLocalDate();
+            } catch (DateTimeParseException e) {
+                expected = null;
+            }
+            assertEquals(expected, Formats.parseIsoDateTime(input), input);
+        }
+        assertNull(Formats.parseIsoDateTime(null));
+    }
+
+    @Test
+    void reformatIsoDateTime() {
+        assertEquals("1941.02.15.", Formats.reformatIsoDateTime("1941-02-15T13:09:12.561Z"));
+        assertEquals("1941-02-45T13:09:12.561Z", Formats.reformatIsoDateTime("1941-02-45T13:09:12.561Z"));
+        assertNull(Formats.reformatIsoDateTime(null));
+    }
+
+    @Test
+    void formatDate() {
+        var date = LocalDate.of(987, 6, 5);
+        assertEquals(date.format(DateTimeFormatter.ofPattern("yyyy.MM.dd.")), Formats.formatDate(date));
+
+        Formats.configure(Locale.US, "MMMM d, yyyy");
+        assertEquals("June 5, 0987", Formats.formatDate(date));
+        assertEquals(LocalDate.now().format(DateTimeFormatter.ofPattern("MMMM d, yyyy", Locale.US)), Formats.today());
+    }
+
+    @Test
+    void formatInteger() {
+        assertEquals("-1767", Formats.formatInteger(-1767));
+        if (System.getProperty(Formats.LOCALE_PROPERTY) == null) {
+            // ASCII digits unless a locale is configured, whatever the default locale of the host
+            assertEquals(Locale.ROOT, Formats.getLocale());
+        }
+
+        Formats.configure(Locale.forLanguageTag("th-TH-u-nu-thai"), Formats.DEFAULT_DATE_PATTERN);
+        assertEquals("๑๗๖๗", Formats.formatInteger(1767));
+        assertEquals("๒๐๒๔.๐๑.๐๒.", Formats.formatDate(LocalDate.of(2024, 1, 2)));
+    }
+
+}
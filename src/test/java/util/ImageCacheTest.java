@@ -0,0 +1,63 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageCacheTest {
+
+    String imageFilePath = DataHandler.getFilePath("/logo.png");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void get() throws IOException {
+        var logo = ImageCache.get(imageFilePath);
+
+        var image = ImageIO.read(new ByteArrayInputStream(Files.readAllBytes(Path.of(imageFilePath))));
+        assertEquals(image.getWidth(), logo.width());
+        assertEquals(image.getHeight(), logo.height());
+        assertEquals("logo.png", logo.fileName());
+        assertSame(logo, ImageCache.get(imageFilePath));
+    }
+
+    @Test
+    void get_sameContent() throws IOException {
+        var copy = tempDir.resolve("copy.png");
+        Files.copy(Path.of(imageFilePath), copy);
+
+        assertSame(ImageCache.get(imageFilePath), ImageCache.get(copy));
+    }
+
+    @Test
+    void get_changedFile() throws IOException {
+        var file = tempDir.resolve("changing.png");
+        Files.copy(Path.of(imageFilePath), file);
+        var first = ImageCache.get(file);
+
+        var bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length + 1));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+
+        var second = ImageCache.get(file);
+        assertNotSame(first, second);
+        assertNotEquals(first.hash(), second.hash());
+        assertEquals(first.width(), second.width());
+    }
+
+    @Test
+    void failure_get() {
+        assertThrows(RuntimeException.class, () -> ImageCache.get("/logo1.png"));
+    }
+
+}
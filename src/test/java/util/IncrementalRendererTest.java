@@ -0,0 +1,114 @@
+package util;
+
+import data.Root;
+import data.RowData;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalRendererTest {
+
+    String correctXmlPath = DataHandler.getFilePath("/raw.xml");
+
+    String correctDocxPath = DataHandler.getFilePath("/raw.docx");
+
+    @Test
+    void update_changedValues() {
+        var template = CompiledTemplate.compile(correctDocxPath);
+        var renderer = IncrementalRenderer.render(template, DataHandler.loadXml(correctXmlPath));
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+        xmlData.getCustomerDetails().setName("Jane Doe");
+        xmlData.getCustomerDetails().setCustomerType(xmlData.getCustomerDetails().getCustomerType() + 1);
+
+        assertTrue(renderer.update(xmlData));
+
+        assertEquals(text(template.render(xmlData)), text(renderer.getDocument()));
+        assertTrue(text(renderer.getDocument()).contains("Dear Jane Doe!"));
+    }
+
+    @Test
+    void update_rowValues() {
+        var template = CompiledTemplate.compile(correctDocxPath);
+        var renderer = IncrementalRenderer.render(template, DataHandler.loadXml(correctXmlPath));
+        var document = renderer.getDocument();
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+        var table = xmlData.getDocumentData().getTable();
+        var rowData = table.getRowData();
+        rowData[0].getValues().set(0, "Nokia 3310");
+        rowData[rowData.length - 1].getValues().set(1, "");
+        table.setRowData(rowData);
+
+        assertTrue(renderer.update(xmlData));
+
+        assertSame(document, renderer.getDocument());
+        assertEquals(text(template.render(xmlData)), text(renderer.getDocument()));
+    }
+
+    @Test
+    void update_rowCount() {
+        var template = CompiledTemplate.compile(correctDocxPath);
+        var renderer = IncrementalRenderer.render(template, DataHandler.loadXml(correctXmlPath));
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+        var table = xmlData.getDocumentData().getTable();
+        var row = new RowData();
+        row.getValues().addAll(Arrays.asList("Nokia 3310", "Indestructible"));
+        var rowData = Arrays.copyOf(table.getRowData(), table.getRowData().length + 1);
+        rowData[rowData.length - 1] = row;
+        table.setRowData(rowData);
+
+        assertFalse(renderer.update(xmlData));
+
+        assertEquals(text(template.render(xmlData)), text(renderer.getDocument()));
+    }
+
+    @Test
+    void update_sameTextElement() throws IOException {
+        byte[] docxBytes;
+        try (var docxData = new XWPFDocument()) {
+            docxData.createParagraph().createRun().setText("<name>, <name> and <date>: <order_status>");
+            var paragraph = docxData.createParagraph();
+            paragraph.createRun().setText("Dear <na");
+            paragraph.createRun().setText("me>, <name>!");
+            docxBytes = DataHandler.toBytes(docxData);
+        }
+        var template = CompiledTemplate.compile(docxBytes, null, null);
+        var renderer = IncrementalRenderer.render(template, DataHandler.loadXml(correctXmlPath));
+
+        for (var name : new String[]{"Jo", "Maximilian Alexander von Example", "", "Sandor Szekelyhidi"}) {
+            Root xmlData = DataHandler.loadXml(correctXmlPath);
+            xmlData.getCustomerDetails().setName(name);
+
+            assertTrue(renderer.update(xmlData));
+            assertEquals(text(template.render(xmlData)), text(renderer.getDocument()), name);
+        }
+    }
+
+    @Test
+    void update_textBox() throws IOException {
+        byte[] docxBytes;
+        try (var docxData = DocumentWalkerTest.createDocument()) {
+            docxBytes = DataHandler.toBytes(docxData);
+        }
+        var template = CompiledTemplate.compile(docxBytes, null, null);
+        var renderer = IncrementalRenderer.render(template, DataHandler.loadXml(correctXmlPath));
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+        xmlData.getCustomerDetails().setName("Jane Doe");
+
+        // The text box is a parsed copy, so its values can only be changed by rendering again
+        assertFalse(renderer.update(xmlData));
+
+        assertEquals(text(template.render(xmlData)), text(renderer.getDocument()));
+        assertTrue(renderer.update(xmlData));
+    }
+
+    private static String text(XWPFDocument docxData) {
+        var text = new StringBuilder();
+        DocumentWalker.walk(docxData, (paragraph, row) -> text.append(paragraph.getText()).append('\n'));
+        return text.toString();
+    }
+
+}
@@ -0,0 +1,115 @@
+package util;
+
+import data.Root;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaceholderMatcherTest {
+
+    String correctXmlPath = DataHandler.getFilePath("/raw.xml");
+
+    String correctDocxPath = DataHandler.getFilePath("/raw.docx");
+
+    PlaceholderMatcher matcher = PlaceholderMatcher.forRegistry(PlaceholderRegistry.defaults());
+
+    @Test
+    void scan_splitRuns() {
+        var paragraph = createParagraph("Dear <na", "me> from <", "data1>!");
+
+        var matches = matcher.scan(paragraph);
+
+        assertEquals(2, matches.size());
+        assertEquals(new PlaceholderScanner.Match(0, 0, 5, 1, 0, 3, "name"), matches.get(0));
+        assertEquals(new PlaceholderScanner.Match(1, 0, 9, 2, 0, 6, "data1"), matches.get(1));
+    }
+
+    @Test
+    void scan_literalText() {
+        var unknownTags = new ArrayList<String>();
+        var paragraph = createParagraph("If a < b > c, then <<name> applies, see x<y and <name >.");
+
+        var matches = matcher.scan(paragraph, unknownTags::add);
+
+        assertEquals(1, matches.size());
+        assertEquals("name", matches.get(0).name());
+        assertEquals(20, matches.get(0).startOffset());
+        assertEquals(List.of(), unknownTags);
+    }
+
+    @Test
+    void scan_unknownTags() {
+        var unknownTags = new ArrayList<String>();
+        var prefixes = PlaceholderMatcher.of(List.of("val", "value"));
+        var paragraph = createParagraph("<val> <value> <valu", "> <value1> <>");
+
+        var matches = prefixes.scan(paragraph, unknownTags::add);
+
+        assertEquals(List.of("val", "value"), matches.stream().map(PlaceholderScanner.Match::name).toList());
+        assertEquals(List.of("valu", "value1"), unknownTags);
+        assertTrue(prefixes.isKnown("val"));
+        assertFalse(prefixes.isKnown("valu"));
+        assertTrue(matcher.isKnown("value63"));
+    }
+
+    @Test
+    void failure_of() {
+        assertThrows(IllegalArgumentException.class, () -> PlaceholderMatcher.of(List.of("")));
+        assertThrows(IllegalArgumentException.class, () -> PlaceholderMatcher.of(List.of("a<b")));
+        assertThrows(IllegalArgumentException.class, () -> PlaceholderMatcher.of(List.of("a>")));
+    }
+
+    @Test
+    void replacePlaceholders_matchesCompiledTemplate() throws IOException {
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+
+        try (var expected = CompiledTemplate.compile(correctDocxPath).render(xmlData);
+             var actual = DataHandler.loadDocx(correctDocxPath)) {
+            var unknownTags = DataHandler.replacePlaceholderInParagraphs(actual, xmlData, matcher);
+            unknownTags.addAll(DataHandler.replacePlaceholderInTables(actual, xmlData, matcher));
+
+            assertEquals(text(expected), text(actual));
+            assertEquals(expected.getTables().get(0).getNumberOfRows(), actual.getTables().get(0).getNumberOfRows());
+            assertTrue(unknownTags.isEmpty(), unknownTags::toString);
+        }
+    }
+
+    @Test
+    void replacePlaceholderInParagraphs_reportsUnknownTags() {
+        XWPFDocument docxData = new XWPFDocument();
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+        var paragraph = docxData.createParagraph();
+        paragraph.createRun().setText("Dear <name>, <salutation> 1 < 2");
+
+        var unknownTags = DataHandler.replacePlaceholderInParagraphs(docxData, xmlData, matcher);
+
+        assertEquals("Dear Sandor Szekelyhidi, <salutation> 1 < 2", paragraph.getText());
+        assertEquals(List.of("salutation"), List.copyOf(unknownTags));
+    }
+
+    private static XWPFParagraph createParagraph(String... runs) {
+        var paragraph = new XWPFDocument().createParagraph();
+        for (var run : runs) {
+            paragraph.createRun().setText(run);
+        }
+        return paragraph;
+    }
+
+    private static String text(XWPFDocument docxData) {
+        var text = new StringBuilder();
+        for (var paragraph : docxData.getParagraphs()) {
+            text.append(paragraph.getText()).append('\n');
+        }
+        for (var table : docxData.getTables()) {
+            text.append(table.getText()).append('\n');
+        }
+        return text.toString();
+    }
+
+}
@@ -0,0 +1,63 @@
+package util;
+
+import data.Root;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlaceholderRegistryTest {
+
+    Root xmlData = DataHandler.loadXml(DataHandler.getFilePath("/raw.xml"));
+
+    @Test
+    void resolve() {
+        var registry = PlaceholderRegistry.defaults();
+        assertEquals("Sandor Szekelyhidi", registry.resolve("name", xmlData));
+        assertEquals("Samsung Galaxy A60", registry.resolve("data4", xmlData));
+        assertEquals("placed", registry.resolve("order_status", xmlData));
+        assertEquals("Debrecen", registry.resolve("city", xmlData));
+        assertEquals("Apple street 31.", registry.resolve("street", xmlData));
+        assertEquals("1767", registry.resolve("postal_code", xmlData));
+        assertEquals(PlaceholderRegistry.UNKNOWN, registry.resolve("test", xmlData));
+
+        xmlData.getCustomerDetails().setCustomerType(4);
+        assertThrows(IllegalArgumentException.class, () -> registry.resolve("order_status", xmlData));
+    }
+
+    @Test
+    void register() {
+        var registry = PlaceholderRegistry.defaults().copy()
+                .register("greeting", root -> "Hello " + root.getCustomerDetails().getName());
+
+        assertTrue(registry.contains("greeting"));
+        assertEquals("Hello Sandor Szekelyhidi", registry.resolve("greeting", xmlData));
+        assertFalse(PlaceholderRegistry.defaults().contains("greeting"));
+        assertThrows(UnsupportedOperationException.class,
+                () -> PlaceholderRegistry.defaults().register("greeting", root -> "Hello"));
+        assertTrue(registry.copy().register("farewell", root -> "Bye").contains("farewell"));
+    }
+
+    @Test
+    void snapshot() {
+        var registry = PlaceholderRegistry.defaults();
+        var all = registry.snapshot(xmlData);
+        assertEquals(registry.names().size(), all.size());
+        assertEquals("XY Tech", all.get("data1"));
+
+        var some = registry.snapshot(xmlData, List.of("name", "test"));
+        assertEquals(2, some.size());
+        assertEquals("Sandor Szekelyhidi", some.get("name"));
+        assertEquals(PlaceholderRegistry.UNKNOWN, some.get("test"));
+    }
+
+    @Test
+    void today() {
+        assertEquals(LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd.")), PlaceholderRegistry.today());
+        assertSame(PlaceholderRegistry.today(), PlaceholderRegistry.today());
+    }
+
+}
@@ -0,0 +1,126 @@
+package util;
+
+import data.Root;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderCacheTest {
+
+    String correctXmlPath = DataHandler.getFilePath("/raw.xml");
+
+    String correctDocxPath = DataHandler.getFilePath("/raw.docx");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void render() throws IOException {
+        var template = CompiledTemplate.compile(correctDocxPath);
+        var cache = new RenderCache(1 << 20);
+
+        var docx = cache.render(template, DataHandler.loadXml(correctXmlPath));
+
+        assertSame(docx, cache.render(template, DataHandler.loadXml(correctXmlPath)));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        try (var docxData = DataHandler.loadDocx(docx)) {
+            assertEquals("Dear Sandor Szekelyhidi!", docxData.getParagraphs().get(0).getText());
+        }
+    }
+
+    @Test
+    void render_changedData() {
+        var template = CompiledTemplate.compile(correctDocxPath);
+        var cache = new RenderCache(1 << 20);
+        var docx = cache.render(template, DataHandler.loadXml(correctXmlPath));
+
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+        var rowData = xmlData.getDocumentData().getTable().getRowData();
+        rowData[0].getValues().set(0, "Nokia 3310");
+        xmlData.getDocumentData().getTable().setRowData(rowData);
+        assertNotSame(docx, cache.render(template, xmlData));
+
+        // The same values with another template are another document as well
+        assertNotSame(docx, cache.render(CompiledTemplate.compile(correctDocxPath, "[logo]",
+                DataHandler.getFilePath("/logo.png")), DataHandler.loadXml(correctXmlPath)));
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    void render_volatilePlaceholder() {
+        var template = CompiledTemplate.compile(correctDocxPath);
+        assertTrue(template.getPlaceholderNames().contains("date"));
+        var cache = new RenderCache(1 << 20);
+        var today = PlaceholderRegistry.defaults().copy().register("date", xmlData -> "2024.01.01.");
+        var tomorrow = PlaceholderRegistry.defaults().copy().register("date", xmlData -> "2024.01.02.");
+
+        var docx = cache.render(template, DataHandler.loadXml(correctXmlPath), today);
+
+        assertNotSame(docx, cache.render(template, DataHandler.loadXml(correctXmlPath), tomorrow));
+        assertSame(docx, cache.render(template, DataHandler.loadXml(correctXmlPath), today));
+    }
+
+    @Test
+    void render_diskTier() throws IOException {
+        var template = CompiledTemplate.compile(correctDocxPath);
+        var docx = new RenderCache(1 << 20, tempDir, 1 << 20).render(template, DataHandler.loadXml(correctXmlPath));
+
+        // A new cache over the same directory, e.g. after a restart
+        var cache = new RenderCache(1 << 20, tempDir, 1 << 20);
+        assertEquals(docx.length, cache.getDiskBytes());
+        assertArrayEquals(docx, cache.render(template, DataHandler.loadXml(correctXmlPath)));
+        assertEquals(1, cache.getHits());
+        assertEquals(docx.length, cache.getMemoryBytes());
+    }
+
+    @Test
+    void render_diskTierFailure() throws IOException {
+        var template = CompiledTemplate.compile(correctDocxPath);
+        var xmlData = DataHandler.loadXml(correctXmlPath);
+        var key = RenderCache.key(template, template.values(xmlData, PlaceholderRegistry.defaults()),
+                CompiledTemplate.rows(xmlData));
+        var cache = new RenderCache(1 << 20, tempDir, 1 << 20);
+
+        // A non-empty directory in place of the document, so moving the written file fails
+        Files.createFile(Files.createDirectory(tempDir.resolve(key + ".docx")).resolve("blocker"));
+
+        var docx = cache.render(template, xmlData);
+        try (var docxData = DataHandler.loadDocx(docx)) {
+            assertEquals("Dear Sandor Szekelyhidi!", docxData.getParagraphs().get(0).getText());
+        }
+        assertEquals(0, cache.getDiskBytes());
+        assertEquals(docx.length, cache.getMemoryBytes());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void render_evictsLeastRecentlyUsed() throws IOException {
+        var template = CompiledTemplate.compile(correctDocxPath);
+        var first = DataHandler.loadXml(correctXmlPath);
+        var second = DataHandler.loadXml(correctXmlPath);
+        second.getCustomerDetails().setName("Jane Doe");
+        var size = new RenderCache(0).render(template, first).length;
+        var cache = new RenderCache(size + size / 2, tempDir, size + size / 2);
+
+        cache.render(template, first);
+        cache.render(template, second);
+
+        assertTrue(cache.getMemoryBytes() <= size + size / 2);
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+        cache.render(template, second);
+        cache.render(template, first);
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+}
@@ -0,0 +1,119 @@
+package util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderMetricsTest {
+
+    String correctXmlPath = DataHandler.getFilePath("/raw.xml");
+
+    String correctDocxPath = DataHandler.getFilePath("/raw.docx");
+
+    String imageFilePath = DataHandler.getFilePath("/logo.png");
+
+    PlaceholderMatcher matcher = PlaceholderMatcher.forRegistry(PlaceholderRegistry.defaults());
+
+    @AfterEach
+    void tearDown() {
+        RenderMetrics.setEnabled(false);
+        RenderMetrics.reset();
+    }
+
+    @Test
+    void record_stages() {
+        RenderMetrics.setEnabled(true);
+
+        var xmlData = DataHandler.loadXml(correctXmlPath);
+        var docxData = DataHandler.loadDocx(correctDocxPath);
+        DataHandler.replacePlaceholderInParagraphs(docxData, xmlData, matcher);
+        DataHandler.replacePlaceholderInTables(docxData, xmlData, matcher);
+        DataHandler.replacePlaceholderWithLogo(docxData, imageFilePath, "[logo]");
+        var out = new ByteArrayOutputStream();
+        DataHandler.writeDocx(docxData, out);
+
+        for (var stage : new RenderMetrics.Stage[]{RenderMetrics.Stage.LOAD_XML, RenderMetrics.Stage.LOAD_DOCX,
+                RenderMetrics.Stage.REPLACE_PARAGRAPHS, RenderMetrics.Stage.REPLACE_TABLES,
+                RenderMetrics.Stage.REPLACE_LOGO, RenderMetrics.Stage.SAVE_DOCX}) {
+            var histogram = RenderMetrics.histogram(stage);
+            assertEquals(1, histogram.getCount(), stage.displayName());
+            assertTrue(histogram.getMaxMillis() > 0, stage.displayName());
+            assertTrue(histogram.getP50Millis() <= histogram.getMaxMillis(), stage.displayName());
+        }
+        assertEquals(0, RenderMetrics.histogram(RenderMetrics.Stage.RENDER).getCount());
+        assertTrue(RenderMetrics.getPlaceholdersFound() > 0);
+        assertTrue(RenderMetrics.getPlaceholdersReplaced() > 0);
+        assertEquals(out.size(), RenderMetrics.getBytesWritten());
+        assertTrue(RenderMetrics.summary().contains("loadXml: n=1"));
+    }
+
+    @Test
+    void record_placeholdersPerRenderPath() {
+        var xmlData = DataHandler.loadXml(correctXmlPath);
+        var template = CompiledTemplate.compile(correctDocxPath);
+        var writer = StreamingDocxWriter.of(correctDocxPath);
+        RenderMetrics.setEnabled(true);
+
+        // Every path counts the occurrences in the rendered document, the rows of a table included
+        DataHandler.toBytes(template.render(xmlData));
+        var found = RenderMetrics.getPlaceholdersFound();
+        assertEquals(found, RenderMetrics.getPlaceholdersReplaced());
+
+        RenderMetrics.reset();
+        writer.write(xmlData, PlaceholderRegistry.defaults(), new ByteArrayOutputStream());
+        assertEquals(found, RenderMetrics.getPlaceholdersFound());
+        assertEquals(found, RenderMetrics.getPlaceholdersReplaced());
+    }
+
+    @Test
+    void record_unknownPlaceholder() {
+        RenderMetrics.setEnabled(true);
+
+        assertEquals(PlaceholderRegistry.UNKNOWN, DataHandler.replacePlaceholder("no_such_placeholder", null));
+        assertEquals(1, RenderMetrics.getPlaceholdersUnknown());
+    }
+
+    @Test
+    void record_disabled() {
+        var xmlData = DataHandler.loadXml(correctXmlPath);
+        var template = CompiledTemplate.compile(correctDocxPath);
+        DataHandler.toBytes(template.render(xmlData));
+
+        for (var stage : RenderMetrics.Stage.values()) {
+            assertEquals(0, RenderMetrics.histogram(stage).getCount(), stage.displayName());
+        }
+        assertEquals(0, RenderMetrics.getPlaceholdersFound());
+        assertEquals(0, RenderMetrics.getBytesWritten());
+    }
+
+    @Test
+    void histogram_buckets() {
+        var previous = -1L;
+        for (var bucket = 0; bucket < 247; bucket++) {
+            var upperBound = RenderMetrics.Histogram.upperBound(bucket);
+            assertTrue(upperBound > previous);
+            assertEquals(bucket, RenderMetrics.Histogram.bucket(upperBound));
+            assertEquals(bucket, RenderMetrics.Histogram.bucket(previous + 1));
+            previous = upperBound;
+        }
+        var last = RenderMetrics.Histogram.bucket(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, RenderMetrics.Histogram.upperBound(last));
+    }
+
+    @Test
+    void registerMBeans() throws JMException {
+        RenderMetrics.setEnabled(true);
+        RenderMetrics.registerMBeans();
+        DataHandler.loadXml(correctXmlPath);
+
+        var server = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(1L, server.getAttribute(RenderMetrics.objectName("loadXml"), "Count"));
+        assertEquals(true, server.getAttribute(RenderMetrics.objectName("counters"), "Enabled"));
+    }
+
+}
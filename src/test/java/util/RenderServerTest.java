@@ -0,0 +1,123 @@
+package util;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderServerTest {
+
+    String correctXmlPath = DataHandler.getFilePath("/raw.xml");
+
+    String correctDocxPath = DataHandler.getFilePath("/raw.docx");
+
+    String imageFilePath = DataHandler.getFilePath("/logo.png");
+
+    RenderServer server;
+
+    HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void start() {
+        var templates = new TemplateCache(4, "[logo]", imageFilePath);
+        server = new RenderServer(new InetSocketAddress("localhost", 0), templates, Path.of(correctDocxPath),
+                Path.of(correctDocxPath).getParent(), 2);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void render() throws IOException, InterruptedException {
+        var response = post("/render", HttpRequest.BodyPublishers.ofFile(Path.of(correctXmlPath)));
+
+        assertEquals(200, response.statusCode());
+        try (var docxData = new XWPFDocument(new ByteArrayInputStream(response.body()))) {
+            assertEquals("Dear Sandor Szekelyhidi!", docxData.getParagraphs().get(0).getText());
+        }
+    }
+
+    @Test
+    void render_cached() throws IOException, InterruptedException {
+        server.stop(0);
+        var renders = new RenderCache(1 << 20);
+        server = new RenderServer(new InetSocketAddress("localhost", 0), new TemplateCache(4, "[logo]", imageFilePath),
+                Path.of(correctDocxPath), null, 2, renders);
+        server.start();
+
+        var first = post("/render", HttpRequest.BodyPublishers.ofFile(Path.of(correctXmlPath)));
+        var second = post("/render", HttpRequest.BodyPublishers.ofFile(Path.of(correctXmlPath)));
+
+        assertEquals(200, second.statusCode());
+        assertArrayEquals(first.body(), second.body());
+        assertEquals(1, renders.getHits());
+    }
+
+    @Test
+    void render_namedTemplate()throws IOException, InterruptedException {
+        var response = post("/render?template=raw", HttpRequest.BodyPublishers.ofFile(Path.of(correctXmlPath)));
+        assertEquals(200, response.statusCode());
+
+        assertEquals(404, post("/render?template=missing", HttpRequest.BodyPublishers.noBody()).statusCode());
+        assertEquals(404, post("/render?template=..%2Fraw", HttpRequest.BodyPublishers.noBody()).statusCode());
+    }
+
+    @Test
+    void failure_render() throws IOException, InterruptedException {
+        assertEquals(400, post("/render", HttpRequest.BodyPublishers.ofString("<root>")).statusCode());
+
+        var get = HttpRequest.newBuilder(uri("/render")).GET().build();
+        assertEquals(405, client.send(get, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    @Test
+    void failure_template(@TempDir Path templateDirectory) throws IOException, InterruptedException {
+        server.stop(0);
+        Files.writeString(templateDirectory.resolve("broken.docx"), "not a DOCX file");
+        server = new RenderServer(new InetSocketAddress("localhost", 0), new TemplateCache(4, "[logo]", imageFilePath),
+                Path.of(correctDocxPath), templateDirectory, 2);
+        server.start();
+
+        var response = post("/render?template=broken", HttpRequest.BodyPublishers.ofFile(Path.of(correctXmlPath)));
+
+        assertEquals(500, response.statusCode());
+        assertEquals("Error rendering document", new String(response.body(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void health() throws IOException, InterruptedException {
+        var get = HttpRequest.newBuilder(uri("/health")).GET().build();
+        var response = client.send(get, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertEquals("OK", response.body());
+    }
+
+    private HttpResponse<byte[]> post(String path, HttpRequest.BodyPublisher body)
+            throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(uri(path)).POST(body).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+
+}
@@ -0,0 +1,98 @@
+package util;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SaveOptionsTest {
+
+    String correctXmlPath = DataHandler.getFilePath("/raw.xml");
+
+    String correctDocxPath = DataHandler.getFilePath("/raw.docx");
+
+    String imageFilePath = DataHandler.getFilePath("/logo.png");
+
+    @Test
+    void writeDocx_storesMedia() throws IOException {
+        var bytes = render(SaveOptions.defaults());
+
+        try (var zipFile = open(bytes)) {
+            for (var entry : Collections.list(zipFile.getEntries())) {
+                var expected = entry.getName().endsWith(".png") ? ZipArchiveEntry.STORED : ZipArchiveEntry.DEFLATED;
+                assertEquals(expected, entry.getMethod(), entry.getName());
+            }
+        }
+        try (XWPFDocument docxData = DataHandler.loadDocx(bytes)) {
+            assertFalse(docxData.getHeaderList().get(0).getAllPictures().isEmpty());
+        }
+    }
+
+    @Test
+    void writeDocx_levels() throws IOException {
+        var stored = render(SaveOptions.defaults().withLevel(Deflater.NO_COMPRESSION));
+        try (var zipFile = open(stored)) {
+            for (var entry : Collections.list(zipFile.getEntries())) {
+                assertEquals(ZipArchiveEntry.STORED, entry.getMethod(), entry.getName());
+            }
+        }
+
+        var xmlStored = render(SaveOptions.defaults().withLevel("XML", Deflater.NO_COMPRESSION));
+        try (var zipFile = open(xmlStored)) {
+            assertEquals(ZipArchiveEntry.STORED, zipFile.getEntry("word/document.xml").getMethod());
+            assertEquals(ZipArchiveEntry.DEFLATED, zipFile.getEntry("_rels/.rels").getMethod());
+        }
+
+        var best = render(SaveOptions.defaults().withLevel(Deflater.BEST_COMPRESSION));
+        assertTrue(best.length < stored.length);
+        try (XWPFDocument docxData = DataHandler.loadDocx(best)) {
+            assertFalse(docxData.getParagraphs().isEmpty());
+        }
+    }
+
+    @Test
+    void writeDocx_reusesTemplateParts() throws IOException {
+        var templateBytes = Files.readAllBytes(Path.of(correctDocxPath));
+        var bytes = render(SaveOptions.defaults().withTemplate(templateBytes));
+
+        try (var zipFile = open(bytes); var template = open(templateBytes)) {
+            var reused = template.getEntry("word/fontTable.xml");
+            var written = zipFile.getEntry("word/fontTable.xml");
+            try (var expected = template.getRawInputStream(reused); var actual = zipFile.getRawInputStream(written)) {
+                assertArrayEquals(expected.readAllBytes(), actual.readAllBytes());
+            }
+            assertNotEquals(template.getEntry("word/document.xml").getCrc(),
+                    zipFile.getEntry("word/document.xml").getCrc());
+        }
+    }
+
+    @Test
+    void failure_withLevel() {
+        assertThrows(IllegalArgumentException.class, () -> SaveOptions.defaults().withLevel(10));
+        assertThrows(IllegalArgumentException.class, () -> SaveOptions.defaults().withLevel("xml", -2));
+    }
+
+    private byte[] render(SaveOptions options) throws IOException {
+        var template = CompiledTemplate.compile(correctDocxPath, "[logo]", imageFilePath);
+        try (var docxData = template.render(DataHandler.loadXml(correctXmlPath))) {
+            var out = new ByteArrayOutputStream();
+            DataHandler.writeDocx(docxData, out, options);
+            return out.toByteArray();
+        }
+    }
+
+    private static ZipFile open(byte[] bytes) throws IOException {
+        return new ZipFile(new SeekableInMemoryByteChannel(bytes));
+    }
+
+}
@@ -0,0 +1,201 @@
+package util;
+
+import data.RowData;
+import data.Root;
+import data.Table;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingDocxWriterTest {
+
+    String correctXmlPath = DataHandler.getFilePath("/raw.xml");
+
+    String correctDocxPath = DataHandler.getFilePath("/raw.docx");
+
+    String imageFilePath = DataHandler.getFilePath("/logo.png");
+
+    Pattern pattern = Pattern.compile("<(.*?)>");
+
+    @Test
+    void write_matchesCompiledTemplate() throws IOException {
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+        var writer = StreamingDocxWriter.of(correctDocxPath, "[logo]", imageFilePath);
+
+        try (var streamed = reload(write(writer, xmlData));
+             var rendered = CompiledTemplate.compile(correctDocxPath, "[logo]", imageFilePath).render(xmlData)) {
+            var streamedText = new StringBuilder();
+            DocumentWalker.walk(streamed, (paragraph, row) -> {
+                assertFalse(pattern.matcher(paragraph.getText()).find());
+                streamedText.append(paragraph.getText()).append('\n');
+            });
+            var renderedText = new StringBuilder();
+            DocumentWalker.walk(rendered, (paragraph, row) ->
+                    renderedText.append(paragraph.getText()).append('\n'));
+
+            assertEquals(renderedText.toString(), streamedText.toString());
+            assertTrue(streamedText.toString().contains("Dear Sandor Szekelyhidi!"));
+
+            var header = streamed.getHeaderList().get(0);
+            assertFalse(header.getText().contains("[logo]"));
+            assertEquals(1, header.getAllPictures().size());
+        }
+    }
+
+    @Test
+    void write_matchesDefaultFlow() throws IOException {
+        // The render mode of Main against its default flow, on the bundled template
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+        var writer = StreamingDocxWriter.of(correctDocxPath, "[logo]", imageFilePath);
+
+        try (var streamed = reload(write(writer, xmlData));
+             var replaced = DataHandler.loadDocx(correctDocxPath)) {
+            var matcher = PlaceholderMatcher.forRegistry(PlaceholderRegistry.defaults());
+            DataHandler.replacePlaceholders(replaced, xmlData, matcher, imageFilePath, "[logo]");
+
+            assertEquals(text(replaced), text(streamed));
+            assertEquals(replaced.getAllPictures().size(), streamed.getAllPictures().size());
+        }
+    }
+
+    @Test
+    void write_allParts() throws IOException {
+        byte[] docxBytes;
+        try (var docxData = DocumentWalkerTest.createDocument()) {
+            docxBytes = DataHandler.toBytes(docxData);
+        }
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+        var writer = StreamingDocxWriter.of(docxBytes, "[logo]", ImageCache.get(imageFilePath));
+
+        try (var streamed = reload(write(writer, xmlData));
+             var rendered = CompiledTemplate.compile(docxBytes, "[logo]", ImageCache.get(imageFilePath))
+                     .render(xmlData)) {
+            var text = text(streamed);
+            assertEquals(text(rendered), text);
+            assertFalse(pattern.matcher(text).find(), text);
+            assertTrue(text.contains("Box Sandor Szekelyhidi\n"));
+            assertTrue(text.contains("Footer Sandor Szekelyhidi\n"));
+            assertTrue(text.contains("Footnote Sandor Szekelyhidi\n"));
+            assertTrue(text.contains("Endnote Sandor Szekelyhidi\n"));
+        }
+    }
+
+    @Test
+    void write_largeTable() throws IOException {
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+        var table = new Table();
+        var rowData = new RowData[50_000];
+        for (var i = 0; i < rowData.length; i++) {
+            var row = new RowData();
+            row.setValues(List.of("Product " + i, "Description " + i));
+            rowData[i] = row;
+        }
+        table.setRowData(rowData);
+        xmlData.getDocumentData().setTable(table);
+
+        // Reloading a table this size with XWPF is slow, so check the streamed XML directly
+        var streamed = write(StreamingDocxWriter.of(correctDocxPath), xmlData);
+        var document = new String(readPart(streamed, "word/document.xml"), StandardCharsets.UTF_8);
+        var first = document.indexOf(">Product 0<");
+        var last = document.indexOf(">Product 49999<");
+        assertTrue(first > 0);
+        assertTrue(last > first);
+        assertEquals(-1, document.indexOf("<value1>"));
+        assertEquals(-1, document.indexOf("&lt;value1&gt;"));
+    }
+
+    @Test
+    void write_copiesUnchangedParts() throws IOException {
+        Root xmlData = DataHandler.loadXml(correctXmlPath);
+        var streamed = write(StreamingDocxWriter.of(correctDocxPath), xmlData);
+
+        var template = Files.readAllBytes(Path.of(correctDocxPath));
+        assertArrayEquals(readPart(template, "word/styles.xml"), readPart(streamed, "word/styles.xml"));
+        assertArrayEquals(readPart(template, "word/header1.xml"), readPart(streamed, "word/header1.xml"));
+    }
+
+    @Test
+    void writeMerged() throws IOException {
+        var names = List.of("Sandor Szekelyhidi", "Jane Doe", "John Smith");
+        var records = names.stream().map(name -> {
+            Root xmlData = DataHandler.loadXml(correctXmlPath);
+            xmlData.getCustomerDetails().setName(name);
+            return xmlData;
+        }).iterator();
+        var writer = StreamingDocxWriter.of(correctDocxPath, "[logo]", imageFilePath);
+        var out = new ByteArrayOutputStream();
+
+        assertEquals(3, writer.writeMerged(records, PlaceholderRegistry.defaults(), out));
+
+        byte[] single = write(writer, DataHandler.loadXml(correctXmlPath));
+        try (var merged = reload(out.toByteArray()); var template = reload(single)) {
+            var greetings = merged.getParagraphs().stream()
+                    .map(paragraph -> paragraph.getText())
+                    .filter(text -> text.startsWith("Dear "))
+                    .toList();
+            assertEquals(List.of("Dear Sandor Szekelyhidi!", "Dear Jane Doe!", "Dear John Smith!"), greetings);
+            assertEquals(3 * template.getTables().size(), merged.getTables().size());
+
+            // One section per record, sharing the headers and the logo of the template
+            var breaks = merged.getParagraphs().stream()
+                    .map(paragraph -> paragraph.getCTP().getPPr())
+                    .filter(properties -> properties != null && properties.isSetSectPr())
+                    .count();
+            assertEquals(2, breaks);
+            assertTrue(merged.getDocument().getBody().isSetSectPr());
+            assertEquals(template.getHeaderList().size(), merged.getHeaderList().size());
+            assertEquals(1, merged.getAllPackagePictures().size());
+        }
+        assertArrayEquals(readPart(single, "word/styles.xml"), readPart(out.toByteArray(), "word/styles.xml"));
+
+        // Paragraph ids are unique in the merged document, the first record keeps those of the template
+        var document = new String(readPart(out.toByteArray(), "word/document.xml"), StandardCharsets.UTF_8);
+        var ids = Pattern.compile("w14:paraId=\"([0-9A-Fa-f]+)\"").matcher(document).results()
+                .map(result -> result.group(1))
+                .toList();
+        var templateDocument = new String(readPart(single, "word/document.xml"), StandardCharsets.UTF_8);
+        assertFalse(ids.isEmpty());
+        assertEquals(ids.size(), Set.copyOf(ids).size());
+        assertEquals(templateDocument.split("w14:paraId=").length - 1, ids.size());
+    }
+
+    private static byte[] write(StreamingDocxWriter writer, Root xmlData) {
+        var out = new ByteArrayOutputStream();
+        writer.write(xmlData, PlaceholderRegistry.defaults(), out);
+        return out.toByteArray();
+    }
+
+    private static String text(XWPFDocument docxData) {
+        var text = new StringBuilder();
+        DocumentWalker.walk(docxData, (paragraph, row) -> text.append(paragraph.getText()).append('\n'));
+        return text.toString();
+    }
+
+    private static XWPFDocument reload(byte[] bytes) throws IOException {
+        return new XWPFDocument(new ByteArrayInputStream(bytes));
+    }
+
+    private static byte[] readPart(byte[] docx, String name) throws IOException {
+        try (var zip = new ZipInputStream(new ByteArrayInputStream(docx))) {
+            for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                if (entry.getName().equals(name)) {
+                    return zip.readAllBytes();
+                }
+            }
+        }
+        return null;
+    }
+
+}
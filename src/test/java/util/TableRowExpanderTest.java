@@ -0,0 +1,157 @@
+package util;
+
+import data.RowTable;
+import org.apache.poi.Version;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TableRowExpanderTest {
+
+    @Test
+    void find() {
+        var table = createTable();
+        var template = TableRowExpander.find(table, name -> true);
+
+        assertNotNull(template);
+        assertEquals(1, template.row());
+        assertEquals(2, template.count());
+        assertNull(TableRowExpander.find(table, name -> false));
+    }
+
+    @Test
+    void expand() throws IOException {
+        var table = createTable();
+        var template = TableRowExpander.find(table, name -> true);
+
+        TableRowExpander.expand(table, template, rowData(1000), name -> "Unknown");
+
+        assertEquals(1002, table.getNumberOfRows());
+        assertEquals("Product", table.getRow(0).getCell(0).getText());
+        assertEquals("Product 0", table.getRow(1).getCell(0).getText());
+        assertEquals("Description 999", table.getRow(1000).getCell(1).getText());
+        assertEquals("Total", table.getRow(1001).getCell(0).getText());
+
+        // The saved document holds the same rows as the in-memory model
+        var out = new ByteArrayOutputStream();
+        table.getBody().getXWPFDocument().write(out);
+        try (var reloaded = new XWPFDocument(new ByteArrayInputStream(out.toByteArray()))) {
+            var reloadedTable = reloaded.getTables().get(0);
+            assertEquals(1002, reloadedTable.getNumberOfRows());
+            assertEquals("Product 500", reloadedTable.getRow(501).getCell(0).getText());
+        }
+    }
+
+    @Test
+    void expand_paragraphIds() throws IOException {
+        var template = CompiledTemplate.compile(DataHandler.getFilePath("/raw.docx"));
+        var docx = DataHandler.toBytes(template.render(DataHandler.loadXml(DataHandler.getFilePath("/raw.xml"))));
+
+        // Only the first generated row keeps the paragraph ids of the template row
+        String document;
+        try (var zip = new ZipInputStream(new ByteArrayInputStream(docx))) {
+            var entry = zip.getNextEntry();
+            while (!entry.getName().equals("word/document.xml")) {
+                entry = zip.getNextEntry();
+            }
+            document = new String(zip.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        var ids = Pattern.compile("w14:paraId=\"([0-9A-Fa-f]+)\"").matcher(document).results()
+                .map(result -> result.group(1))
+                .toList();
+        assertFalse(ids.isEmpty());
+        assertEquals(ids.size(), Set.copyOf(ids).size());
+    }
+
+    @Test
+    void expand_columnsByName() {
+        var table = createTable();
+        table.getRow(1).getCell(0).getParagraphs().get(0).getRuns().get(0).setText("<value2>", 0);
+        table.getRow(1).getCell(1).getParagraphs().get(0).getRuns().get(0).setText("<value1> <name>", 0);
+        var template = TableRowExpander.find(table, name -> true);
+
+        TableRowExpander.expand(table, template, rowData(1), name -> "Jane");
+
+        assertEquals("Description 0", table.getRow(1).getCell(0).getText());
+        assertEquals("Product 0 Jane", table.getRow(1).getCell(1).getText());
+    }
+
+    @Test
+    void rowValueColumn() {
+        assertEquals(0, TableRowExpander.rowValueColumn("value1"));
+        assertEquals(11, TableRowExpander.rowValueColumn("value12"));
+        assertEquals(-1, TableRowExpander.rowValueColumn("value"));
+        assertEquals(-1, TableRowExpander.rowValueColumn("valueX"));
+        assertEquals(-1, TableRowExpander.rowValueColumn("name"));
+        assertEquals(62, TableRowExpander.rowValueColumn("value63"));
+        assertEquals(-1, TableRowExpander.rowValueColumn("value64"));
+        assertEquals(-1, TableRowExpander.rowValueColumn("value0"));
+        assertEquals(-1, TableRowExpander.rowValueColumn("value01"));
+        assertEquals(-1, TableRowExpander.rowValueColumn("value\u0661"));
+        assertEquals(-1, TableRowExpander.rowValueColumn("value99999999999"));
+        for (var name : PlaceholderMatcher.ROW_VALUE_NAMES) {
+            assertTrue(TableRowExpander.rowValueColumn(name) >= 0, name);
+        }
+    }
+
+    @Test
+    void appendRow() {
+        var tableRows = TableRowExpander.findTableRowsField(Version.getVersion());
+        assertNotNull(tableRows);
+        assertNull(TableRowExpander.findTableRowsField("6.0.0"));
+
+        // The row list and the public methods must leave the same table behind
+        for (var field : new Field[]{tableRows, null}) {
+            var table = createTable();
+            var content = table.getRow(1).getCtRow();
+
+            var row = TableRowExpander.appendRow(table, content, field);
+            row.getCell(0).setText("appended");
+
+            assertEquals(5, table.getRows().size());
+            assertEquals(5, table.getCTTbl().sizeOfTrArray());
+            assertSame(row, table.getRow(4));
+            assertSame(table.getCTTbl().getTrArray(4), row.getCtRow());
+
+            // The returned row is backed by the XML in the table, not by the copied content
+            assertTrue(table.getCTTbl().getTrArray(4).xmlText().contains("appended"));
+            assertFalse(content.xmlText().contains("appended"));
+        }
+    }
+
+    private static XWPFTable createTable() {
+        var docxData = new XWPFDocument();
+        var table = docxData.createTable(4, 2);
+        setText(table, 0, "Product", "Description");
+        setText(table, 1, "<value1>", "<value2>");
+        setText(table, 2, "<value1>", "<value2>");
+        setText(table, 3, "Total", "");
+        return table;
+    }
+
+    private static void setText(XWPFTable table, int row, String first, String second) {
+        table.getRow(row).getCell(0).getParagraphs().get(0).createRun().setText(first);
+        table.getRow(row).getCell(1).getParagraphs().get(0).createRun().setText(second);
+    }
+
+    private static RowTable rowData(int count) {
+        var builder = new RowTable.Builder();
+        for (var i = 0; i < count; i++) {
+            builder.add(List.of("Product " + i, "Description " + i));
+        }
+        return builder.build();
+    }
+
+}
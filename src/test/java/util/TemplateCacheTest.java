@@ -0,0 +1,63 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateCacheTest {
+
+    String correctDocxPath = DataHandler.getFilePath("/raw.docx");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void get() {
+        var cache = new TemplateCache(2, null, null);
+        var template = cache.get(Path.of(correctDocxPath));
+
+        assertSame(template, cache.get(Path.of(correctDocxPath)));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void get_changedFile() throws IOException {
+        var file = tempDir.resolve("template.docx");
+        Files.copy(Path.of(correctDocxPath), file);
+        var cache = new TemplateCache(2, null, null);
+        var first = cache.get(file);
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+
+        assertNotSame(first, cache.get(file));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void get_evictsLeastRecentlyUsed() throws IOException {
+        var first = tempDir.resolve("first.docx");
+        var second = tempDir.resolve("second.docx");
+        Files.copy(Path.of(correctDocxPath), first);
+        Files.copy(Path.of(correctDocxPath), second);
+        var cache = new TemplateCache(1, null, null);
+
+        var template = cache.get(first);
+        cache.get(second);
+
+        assertEquals(1, cache.size());
+        assertNotSame(template, cache.get(first));
+    }
+
+    @Test
+    void failure_get() {
+        var cache = new TemplateCache(1, null, null);
+        assertThrows(RuntimeException.class, () -> cache.get(Path.of("/raw1.docx")));
+    }
+
+}
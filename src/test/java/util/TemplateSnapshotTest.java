@@ -0,0 +1,64 @@
+package util;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateSnapshotTest {
+
+    String correctDocxPath = DataHandler.getFilePath("/raw.docx");
+
+    @Test
+    void newDocument() throws IOException {
+        var snapshot = TemplateSnapshot.of(correctDocxPath);
+
+        try (XWPFDocument expected = DataHandler.loadDocx(correctDocxPath);
+             XWPFDocument docxData = snapshot.newDocument()) {
+            assertEquals(text(expected), text(docxData));
+            assertEquals(expected.getHeaderList().size(), docxData.getHeaderList().size());
+            assertEquals(expected.getTables().size(), docxData.getTables().size());
+        }
+    }
+
+    @Test
+    void newDocument_independentDocuments() throws IOException {
+        var snapshot = TemplateSnapshot.of(correctDocxPath);
+
+        try (XWPFDocument first = snapshot.newDocument(); XWPFDocument second = snapshot.newDocument()) {
+            first.getParagraphs().get(0).createRun().setText("changed");
+            assertNotEquals(text(first), text(second));
+
+            var out = new ByteArrayOutputStream();
+            first.write(out);
+            try (XWPFDocument reloaded = DataHandler.loadDocx(out.toByteArray())) {
+                assertEquals(text(first), text(reloaded));
+            }
+        }
+    }
+
+    @Test
+    void of_storedEntries() throws IOException {
+        var snapshot = TemplateSnapshot.of(correctDocxPath);
+
+        try (var out = new ByteArrayOutputStream(); var docxData = snapshot.newDocument()) {
+            docxData.write(out);
+            assertTrue(snapshot.size() > out.size());
+        }
+    }
+
+    @Test
+    void failure_of() {
+        assertThrows(RuntimeException.class, () -> TemplateSnapshot.of("/raw1.docx"));
+    }
+
+    private static String text(XWPFDocument docxData) {
+        var text = new StringBuilder();
+        DocumentWalker.walk(docxData, (paragraph, row) -> text.append(paragraph.getText()).append('\n'));
+        return text.toString();
+    }
+
+}
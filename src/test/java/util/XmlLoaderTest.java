@@ -0,0 +1,117 @@
+package util;
+
+import data.Root;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class XmlLoaderTest {
+
+    Path correctXmlPath = Path.of(DataHandler.getFilePath("/raw.xml"));
+
+    @Test
+    void success_load() throws IOException {
+        var fromPath = XmlLoader.load(correctXmlPath);
+        var fromBytes = XmlLoader.load(Files.readAllBytes(correctXmlPath));
+        Root fromStream;
+        try (var fis = new FileInputStream(correctXmlPath.toFile())) {
+            fromStream = XmlLoader.load(fis);
+        }
+
+        assertEquals(fromPath.getCustomerDetails().getName(), fromBytes.getCustomerDetails().getName());
+        assertEquals(fromPath.getCustomerDetails().getName(), fromStream.getCustomerDetails().getName());
+    }
+
+    @Test
+    void failure_load() {
+        assertThrows(RuntimeException.class, () -> XmlLoader.load(Path.of("/raw1.xml")));
+        assertThrows(RuntimeException.class, () -> XmlLoader.load("<root>".getBytes()));
+    }
+
+    @Test
+    void validation() throws IOException {
+        var xml = Files.readString(correctXmlPath);
+        XmlLoader.setValidating(true);
+        try {
+            assertEquals("Sandor Szekelyhidi", XmlLoader.load(xml.getBytes()).getCustomerDetails().getName());
+
+            // The unmarshaller accepts the elements of a section in any order, and so does the schema
+            var reordered = xml.replace("<name>Sandor Szekelyhidi</name>", "")
+                    .replace("</customer_details>", "<name>Jane Doe</name></customer_details>");
+            assertEquals("Jane Doe", XmlLoader.load(reordered.getBytes()).getCustomerDetails().getName());
+
+            var missingAddress = xml.replaceAll("(?s)<address_data>.*</address_data>", "");
+            var error = assertThrows(RuntimeException.class, () -> XmlLoader.load(missingAddress.getBytes()));
+            assertTrue(error.getMessage().startsWith("Invalid XML data: "), error.getMessage());
+
+            var shortDataSection = xml.replace("<data>Samsung Galaxy A60</data>", "");
+            assertThrows(RuntimeException.class, () -> XmlLoader.load(shortDataSection.getBytes()));
+        } finally {
+            XmlLoader.setValidating(false);
+        }
+
+        // Without validation, the same record is loaded and only fails when rendered
+        var missingAddress = xml.replaceAll("(?s)<address_data>.*</address_data>", "");
+        assertNull(XmlLoader.load(missingAddress.getBytes()).getCustomerDetails().getAddressData());
+    }
+
+    @Test
+    void rowTable() throws IOException {
+        var table = XmlLoader.load(correctXmlPath).getDocumentData().getTable();
+        var rows = table.getRows();
+
+        assertEquals(3, rows.size());
+        // The common description is stored once
+        assertEquals(4, rows.distinctValues());
+        var names = new ArrayList<String>();
+        for (var cursor = rows.cursor(); cursor.next(); ) {
+            assertEquals(2, cursor.columns());
+            assertEquals("Brand new phone.", cursor.get(1));
+            assertEquals("", cursor.get(2));
+            names.add(cursor.get(0));
+        }
+        assertEquals(List.of("Iphone X", "Huawei P30", "Samsung Galaxy A60"), names);
+
+        // The row data objects are copies, changes are applied by setting them again
+        var rowData = table.getRowData();
+        rowData[1].getValues().set(0, "Nokia 3310");
+        assertEquals("Huawei P30", table.getRows().get(1, 0));
+        table.setRowData(rowData);
+        assertEquals("Nokia 3310", table.getRows().get(1, 0));
+        assertEquals(4, table.getRows().distinctValues());
+    }
+
+    @Test
+    void sharedSchema() {
+        assertSame(XmlLoader.getSchema(), XmlLoader.getSchema());
+    }
+
+    @Test
+    void sharedContext() {
+        assertSame(XmlLoader.getContext(), XmlLoader.getContext());
+    }
+
+    @Test
+    void concurrentLoad() throws Exception {
+        var bytes = Files.readAllBytes(correctXmlPath);
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            var futures = new ArrayList<Future<Root>>();
+            for (var i = 0; i < 64; i++) {
+                futures.add(executor.submit(() -> XmlLoader.load(bytes)));
+            }
+            for (var future : futures) {
+                assertEquals("Sandor Szekelyhidi", future.get().getCustomerDetails().getName());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package util;
+
+import data.Root;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class XmlRecordReaderTest {
+
+    String correctXmlPath = DataHandler.getFilePath("/raw.xml");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void success_singleRecord() {
+        try (var reader = XmlRecordReader.open(Path.of(correctXmlPath))) {
+            assertTrue(reader.hasNext());
+            Root xmlData = reader.next();
+            assertEquals("Sandor Szekelyhidi", xmlData.getCustomerDetails().getName());
+            assertEquals(3, xmlData.getDocumentData().getTable().getRowData().length);
+            assertFalse(reader.hasNext());
+            assertThrows(NoSuchElementException.class, reader::next);
+        }
+    }
+
+    @Test
+    void success_multipleRecords() throws IOException {
+        var record = Files.readString(Path.of(correctXmlPath));
+        var feed = tempDir.resolve("feed.xml");
+        Files.writeString(feed, "<?xml version=\"1.0\"?><records>" + record
+                + record.replace("Sandor Szekelyhidi", "Jane Doe") + "<other/>" + record + "</records>");
+
+        try (var records = DataHandler.loadXmlRecords(feed.toString())) {
+            var names = records.map(xmlData -> xmlData.getCustomerDetails().getName()).toList();
+            assertEquals(3, names.size());
+            assertEquals("Jane Doe", names.get(1));
+        }
+    }
+
+    @Test
+    void failure_invalidRecord() throws IOException {
+        var record = Files.readString(Path.of(correctXmlPath));
+        var invalid = record.replace("Sandor Szekelyhidi", "Jane Doe")
+                .replaceAll("(?s)<document_data>.*</document_data>", "");
+        var feed = "<records>" + record + invalid + record.replace("Sandor Szekelyhidi", "John Smith") + "</records>";
+
+        XmlLoader.setValidating(true);
+        try (var reader = new XmlRecordReader(new ByteArrayInputStream(feed.getBytes()))) {
+            assertEquals("Sandor Szekelyhidi", reader.next().getCustomerDetails().getName());
+            assertTrue(reader.hasNext());
+            var error = assertThrows(RuntimeException.class, reader::next);
+            assertTrue(error.getMessage().startsWith("Invalid XML data: "), error.getMessage());
+            assertEquals("John Smith", reader.next().getCustomerDetails().getName());
+            assertFalse(reader.hasNext());
+        } finally {
+            XmlLoader.setValidating(false);
+        }
+    }
+
+    @Test
+    void failure_malformed() {
+        try (var reader = new XmlRecordReader(new ByteArrayInputStream("<records><root>".getBytes()))) {
+            assertThrows(RuntimeException.class, reader::hasNext);
+        }
+        assertThrows(RuntimeException.class, () -> XmlRecordReader.open(Path.of("/raw1.xml")));
+    }
+
+}